@@ -2,20 +2,18 @@ package dataMining.distance;
 import java.io.Closeable;
 import java.io.File;
 import java.io.PrintStream;
-import java.text.DecimalFormat;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.concurrent.atomic.AtomicLong;
+import util.DecimalEncoder;
 import util.FileUtils;
 import util.Logs;
-import util.StringUtils;
 import util.TimeWatcher;
 import util.TriConsumer;
 
 public class DistancesIO implements Closeable {
 
-	private final DecimalFormat decimalFormatter = StringUtils.getDecimalFormatter();
 	private final PrintStream out;
 
 	public DistancesIO(File outputFile) {
@@ -23,7 +21,10 @@ public class DistancesIO implements Closeable {
 	}
 
 	public synchronized void addDistance(Long idB, double distance) {
-		out.println(idB + " " + decimalFormatter.format(distance));
+		out.print(idB);
+		out.print(' ');
+		DecimalEncoder.DEFAULT.print(out, distance);
+		out.println();
 	}
 
 	@Override
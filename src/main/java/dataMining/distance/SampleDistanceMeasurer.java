@@ -7,6 +7,11 @@ public abstract class SampleDistanceMeasurer<T> implements DistanceMeasurer<T> {
 
 	public abstract float getSimilarity(T sampleA, T sampleB);
 
+	/** Value not smaller than {@link #getSimilarity(Object, Object)}, supposedly much cheaper to compute. By default, the trivial bound 1. */
+	public float getSimilarityUpperBound(T sampleA, T sampleB) {
+		return 1F;
+	}
+
 	public String toString() {
 		return getName();
 	}
@@ -0,0 +1,10 @@
+package dataMining.distance;
+
+/** Measurer of several similarities at once, for measures sharing most of their computations, so that each pair of samples is processed once for all of them. */
+public interface SampleMultiSimilarityMeasurer<T> {
+
+	int getNumSimilarities();
+
+	/** Computes all the similarities of the pair into the array, in the order of the measures. */
+	void getSimilarities(T sampleA, T sampleB, float[] similarities);
+}
@@ -1,5 +1,7 @@
 package dataMining.distance.graphDistance;
 
+import java.util.Arrays;
+import util.graph.CompactDirectedWeightedLabeledGraph;
 import util.graph.MeasurableGraph;
 
 public enum GraphDistanceType {
@@ -32,7 +34,7 @@ public enum GraphDistanceType {
             return 0F;
         float graphSizeA = graphA.getSize(useWeightsIfApplicable);
         float graphSizeB = graphB.getSize(useWeightsIfApplicable);
-        return mcsSize / Math.max(graphSizeA, graphSizeB);
+        return mcsSimilarity(mcsSize, graphSizeA, graphSizeB);
     }
 
     protected float wguSimilarity(MeasurableGraph graphA, MeasurableGraph graphB, boolean useWeightsIfApplicable) {
@@ -43,11 +45,90 @@ public enum GraphDistanceType {
             return 0F;
         float graphSizeA = graphA.getSize(useWeightsIfApplicable);
         float graphSizeB = graphB.getSize(useWeightsIfApplicable);
+        return wguSimilarity(mcsSize, graphSizeA, graphSizeB);
+    }
+
+    protected static float mcsSimilarity(float mcsSize, float graphSizeA, float graphSizeB) {
+        return mcsSize / Math.max(graphSizeA, graphSizeB);
+    }
+
+    protected static float wguSimilarity(float mcsSize, float graphSizeA, float graphSizeB) {
         return (mcsSize / (graphSizeA + graphSizeB - mcsSize));
     }
 
     public abstract float calculateSimilarity(MeasurableGraph graphA, MeasurableGraph graphB);
 
+    /**
+     * Similarity given the sizes (weighted or not, as the type) of the graphs and of their maximum common subgraph, not empty:
+     * the same of {@link #calculateSimilarity(MeasurableGraph, MeasurableGraph)} for graphs of such sizes.
+     */
+    public float calculateSimilarity(float mcsSize, float graphSizeA, float graphSizeB) {
+        return this == MCS || this == MCSNOTWEIGHTED ? mcsSimilarity(mcsSize, graphSizeA, graphSizeB) : wguSimilarity(mcsSize, graphSizeA, graphSizeB);
+    }
+
+    /**
+     * Computes the similarities of the graphs by all the given types at once, the same of {@link #calculateSimilarity(MeasurableGraph, MeasurableGraph)} of each one:
+     * as all of them derive from the sizes of the graphs and of their maximum common subgraph, weighted and unweighted, each size is computed only once
+     * (both MCS sizes in a single pass, for compact graphs).
+     * mcsSizes is a buffer of at least 2 positions, to be reused by the caller across pairs (one per thread), so that no array is allocated per pair.
+     */
+    public static void calculateSimilarities(MeasurableGraph graphA, MeasurableGraph graphB, GraphDistanceType[] types, float[] mcsSizes, float[] similarities) {
+        if(graphA.equals(graphB)){
+            Arrays.fill(similarities, 0, types.length, 1F);
+            return;
+        }
+        boolean anyWeighted = false, anyNotWeighted = false;
+        for(GraphDistanceType type : types){
+            if(type.isWeighted())
+                anyWeighted = true;
+            else
+                anyNotWeighted = true;
+        }
+        float mcsSizeWeighted = 0F, mcsSizeNotWeighted = 0F;
+        if(anyWeighted && anyNotWeighted && graphA instanceof CompactDirectedWeightedLabeledGraph && graphB instanceof CompactDirectedWeightedLabeledGraph){
+            MaximumCommonSubgraphCreator.getMaximumCommonSubgraphSizes((CompactDirectedWeightedLabeledGraph)graphA, (CompactDirectedWeightedLabeledGraph)graphB, mcsSizes);
+            mcsSizeNotWeighted = mcsSizes[0];
+            mcsSizeWeighted = mcsSizes[1];
+        }else{
+            if(anyWeighted)
+                mcsSizeWeighted = graphA.getMaximumCommonSubgraphSizeTo(graphB, true);
+            if(anyNotWeighted)
+                mcsSizeNotWeighted = graphA.getMaximumCommonSubgraphSizeTo(graphB, false);
+        }
+        float sizeWeightedA = 0F, sizeWeightedB = 0F, sizeNotWeightedA = 0F, sizeNotWeightedB = 0F;
+        if(mcsSizeWeighted != 0F){
+            sizeWeightedA = graphA.getSize(true);
+            sizeWeightedB = graphB.getSize(true);
+        }
+        if(mcsSizeNotWeighted != 0F){
+            sizeNotWeightedA = graphA.getSize(false);
+            sizeNotWeightedB = graphB.getSize(false);
+        }
+        for(int t = 0; t < types.length; t++){
+            if(types[t].isWeighted())
+                similarities[t] = mcsSizeWeighted == 0F ? 0F : types[t].calculateSimilarity(mcsSizeWeighted, sizeWeightedA, sizeWeightedB);
+            else
+                similarities[t] = mcsSizeNotWeighted == 0F ? 0F : types[t].calculateSimilarity(mcsSizeNotWeighted, sizeNotWeightedA, sizeNotWeightedB);
+        }
+    }
+
+    public boolean isWeighted() {
+        return this == MCS || this == WGU;
+    }
+
+    /**
+     * Upper bound of the similarity, computed only from the graph sizes: as the MCS is not bigger than the smallest graph, both MCS and WGU similarities are at most min(sizeA,sizeB)/max(sizeA,sizeB).
+     * A small slack covers rounding differences between the summations of MCS and graph sizes.
+     */
+    public float calculateSimilarityUpperBound(MeasurableGraph graphA, MeasurableGraph graphB) {
+        float graphSizeA = graphA.getSize(isWeighted());
+        float graphSizeB = graphB.getSize(isWeighted());
+        float max = Math.max(graphSizeA, graphSizeB);
+        if(max == 0F)
+            return 1F;
+        return Math.min(1F, Math.min(graphSizeA, graphSizeB) / max * (1 + 1e-5F));
+    }
+
     public final float calculateDistance(MeasurableGraph graphA, MeasurableGraph graphB){
     	return 1F - calculateSimilarity(graphA, graphB);
     }
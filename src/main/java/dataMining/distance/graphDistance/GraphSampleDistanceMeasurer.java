@@ -25,6 +25,11 @@ public class GraphSampleDistanceMeasurer extends SampleDistanceMeasurer<GraphSam
         return graphDistanceType.calculateSimilarity(sampleA.getGraph(), sampleB.getGraph());
     }
 
+    @Override
+    public float getSimilarityUpperBound(GraphSample sampleA, GraphSample sampleB) {
+        return graphDistanceType.calculateSimilarityUpperBound(sampleA.getGraph(), sampleB.getGraph());
+    }
+
     public String toString() {
     	return graphDistanceType.name();
     }
@@ -0,0 +1,34 @@
+package dataMining.distance.graphDistance;
+
+import java.util.Arrays;
+import dataMining.distance.SampleMultiSimilarityMeasurer;
+import dataMining.graph.GraphSample;
+
+/** Similarities of graph samples by several {@link GraphDistanceType}s, computed together as in {@link GraphDistanceType#calculateSimilarities}. */
+public class GraphSampleMultiSimilarityMeasurer implements SampleMultiSimilarityMeasurer<GraphSample> {
+
+    private final GraphDistanceType[] graphDistanceTypes;
+    private final ThreadLocal<float[]> mcsSizes = ThreadLocal.withInitial(() -> new float[2]); //buffer of each worker thread
+
+    public GraphSampleMultiSimilarityMeasurer(GraphDistanceType... graphDistanceTypes) {
+        this.graphDistanceTypes = graphDistanceTypes.clone();
+    }
+
+    public GraphDistanceType[] getGraphDistanceTypes() {
+        return graphDistanceTypes.clone();
+    }
+
+    @Override
+    public int getNumSimilarities() {
+        return graphDistanceTypes.length;
+    }
+
+    @Override
+    public void getSimilarities(GraphSample sampleA, GraphSample sampleB, float[] similarities) {
+        GraphDistanceType.calculateSimilarities(sampleA.getGraph(), sampleB.getGraph(), graphDistanceTypes, mcsSizes.get(), similarities);
+    }
+
+    public String toString() {
+    	return Arrays.toString(graphDistanceTypes);
+    }
+}
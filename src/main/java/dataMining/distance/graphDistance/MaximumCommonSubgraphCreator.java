@@ -3,22 +3,55 @@ package dataMining.distance.graphDistance;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import util.CompressedBitSet;
+import util.graph.CompactDirectedWeightedLabeledGraph;
 import util.graph.DirectedWeightedLabeledGraph;
 import util.graph.LabeledWeightedEdge;
 import util.graph.WeightedLabeledGraph;
 
 public class MaximumCommonSubgraphCreator {
 
+    /** Computes the same size of {@link #getMaximumCommonSubgraph(DirectedWeightedLabeledGraph, DirectedWeightedLabeledGraph, boolean)}, but without creating the subgraph. */
     public static float getMaximumCommonSubgraphSize(DirectedWeightedLabeledGraph graphA, DirectedWeightedLabeledGraph graphB, boolean useWeightsIfApplicable) {
-        DirectedWeightedLabeledGraph mcs = getMaximumCommonSubgraph(graphA, graphB, useWeightsIfApplicable);
-        return mcs != null ? mcs.getSize(useWeightsIfApplicable) : 0;
+        boolean considerWeights = useWeightsIfApplicable && graphA.isWeighted();
+        double sumVertices = 0, sumEdges = 0;
+        int nVertices = 0, nEdges = 0;
+        Set<String> verticesB = graphB.vertexSet();
+        for(String vertex : graphA.vertexSet()){
+            if(!verticesB.contains(vertex))
+                continue;
+            nVertices++;
+            if(considerWeights)
+                sumVertices += Math.min(graphA.getVertexWeight(vertex), graphB.getVertexWeight(vertex));
+        }
+        if(nVertices == 0)
+            return 0;
+
+        for(String vertex : graphA.vertexSet()){
+            if(!verticesB.contains(vertex))
+                continue;
+            Set<LabeledWeightedEdge> outgoingEdgesInGraphA = graphA.outgoingEdgesOf(vertex);
+            if(outgoingEdgesInGraphA.isEmpty())
+                continue;
+            Set<LabeledWeightedEdge> outgoingEdgesInGraphB = graphB.outgoingEdgesOf(vertex);
+            if(outgoingEdgesInGraphB.isEmpty())
+                continue;
+            for(LabeledWeightedEdge edge : outgoingEdgesInGraphA){
+                if(outgoingEdgesInGraphB.contains(edge)){ //if true, it is a common edge. IMPORTANTE que o equals e hashCode do edge não levem em consideração o peso de aresta!!!
+                    nEdges++;
+                    if(considerWeights)
+                        sumEdges += Math.min(edge.getWeight(), graphB.getEdgeWeight(vertex, (String)edge.getTarget(), edge.getLabel()));
+                }
+            }
+        }
+        return considerWeights ? (float)(sumVertices + sumEdges) : nVertices + nEdges;
     }
     public static DirectedWeightedLabeledGraph getMaximumCommonSubgraph(DirectedWeightedLabeledGraph graphA, DirectedWeightedLabeledGraph graphB, boolean useWeightsIfApplicable) {
         boolean considerWeights = useWeightsIfApplicable && graphA.isWeighted();
         DirectedWeightedLabeledGraph mcs = null;
 
         //add and collect the commons vertexes:
-        List<String> commonVertexes = new ArrayList();
+        List<String> commonVertexes = new ArrayList<>();
         {
         	Set<String> verticesB = graphB.vertexSet();
         	for(String vertex : graphA.vertexSet()){
@@ -58,16 +91,38 @@ public class MaximumCommonSubgraphCreator {
         return mcs;
     }
 
+    /** Computes the same size of {@link #getMaximumCommonSubgraph(WeightedLabeledGraph, WeightedLabeledGraph, boolean)}, but without creating the subgraph. */
     public static float getMaximumCommonSubgraphSize(WeightedLabeledGraph graphA, WeightedLabeledGraph graphB, boolean useWeightsIfApplicable) {
-        WeightedLabeledGraph mcs = getMaximumCommonSubgraph(graphA, graphB, useWeightsIfApplicable);
-        return mcs != null ? mcs.getSize(useWeightsIfApplicable) : 0;
+        boolean considerWeights = useWeightsIfApplicable && graphA.isWeighted();
+        double sumVertices = 0, sumEdges = 0;
+        int nVertices = 0, nEdges = 0;
+        Set<String> verticesB = graphB.vertexSet();
+        for(String vertex : graphA.vertexSet()){
+            if(!verticesB.contains(vertex))
+                continue;
+            nVertices++;
+            if(considerWeights)
+                sumVertices += Math.min(graphA.getVertexWeight(vertex), graphB.getVertexWeight(vertex));
+        }
+        if(nVertices == 0)
+            return 0;
+
+        for(LabeledWeightedEdge edgeA : graphA.edgeSet()){
+            LabeledWeightedEdge edgeB = graphB.getEdge((String)edgeA.getSource(), (String)edgeA.getTarget(), edgeA.getLabel());
+            if(edgeB != null){
+                nEdges++;
+                if(considerWeights)
+                    sumEdges += Math.min(edgeA.getWeight(), edgeB.getWeight());
+            }
+        }
+        return considerWeights ? (float)(sumVertices + sumEdges) : nVertices + nEdges;
     }
     public static WeightedLabeledGraph getMaximumCommonSubgraph(WeightedLabeledGraph graphA, WeightedLabeledGraph graphB, boolean useWeightsIfApplicable) {
         boolean considerWeights = useWeightsIfApplicable && graphA.isWeighted();
         WeightedLabeledGraph mcs = null;
 
         //add and collect the commons vertexes:
-        List<String> commonVertexes = new ArrayList();
+        List<String> commonVertexes = new ArrayList<>();
         {
             Set<String> verticesB = graphB.vertexSet();
             for(String vertex : graphA.vertexSet()){
@@ -95,6 +150,89 @@ public class MaximumCommonSubgraphCreator {
         return mcs;
     }
 
+    /**
+     * Computes the size of the maximum common subgraph without creating it nor allocating anything:
+     * as vertices and outgoing edges are sorted in compact graphs, common elements are found by merge-joins.
+     * Without weights, the size is just the number of common vertices plus common edges, taken from the intersections of the
+     * {@link CompactDirectedWeightedLabeledGraph#getStructureSignature() bitsets} of the graphs, when available.
+     */
+    public static float getMaximumCommonSubgraphSize(CompactDirectedWeightedLabeledGraph graphA, CompactDirectedWeightedLabeledGraph graphB, boolean useWeightsIfApplicable) {
+        int nA = graphA.getNumVertices(), nB = graphB.getNumVertices();
+        if(nA == 0 || nB == 0 || graphA.getVertexId(nA - 1) < graphB.getVertexId(0) || graphB.getVertexId(nB - 1) < graphA.getVertexId(0))
+            return 0;
+        boolean considerWeights = useWeightsIfApplicable && graphA.isWeighted();
+        if(!considerWeights){
+            CompressedBitSet[] signatureA = graphA.getStructureSignature(), signatureB = graphB.getStructureSignature();
+            if(signatureA != null && signatureB != null){
+                int nVertices = signatureA[0].andCardinality(signatureB[0]);
+                return nVertices == 0 ? 0 : nVertices + signatureA[1].andCardinality(signatureB[1]);
+            }
+        }
+        return mergeCommonSubgraph(graphA, graphB, considerWeights, null);
+    }
+
+    /**
+     * Computes both sizes of the maximum common subgraph at once, sizes[0] without weights and sizes[1] with weights if applicable,
+     * as given by {@link #getMaximumCommonSubgraphSize(CompactDirectedWeightedLabeledGraph, CompactDirectedWeightedLabeledGraph, boolean)}:
+     * for weighted graphs, a single merge-join gives both.
+     */
+    public static void getMaximumCommonSubgraphSizes(CompactDirectedWeightedLabeledGraph graphA, CompactDirectedWeightedLabeledGraph graphB, float[] sizes) {
+        int nA = graphA.getNumVertices(), nB = graphB.getNumVertices();
+        if(nA == 0 || nB == 0 || graphA.getVertexId(nA - 1) < graphB.getVertexId(0) || graphB.getVertexId(nB - 1) < graphA.getVertexId(0)){
+            sizes[0] = sizes[1] = 0;
+        }else if(!graphA.isWeighted()){
+            sizes[0] = sizes[1] = getMaximumCommonSubgraphSize(graphA, graphB, false);
+        }else{
+            sizes[1] = mergeCommonSubgraph(graphA, graphB, true, sizes);
+        }
+    }
+
+    /** Merge-join of the common vertices and edges of the graphs, giving the size of their MCS. If unweightedSize is given, its first position gets the size without weights. */
+    private static float mergeCommonSubgraph(CompactDirectedWeightedLabeledGraph graphA, CompactDirectedWeightedLabeledGraph graphB, boolean considerWeights, float[] unweightedSize) {
+        int nA = graphA.getNumVertices(), nB = graphB.getNumVertices();
+        double sumVertices = 0, sumEdges = 0;
+        int nVertices = 0, nEdges = 0;
+        int vA = 0, vB = 0;
+        while(vA < nA && vB < nB){
+            long idA = graphA.getVertexId(vA), idB = graphB.getVertexId(vB);
+            if(idA < idB){
+                vA++;
+            }else if(idA > idB){
+                vB++;
+            }else{ //common vertex
+                nVertices++;
+                if(considerWeights)
+                    sumVertices += Math.min(graphA.getVertexWeight(vA), graphB.getVertexWeight(vB));
+
+                int eA = graphA.getEdgesStart(vA), endA = graphA.getEdgesEnd(vA);
+                int eB = graphB.getEdgesStart(vB), endB = graphB.getEdgesEnd(vB);
+                while(eA < endA && eB < endB){
+                    int c = Long.compare(graphA.getVertexId(graphA.getEdgeTarget(eA)), graphB.getVertexId(graphB.getEdgeTarget(eB)));
+                    if(c == 0)
+                        c = graphA.getEdgeLabel(eA).compareTo(graphB.getEdgeLabel(eB));
+                    if(c < 0){
+                        eA++;
+                    }else if(c > 0){
+                        eB++;
+                    }else{ //common edge
+                        nEdges++;
+                        if(considerWeights)
+                            sumEdges += Math.min(graphA.getEdgeWeight(eA), graphB.getEdgeWeight(eB));
+                        eA++;
+                        eB++;
+                    }
+                }
+                vA++;
+                vB++;
+            }
+        }
+        if(unweightedSize != null)
+            unweightedSize[0] = nVertices == 0 ? 0 : nVertices + nEdges;
+        if(nVertices == 0)
+            return 0;
+        return considerWeights ? (float)(sumVertices + sumEdges) : nVertices + nEdges;
+    }
+
     public static float getMinimumCommonSupergraphSize(DirectedWeightedLabeledGraph graphA, DirectedWeightedLabeledGraph graphB, boolean useWeightsIfApplicable) {
     	return getMinimumCommonSupergraph(graphA, graphB, useWeightsIfApplicable).getSize(useWeightsIfApplicable);
     }
@@ -122,7 +260,7 @@ public class MaximumCommonSubgraphCreator {
         	LabeledWeightedEdge existingEdge = minimumCommonSupergraph.getEdge(source, target, edge.getLabel());
 			if(existingEdge != null){
 				if(existingEdge.getWeight() < edge.getWeight()){
-					existingEdge.setWeight(edge.getWeight());
+					minimumCommonSupergraph.setEdgeWeight(existingEdge, edge.getWeight());
 				}
 			}else{
 				minimumCommonSupergraph.addEdge(source, target, new LabeledWeightedEdge(source, target, edge.getLabel(), edge.getWeight()));
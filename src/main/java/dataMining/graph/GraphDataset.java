@@ -2,8 +2,8 @@ package dataMining.graph;
 
 import java.io.File;
 import java.io.PrintStream;
-import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
@@ -12,23 +12,28 @@ import java.util.Scanner;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 import com.google.common.collect.Iterators;
 import dataMining.Dataset;
 import dataMining.Sample;
 import dataMining.SamplePathResolver;
 import dataMining.SamplePathResolverSimple;
 import util.DataStructureUtils;
+import util.DecimalEncoder;
 import util.FileUtils;
 import util.Logs;
 import util.Pair;
 import util.StringUtils;
 import util.TimeWatcher;
+import util.graph.CompactDirectedWeightedLabeledGraph;
 import util.graph.DirectedWeightedLabeledGraph;
 import util.graph.LabeledMeasurableGraph;
 import util.graph.LabeledWeightedEdge;
 
 public class GraphDataset extends Dataset<GraphSample> {
 
+	private static final DecimalEncoder WEIGHT_ENCODER = new DecimalEncoder(8);
+
     public GraphDataset() {
     }
 
@@ -77,10 +82,17 @@ public class GraphDataset extends Dataset<GraphSample> {
 		writeSampleOnFolder(graphSample, new SamplePathResolverSimple(resultFolder));
 	}
 	public static void writeSampleOnFolder(GraphSample graphSample, SamplePathResolver resultFolder) {
-        writeSample(graphSample, getGraphSampleFile(resultFolder, graphSample.getId()));
+		if(resultFolder instanceof GraphSampleArchive)
+			((GraphSampleArchive)resultFolder).write(graphSample);
+		else
+			writeSample(graphSample, getGraphSampleFile(resultFolder, graphSample.getId()));
 	}
+	/** Writes the sample in the text format, or in the binary one of {@link GraphSampleBinaryIO} if the file has its extension. */
 	public static void writeSample(GraphSample graphSample, File outputFile) {
-		writeSample(graphSample, outputFile, true);
+		if(GraphSampleBinaryIO.isBinaryFile(outputFile))
+			GraphSampleBinaryIO.write(graphSample, outputFile);
+		else
+			writeSample(graphSample, outputFile, true);
 	}
 	public static void writeSample(GraphSample graphSample, File outputFile, boolean compress) {
 //  file format without compression:
@@ -96,65 +108,68 @@ public class GraphDataset extends Dataset<GraphSample> {
 //  num_vertices num_edges flag_weighted C
 //  vertex_name vertex_weight [1 line per vertex]
 //  edge_source [edge_target edge_weight edge_label]*
-	    DecimalFormat formatter = StringUtils.getDecimalFormatter(8);
 	    try(PrintStream out = FileUtils.createPrintStreamToFile(outputFile)){
-            out.println(graphSample.getId());
-            if(graphSample.getLabels() == null)
-                out.println();
-            else
-                out.println(StringUtils.join(graphSample.getLabels(), '\t'));
-            LabeledMeasurableGraph g = graphSample.getGraph();
-            Set<String> vertices = g.vertexSet();
-            out.print(vertices.size());
-            out.print("\t");
-            out.print(g.getNumEdges());
+	    	writeSample(graphSample, out, compress);
+	    }
+    }
+	/** Writes the sample in the text format of {@link #writeSample(GraphSample, File, boolean)} into the stream, without closing it. */
+	public static void writeSample(GraphSample graphSample, PrintStream out, boolean compress) {
+        out.println(graphSample.getId());
+        if(graphSample.getLabels() == null)
+            out.println();
+        else
+            out.println(StringUtils.join(graphSample.getLabels(), '\t'));
+        LabeledMeasurableGraph g = graphSample.getGraph();
+        Set<String> vertices = g.vertexSet();
+        out.print(vertices.size());
+        out.print("\t");
+        out.print(g.getNumEdges());
+        out.print("\t");
+        out.print(g.isWeighted() ? '1' : '0');
+        if(compress){
+        	out.print("\t");
+        	out.print("C");
+        }
+        out.print("\n");
+        for(String vertex : vertices){
+            out.print(vertex);
             out.print("\t");
-            out.print(g.isWeighted() ? '1' : '0');
-            if(compress){
-            	out.print("\t");
-            	out.print("C");
-            }
+            Double w = g.getVertexWeight(vertex);
+            if(w == null || w.isNaN()) throw new IllegalStateException("invalid vertex weight for ["+vertex+"] on GraphSample ["+graphSample.getId()+"]");
+            WEIGHT_ENCODER.print(out, w);
             out.print("\n");
-            for(String vertex : vertices){
-                out.print(vertex);
-                out.print("\t");
-                Double w = g.getVertexWeight(vertex);
-                if(w == null || w.isNaN()) throw new IllegalStateException("invalid vertex weight for ["+vertex+"] on GraphSample ["+graphSample.getId()+"]");
-                out.print(formatter.format(w));
-                out.print("\n");
-            }
-            if(compress){
-            	for(String vertex : vertices){
-            		Set<LabeledWeightedEdge> outgoingEdges = g.outgoingEdgesOf(vertex);
-            		if(!outgoingEdges.isEmpty()){
-            			out.print(vertex);
-            			for(LabeledWeightedEdge edge : outgoingEdges){
-            				out.print("\t");
-            				out.print(edge.getTarget());
-                    		out.print("\t");
-                    		double w = edge.getWeight();
-                    		if(Double.isNaN(w)) throw new IllegalStateException("invalid edge weight for ["+edge+"] on GraphSample ["+graphSample.getId()+"]");
-                    		out.print(formatter.format(w));
-                    		out.print("\t");
-                    		out.print(edge.getLabel());
-            			}
-            			out.print("\n");
-            		}
-            	}
-            }else{
-            	for(LabeledWeightedEdge edge : g.edgeSet()){
-            		out.print(edge.getSource());
-            		out.print("\t");
-            		out.print(edge.getTarget());
-            		out.print("\t");
-            		double w = edge.getWeight();
-            		if(Double.isNaN(w)) throw new IllegalStateException("invalid edge weight for ["+edge+"] on GraphSample ["+graphSample.getId()+"]");
-            		out.print(formatter.format(w));
-            		out.print("\t");
-            		out.print(edge.getLabel());
-            		out.print("\n");
-            	}
-            }
+        }
+        if(compress){
+        	for(String vertex : vertices){
+        		Set<LabeledWeightedEdge> outgoingEdges = g.outgoingEdgesOf(vertex);
+        		if(!outgoingEdges.isEmpty()){
+        			out.print(vertex);
+        			for(LabeledWeightedEdge edge : outgoingEdges){
+        				out.print("\t");
+        				out.print(edge.getTarget());
+                		out.print("\t");
+                		double w = edge.getWeight();
+                		if(Double.isNaN(w)) throw new IllegalStateException("invalid edge weight for ["+edge+"] on GraphSample ["+graphSample.getId()+"]");
+                		WEIGHT_ENCODER.print(out, w);
+                		out.print("\t");
+                		out.print(edge.getLabel());
+        			}
+        			out.print("\n");
+        		}
+        	}
+        }else{
+        	for(LabeledWeightedEdge edge : g.edgeSet()){
+        		out.print(edge.getSource());
+        		out.print("\t");
+        		out.print(edge.getTarget());
+        		out.print("\t");
+        		double w = edge.getWeight();
+        		if(Double.isNaN(w)) throw new IllegalStateException("invalid edge weight for ["+edge+"] on GraphSample ["+graphSample.getId()+"]");
+        		WEIGHT_ENCODER.print(out, w);
+        		out.print("\t");
+        		out.print(edge.getLabel());
+        		out.print("\n");
+        	}
         }
     }
 	public static Set<String> loadSampleLabelsFromFile(File file) {
@@ -167,6 +182,15 @@ public class GraphDataset extends Dataset<GraphSample> {
         }
     }
 	public static GraphSample loadSampleFromFile(File file) {
+		return loadSampleFromFile(file, false);
+	}
+	/**
+	 * Loads the sample from the text format, or from the binary one of {@link GraphSampleBinaryIO} if the file has its extension.
+	 * @param compact if true, the graph is loaded as a {@link CompactDirectedWeightedLabeledGraph}, which requires numeric vertex names
+	 */
+	public static GraphSample loadSampleFromFile(File file, boolean compact) {
+		if(GraphSampleBinaryIO.isBinaryFile(file))
+			return GraphSampleBinaryIO.read(file, compact);
         try(Scanner in = FileUtils.createScannerFromFile(file)){
             long id = Long.parseLong(in.nextLine());
             Set<String> labels = null;
@@ -180,12 +204,16 @@ public class GraphDataset extends Dataset<GraphSample> {
             int nEdges = Integer.parseInt(tmp[1]);
             boolean weighted = Integer.parseInt(tmp[2])==1;
             boolean compressed = tmp.length > 3 && tmp[3].equals("C");
-            DirectedWeightedLabeledGraph g = new DirectedWeightedLabeledGraph(weighted);
+            DirectedWeightedLabeledGraph g = compact ? null : new DirectedWeightedLabeledGraph(weighted);
+            CompactDirectedWeightedLabeledGraph.Builder compactBuilder = compact ? new CompactDirectedWeightedLabeledGraph.Builder(weighted) : null;
             for (int i = 1; i <= nVertices; i++) {
                 tmp = in.nextLine().split("\t");
                 String vertex = tmp[0];
                 double weight = Double.parseDouble(tmp[1]);
-                g.addVertex(vertex, weight);
+                if(compact)
+                	compactBuilder.addVertex(Long.parseLong(vertex), weight);
+                else
+                	g.addVertex(vertex, weight);
             }
             if(compressed){
             	while(in.hasNextLine()){
@@ -195,9 +223,7 @@ public class GraphDataset extends Dataset<GraphSample> {
         				String target = tmp[i];
         				double weight = Double.parseDouble(tmp[i+1]);
         				String label = tmp[i+2];
-        				LabeledWeightedEdge edge = g.addEdge(source, target);
-        				edge.setWeight(weight);
-        				edge.setLabel(label);
+        				addEdge(g, compactBuilder, source, target, label, weight);
 					}
             	}
             }else{
@@ -207,20 +233,31 @@ public class GraphDataset extends Dataset<GraphSample> {
             		String target = tmp[1];
             		double weight = Double.parseDouble(tmp[2]);
             		String label = tmp[3];
-            		LabeledWeightedEdge edge = g.addEdge(source, target);
-            		edge.setWeight(weight);
-            		edge.setLabel(label);
+            		addEdge(g, compactBuilder, source, target, label, weight);
             	}
             }
-            return new GraphSample(id, labels, g);
+            return new GraphSample(id, labels, compact ? compactBuilder.build() : g);
         }catch (RuntimeException e) {
             Logs.severe("Error while reading GraphSample from file " + file);
             throw e;
         }
     }
+	private static void addEdge(DirectedWeightedLabeledGraph g, CompactDirectedWeightedLabeledGraph.Builder compactBuilder, String source, String target, String label, double weight) {
+		if(compactBuilder != null){
+			compactBuilder.addEdgeOtherwiseWeight(Long.parseLong(source), Long.parseLong(target), label, weight);
+		}else{
+			LabeledWeightedEdge edge = g.addEdge(source, target);
+			g.setEdgeWeight(edge, weight);
+			edge.setLabel(label);
+		}
+	}
 
     public static File getGraphSampleFile(SamplePathResolver folder, long id) {
-	    return folder.getSampleFile(id, getGraphSampleFilename(id));
+	    return getGraphSampleFile(folder, id, false);
+    }
+    /** @param binary if true, the file is in the format of {@link GraphSampleBinaryIO} */
+    public static File getGraphSampleFile(SamplePathResolver folder, long id, boolean binary) {
+	    return folder.getSampleFile(id, binary ? GraphSampleBinaryIO.getFilename(id) : getGraphSampleFilename(id));
     }
     public static File getGraphSampleFile(String folder, long id) {
         return new File(folder, getGraphSampleFilename(id));
@@ -232,42 +269,76 @@ public class GraphDataset extends Dataset<GraphSample> {
         return Sample.getIdFromFile_(graphSampleFile);
     }
 
+    /** Returns the folder as a {@link GraphSampleArchive} if it contains one, otherwise as a folder with one file per sample. */
+    public static SamplePathResolver getPathResolver(File folder) {
+    	return GraphSampleArchive.isArchive(folder) ? new GraphSampleArchive(folder) : new SamplePathResolverSimple(folder);
+    }
+
     public static GraphDataset loadFromFolder(String folder) {
         return loadFromFolder(new File(folder));
     }
     public static GraphDataset loadFromFolder(File folder) {
-        return loadFromFolder(new SamplePathResolverSimple(folder));
+        return loadFromFolder(folder, false);
+    }
+    public static GraphDataset loadFromFolder(File folder, boolean compact) {
+        SamplePathResolver pathResolver = getPathResolver(folder);
+        GraphDataset dataset = loadFromFolder(pathResolver, compact);
+        if(pathResolver instanceof GraphSampleArchive)
+        	((GraphSampleArchive)pathResolver).close();
+        return dataset;
     }
     public static GraphDataset loadFromFolder(SamplePathResolver pathResolver) {
+    	return loadFromFolder(pathResolver, false);
+    }
+    public static GraphDataset loadFromFolder(SamplePathResolver pathResolver, boolean compact) {
 	    Logs.finest("Loading GraphDataset " + pathResolver);
 	    TimeWatcher timeWatcher = new TimeWatcher();
 	    ArrayList<GraphSample> samples = new ArrayList<>();
-	    forEachSampleInFolder(pathResolver, false, s -> samples.add(s));
+	    if(pathResolver instanceof GraphSampleArchive)
+	    	((GraphSampleArchive)pathResolver).forEachSample(false, compact, samples::add);
+	    else
+	    	pathResolver.forEachFile(false, sampleFile -> samples.add(loadSampleFromFile(sampleFile, compact)));
 	    Collections.sort(samples, Sample.COMPARATOR_BY_ID);
 	    Logs.finest("GraphDataset was read after " + timeWatcher);
 	    return new GraphDataset(samples);
 	}
     public static int countFromFolder(File folder) {
-        return countFromFolder(new SamplePathResolverSimple(folder));
+        return countFromFolder(getPathResolver(folder));
     }
     public static int countFromFolder(SamplePathResolver pathResolver) {
 	    return pathResolver.countFiles();
 	}
     public static void forEachSampleInFolder(File folder, boolean parallel, Consumer<GraphSample> collector) {
-    	forEachSampleInFolder(new SamplePathResolverSimple(folder), parallel, collector);
+    	forEachSampleInFolder(getPathResolver(folder), parallel, collector);
     }
     public static void forEachSampleInFolder(SamplePathResolver pathResolver, boolean parallel, Consumer<GraphSample> collector) {
-    	pathResolver.forEachFile(parallel, sampleFile -> collector.accept(loadSampleFromFile(sampleFile)));
+    	if(pathResolver instanceof GraphSampleArchive)
+    		((GraphSampleArchive)pathResolver).forEachSample(parallel, false, collector);
+    	else
+    		pathResolver.forEachFile(parallel, sampleFile -> collector.accept(loadSampleFromFile(sampleFile)));
+    }
+    /** Streams the samples of the folder, which may also be a {@link GraphSampleArchive}. */
+    public static Stream<GraphSample> streamFromFolder(File folder, boolean compact) {
+    	if(GraphSampleArchive.isArchive(folder))
+    		return new GraphSampleArchive(folder).stream(compact);
+    	return Arrays.stream(folder.listFiles()).map(f -> loadSampleFromFile(f, compact));
     }
 
     public static Iterator<GraphSample> iterateFromFolder(File folder) {
     	return iterateFromFolder(folder, null);
     }
     public static Iterator<GraphSample> iterateFromFolder(File folder, Consumer<GraphSample> postAction) {
-    	return iterateFromFolder(new SamplePathResolverSimple(folder), postAction);
+    	return iterateFromFolder(getPathResolver(folder), postAction);
     }
     public static Iterator<GraphSample> iterateFromFolder(SamplePathResolver pathResolver, Consumer<GraphSample> postAction) {
         Logs.finest("Creating iterator for GraphDataset from " + pathResolver);
+        if(pathResolver instanceof GraphSampleArchive){
+        	Iterator<GraphSample> samples = ((GraphSampleArchive)pathResolver).iterateSamples(false);
+        	return postAction == null ? samples : Iterators.transform(samples, s -> {
+        		postAction.accept(s);
+        		return s;
+        	});
+        }
 		Iterator<File> iterator = pathResolver.iterator();
 		return Iterators.transform(iterator,
 			postAction == null ?
@@ -0,0 +1,177 @@
+package dataMining.graph;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import com.google.common.base.Preconditions;
+import dataMining.retrieval.CandidatesIndex;
+import util.Logs;
+import util.MathUtils;
+import util.TimeWatcher;
+import util.graph.CompactDirectedWeightedLabeledGraph;
+import util.graph.LabeledMeasurableGraph;
+import util.graph.LabeledWeightedEdge;
+
+/**
+ * Approximate index of graphs by locality sensitive hashing (LSH) over weighted MinHash sketches, for ranking huge collections:
+ * only graphs colliding with the query in some LSH band are candidates, so the exact similarities are computed for a small fraction of the graphs.
+ * <p>
+ * Each graph is taken as a weighted set of its vertices and edges (with unit weights, for unweighted comparisons), whose weighted Jaccard similarity,
+ * sum(min(wA,wB)) / sum(max(wA,wB)), is exactly the WGU similarity, and is related to the MCS one. The sketch has bands * rows hashes, each a sample
+ * of the set by consistent weighted sampling (ICWS: 2010 ICDM, Ioffe, 'Improved Consistent Sampling, Weighted Minhash and L1 Sketching'),
+ * equal for two graphs with probability equal to their weighted Jaccard similarity J. Two graphs collide if all rows of some band are equal, what happens with
+ * probability 1 - (1 - J^rows)^bands: more bands increase the recall (and the candidates), more rows make the candidates more selective.
+ * <p>
+ * Vertex names must be numeric, as in fusion graphs. Graphs missing relevant candidates get them as similarity 0, so the ranks are approximate.
+ */
+public class GraphMinHashIndex implements CandidatesIndex<GraphSample> {
+
+	private static final long SEED = 0x5DEECE66DL;
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private final int numBands, numRows;
+	private final boolean weighted;
+	//for each band, the band hashes of all graphs (32 bits, packed with the position of the graph) in ascending order:
+	private final long[][] bands;
+	//band hashes of the indexed graphs, so they are not sketched again when queried, as when queries and responses are the same:
+	private final Map<GraphSample,int[]> samplesBandHashes = new IdentityHashMap<>();
+
+	private interface ElementConsumer {
+		void accept(long element, double weight);
+	}
+
+	public GraphMinHashIndex(List<GraphSample> samples, boolean weighted, int numBands, int numRows) {
+		Preconditions.checkArgument(numBands > 0 && numRows > 0, "invalid number of LSH bands or rows");
+		this.numBands = numBands;
+		this.numRows = numRows;
+		this.weighted = weighted;
+		TimeWatcher time = new TimeWatcher();
+		bands = new long[numBands][samples.size()];
+		int[][] allBandHashes = new int[samples.size()][];
+		MathUtils.forRange(0, samples.size(), true, s -> {
+			int[] bandHashes = allBandHashes[s] = getBandHashes(samples.get(s).getGraph());
+			for(int b = 0; b < numBands; b++)
+				bands[b][s] = (long)bandHashes[b] << 32 | s;
+		});
+		for(int s = 0; s < samples.size(); s++)
+			samplesBandHashes.put(samples.get(s), allBandHashes[s]);
+		for(long[] band : bands)
+			Arrays.parallelSort(band);
+		Logs.finer(samples.size() + " graphs sketched in " + numBands + " LSH bands of " + numRows + " rows, after " + time);
+	}
+
+	@Override
+	public int[] getCandidates(GraphSample sample) {
+		int[] bandHashes = samplesBandHashes.get(sample);
+		if(bandHashes == null)
+			bandHashes = getBandHashes(sample.getGraph());
+		int[] candidates = new int[16];
+		int size = 0;
+		for(int b = 0; b < numBands; b++){
+			long[] band = bands[b];
+			int i = Arrays.binarySearch(band, (long)bandHashes[b] << 32); //positions are not negative, so the search key is before all graphs of the hash
+			for(i = i < 0 ? -i - 1 : i; i < band.length && (int)(band[i] >>> 32) == bandHashes[b]; i++){
+				if(size == candidates.length)
+					candidates = Arrays.copyOf(candidates, size * 2);
+				candidates[size++] = (int)band[i];
+			}
+		}
+		Arrays.sort(candidates, 0, size);
+		int nDistinct = 0;
+		for(int i = 0; i < size; i++)
+			if(i == 0 || candidates[i] != candidates[i - 1])
+				candidates[nDistinct++] = candidates[i];
+		return Arrays.copyOf(candidates, nDistinct);
+	}
+
+	/** Computes the sketch of the graph and hashes each of its bands. */
+	private int[] getBandHashes(LabeledMeasurableGraph graph) {
+		int numHashes = numBands * numRows;
+		long[] samples = new long[numHashes];
+		if(!(weighted && graph.isWeighted())){ //plain MinHash, as all weights are 1: the sample is the element of minimum hash, identified by the hash itself
+			Arrays.fill(samples, Long.MAX_VALUE);
+			forEachElement(graph, (element, weight) -> {
+				long elementSeed = mix(element ^ SEED);
+				for(int k = 0; k < numHashes; k++){
+					long hash = mix(elementSeed + k * 0xD1B54A32D192ED03L) >>> 1;
+					if(hash < samples[k])
+						samples[k] = hash;
+				}
+			});
+			return hashBands(samples);
+		}
+		double[] minLogA = new double[numHashes];
+		Arrays.fill(minLogA, Double.POSITIVE_INFINITY);
+		forEachElement(graph, (element, weight) -> {
+			if(!(weight > 0))
+				return;
+			double logWeight = Math.log(weight);
+			long elementSeed = mix(element ^ SEED);
+			for(int k = 0; k < numHashes; k++){
+				//ICWS: r, c ~ Gamma(2,1) and beta ~ Uniform(0,1), the same for the element and the hash in every graph
+				long state = elementSeed + k * 0xD1B54A32D192ED03L; //SplitMix64 stream of the hash
+				double r = -Math.log(uniform(mix(state += GOLDEN_GAMMA)) * uniform(mix(state += GOLDEN_GAMMA)));
+				double logC = Math.log(-Math.log(uniform(mix(state += GOLDEN_GAMMA)) * uniform(mix(state += GOLDEN_GAMMA))));
+				double beta = uniform(mix(state + GOLDEN_GAMMA));
+				double t = Math.floor(logWeight / r + beta);
+				double logA = logC - r * (t - beta) - r;
+				if(logA < minLogA[k]){
+					minLogA[k] = logA;
+					samples[k] = mix(element ^ ((long)t * 0xC2B2AE3D27D4EB4FL));
+				}
+			}
+		});
+		return hashBands(samples);
+	}
+
+	private int[] hashBands(long[] samples) {
+		int[] bandHashes = new int[numBands];
+		for(int b = 0; b < numBands; b++){
+			long hash = b;
+			for(int k = b * numRows; k < (b + 1) * numRows; k++)
+				hash = mix(hash * 31 + samples[k]);
+			bandHashes[b] = (int)hash;
+		}
+		return bandHashes;
+	}
+
+	/** Gives the vertices and edges of the graph, as hashes of their ids (and labels, for edges), with their weights, or 1 if unweighted. */
+	private void forEachElement(LabeledMeasurableGraph graph, ElementConsumer consumer) {
+		boolean weighted = this.weighted && graph.isWeighted();
+		if(graph instanceof CompactDirectedWeightedLabeledGraph){
+			CompactDirectedWeightedLabeledGraph g = (CompactDirectedWeightedLabeledGraph)graph;
+			for(int v = 0; v < g.getNumVertices(); v++){
+				long source = g.getVertexId(v);
+				consumer.accept(vertexElement(source), weighted ? g.getVertexWeight(v) : 1);
+				for(int e = g.getEdgesStart(v); e < g.getEdgesEnd(v); e++)
+					consumer.accept(edgeElement(source, g.getVertexId(g.getEdgeTarget(e)), g.getEdgeLabel(e)), weighted ? g.getEdgeWeight(e) : 1);
+			}
+		}else{
+			for(String vertex : graph.vertexSet())
+				consumer.accept(vertexElement(Long.parseLong(vertex)), weighted ? graph.getVertexWeight(vertex) : 1);
+			for(LabeledWeightedEdge edge : graph.edgeSet())
+				consumer.accept(edgeElement(Long.parseLong((String)edge.getSource()), Long.parseLong((String)edge.getTarget()), edge.getLabel()), weighted ? edge.getWeight() : 1);
+		}
+	}
+
+	private static long vertexElement(long id) {
+		return mix(id);
+	}
+
+	private static long edgeElement(long source, long target, String label) {
+		return mix(mix(mix(source) + target) + (label == null ? 0 : label.hashCode()) + 1);
+	}
+
+	/** Finalizer of SplitMix64: a bijective mixing of the bits */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/** Uniform in (0,1), from the 53 high bits */
+	private static double uniform(long bits) {
+		return ((bits >>> 11) + 0.5) * 0x1.0p-53;
+	}
+}
@@ -0,0 +1,212 @@
+package dataMining.graph;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import com.google.common.base.Preconditions;
+import dataMining.SamplePathResolver;
+
+/**
+ * Graph samples packed in a folder with just two files, instead of one file per sample:
+ * an append-only data file with the samples in the format of {@link GraphSampleBinaryIO},
+ * and an index with one entry per sample (long id, long offset in the data file, int length), also append-only.
+ * <p>
+ * Samples can be written concurrently, and read either sequentially (in the order they were written) or by id.
+ * If a sample is written more than once, the last one prevails.
+ * As there are no files per sample, {@link #getSampleFile(long, String)} and {@link #forEachFile(boolean, Consumer)} are not supported; see {@link GraphDataset} for the methods using archives.
+ */
+public class GraphSampleArchive extends SamplePathResolver implements Closeable {
+
+	private static final String DATA_FILENAME = "samples.data", INDEX_FILENAME = "samples.index";
+	private static final int INDEX_ENTRY_SIZE = 20;
+
+	private FileChannel data, index;
+	private long dataSize;
+	private final Map<Long,Integer> entryById = new HashMap<>();
+	//entries, in the order they were written:
+	private long[] offsets = new long[16];
+	private int[] lengths = new int[16];
+	private int numEntries;
+
+	public GraphSampleArchive(File folder) {
+		super(folder);
+	}
+
+	/** Returns whether the folder contains an archive. */
+	public static boolean isArchive(File folder) {
+		return new File(folder, INDEX_FILENAME).isFile();
+	}
+
+	@Override
+	public synchronized void initialize(boolean incremental) {
+		close();
+		super.initialize(incremental);
+		open(true);
+	}
+
+	private synchronized void open(boolean writable) {
+		if(data != null)
+			return;
+		try{
+			String mode = writable ? "rw" : "r";
+			data = new RandomAccessFile(new File(folder, DATA_FILENAME), mode).getChannel();
+			index = new RandomAccessFile(new File(folder, INDEX_FILENAME), mode).getChannel();
+			dataSize = data.size();
+			ByteBuffer entries = ByteBuffer.allocate((int)(index.size() / INDEX_ENTRY_SIZE * INDEX_ENTRY_SIZE));
+			readFully(index, entries, 0);
+			entries.flip();
+			while(entries.hasRemaining())
+				addEntry(entries.getLong(), entries.getLong(), entries.getInt());
+		}catch(IOException e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void addEntry(long id, long offset, int length) {
+		if(numEntries == offsets.length){
+			offsets = Arrays.copyOf(offsets, numEntries * 2);
+			lengths = Arrays.copyOf(lengths, numEntries * 2);
+		}
+		offsets[numEntries] = offset;
+		lengths[numEntries] = length;
+		Integer previous = entryById.put(id, numEntries);
+		if(previous != null)
+			lengths[previous] = -1; //overwritten
+		numEntries++;
+	}
+
+	/** Appends the sample. The archive must have been initialized. */
+	public void write(GraphSample sample) {
+		byte[] bytes = GraphSampleBinaryIO.toBytes(sample);
+		long offset;
+		synchronized(this){
+			Preconditions.checkState(data != null, "archive not initialized for writing: " + folder);
+			offset = dataSize;
+			dataSize += bytes.length;
+		}
+		writeFully(data, ByteBuffer.wrap(bytes), offset);
+		synchronized(this){ //the index entry goes only after the data, so the index never points to incomplete data
+			ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+			entry.putLong(sample.getId()).putLong(offset).putInt(bytes.length).flip();
+			writeFully(index, entry, (long)numEntries * INDEX_ENTRY_SIZE); //over any incomplete entry left at the end
+			addEntry(sample.getId(), offset, bytes.length);
+		}
+	}
+
+	public synchronized boolean contains(long id) {
+		open(false);
+		return entryById.containsKey(id);
+	}
+
+	/** Returns the sample of the given id, or null if absent. */
+	public GraphSample read(long id, boolean compact) {
+		int entry;
+		synchronized(this){
+			open(false);
+			Integer e = entryById.get(id);
+			if(e == null)
+				return null;
+			entry = e;
+		}
+		return read(entry, compact);
+	}
+
+	private GraphSample read(int entry, boolean compact) {
+		ByteBuffer bytes = ByteBuffer.allocate(lengths[entry]);
+		readFully(data, bytes, offsets[entry]);
+		return GraphSampleBinaryIO.fromBytes(bytes.array(), compact);
+	}
+
+	/** The samples in the order they were written, as the data file is read sequentially. */
+	public Stream<GraphSample> stream(boolean compact) {
+		int[] entries;
+		synchronized(this){
+			open(false);
+			entries = IntStream.range(0, numEntries).filter(e -> lengths[e] >= 0).toArray();
+		}
+		return Arrays.stream(entries).mapToObj(e -> read(e, compact));
+	}
+
+	public void forEachSample(boolean parallel, boolean compact, Consumer<GraphSample> consumer) {
+		Stream<GraphSample> samples = stream(compact);
+		if(parallel)
+			samples.parallel().forEach(consumer);
+		else
+			samples.forEachOrdered(consumer);
+	}
+
+	public Iterator<GraphSample> iterateSamples(boolean compact) {
+		return stream(compact).iterator();
+	}
+
+	@Override
+	public File getSampleFile(long id, String filename) {
+		throw new UnsupportedOperationException("samples are packed in archive: " + folder);
+	}
+
+	@Override
+	public void forEachFile(boolean parallel, Consumer<? super File> task) {
+		throw new UnsupportedOperationException("samples are packed in archive: " + folder);
+	}
+
+	@Override
+	public boolean exists() {
+		return isArchive(folder);
+	}
+
+	@Override
+	public synchronized int countFiles() {
+		if(!exists())
+			return 0;
+		open(false);
+		return entryById.size();
+	}
+
+	@Override
+	public synchronized void close() {
+		if(data == null)
+			return;
+		try{
+			data.close();
+			index.close();
+		}catch(IOException e){
+			throw new RuntimeException(e);
+		}
+		data = index = null;
+		entryById.clear();
+		numEntries = 0;
+		dataSize = 0;
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) {
+		try{
+			while(buffer.hasRemaining())
+				position += channel.write(buffer, position);
+		}catch(IOException e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) {
+		try{
+			while(buffer.hasRemaining()){
+				int n = channel.read(buffer, position);
+				if(n < 0)
+					throw new IOException("unexpected end of archive");
+				position += n;
+			}
+		}catch(IOException e){
+			throw new RuntimeException(e);
+		}
+	}
+}
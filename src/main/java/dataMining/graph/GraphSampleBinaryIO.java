@@ -0,0 +1,316 @@
+package dataMining.graph;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import com.google.common.base.Preconditions;
+import util.FileUtils;
+import util.Logs;
+import util.graph.CompactDirectedWeightedLabeledGraph;
+import util.graph.DirectedWeightedLabeledGraph;
+import util.graph.LabeledMeasurableGraph;
+import util.graph.LabeledWeightedEdge;
+
+/**
+ * Binary format of {@link GraphSample}s, an alternative to the text format of {@link GraphDataset#writeSample(GraphSample, File)}.
+ * Files in this format are recognized by the extension {@value #EXTENSION}.
+ * <pre>
+ * int magic, byte version
+ * varlong sample id (zigzag)
+ * varint number of labels, then each label as a string (varint length and UTF-8 bytes)
+ * byte flags (1: weighted, 2: numeric vertex names)
+ * varint number of vertices, varint number of edges
+ * vertices: if numeric, zigzag varlong of the first id and varlong increments of the next ones (ids are sorted); otherwise strings
+ * float weight per vertex
+ * varint number of edge labels, then each edge label as a string
+ * per vertex: varint number of outgoing edges, then per edge: varint index of the target vertex, varint index of the label, float weight
+ * </pre>
+ * For numeric vertices, vertices and edges are written in the order of {@link CompactDirectedWeightedLabeledGraph}, which is then loaded without sorting.
+ */
+public class GraphSampleBinaryIO {
+
+	public static final String EXTENSION = ".graphSampleBin";
+
+	private static final int MAGIC = 0x47525048; //"GRPH"
+	private static final byte VERSION = 1;
+	private static final int FLAG_WEIGHTED = 1, FLAG_NUMERIC_VERTICES = 2;
+
+	public static boolean isBinaryFile(File file) {
+		return file.getName().endsWith(EXTENSION);
+	}
+
+	public static void write(GraphSample sample, File outputFile) {
+		try{
+			Files.write(outputFile.toPath(), toBytes(sample));
+		}catch(IOException e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	public static byte[] toBytes(GraphSample sample) {
+		try{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			writeVarLong(out, zigzag(sample.getId()));
+			List<String> labels = new ArrayList<>();
+			if(sample.getLabels() != null)
+				for(String label : sample.getLabels())
+					if(label != null) //as in the text format, where null labels are not kept
+						labels.add(label);
+			writeVarLong(out, labels.size());
+			for(String label : labels)
+				writeString(out, label);
+
+			LabeledMeasurableGraph g = sample.getGraph();
+			if(g instanceof CompactDirectedWeightedLabeledGraph)
+				writeGraph(out, (CompactDirectedWeightedLabeledGraph)g);
+			else
+				writeGraph(out, g);
+			out.flush();
+			return bytes.toByteArray();
+		}catch(IOException e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void writeGraph(DataOutputStream out, CompactDirectedWeightedLabeledGraph g) throws IOException {
+		int nVertices = g.getNumVertices(), nEdges = g.getNumEdges();
+		out.writeByte((g.isWeighted() ? FLAG_WEIGHTED : 0) | FLAG_NUMERIC_VERTICES);
+		writeVarLong(out, nVertices);
+		writeVarLong(out, nEdges);
+		for(int v = 0; v < nVertices; v++)
+			writeVarLong(out, v == 0 ? zigzag(g.getVertexId(0)) : g.getVertexId(v) - g.getVertexId(v - 1));
+		for(int v = 0; v < nVertices; v++)
+			out.writeFloat((float)g.getVertexWeight(v));
+
+		Map<String,Integer> edgeLabels = new LinkedHashMap<>();
+		for(int e = 0; e < nEdges; e++)
+			edgeLabels.putIfAbsent(g.getEdgeLabel(e), edgeLabels.size());
+		writeVarLong(out, edgeLabels.size());
+		for(String label : edgeLabels.keySet())
+			writeString(out, label);
+		for(int v = 0; v < nVertices; v++){
+			writeVarLong(out, g.getEdgesEnd(v) - g.getEdgesStart(v));
+			for(int e = g.getEdgesStart(v); e < g.getEdgesEnd(v); e++){
+				writeVarLong(out, g.getEdgeTarget(e));
+				writeVarLong(out, edgeLabels.get(g.getEdgeLabel(e)));
+				out.writeFloat((float)g.getEdgeWeight(e));
+			}
+		}
+	}
+
+	private static void writeGraph(DataOutputStream out, LabeledMeasurableGraph g) throws IOException {
+		List<String> vertices = new ArrayList<>(g.vertexSet());
+		long[] ids = parseIds(vertices);
+		boolean numeric = ids != null;
+		if(numeric){
+			vertices.sort(Comparator.comparingLong(Long::parseLong));
+			ids = parseIds(vertices);
+		}
+		Map<String,Integer> vertexIndexes = new LinkedHashMap<>();
+		for(String vertex : vertices)
+			vertexIndexes.put(vertex, vertexIndexes.size());
+
+		out.writeByte((g.isWeighted() ? FLAG_WEIGHTED : 0) | (numeric ? FLAG_NUMERIC_VERTICES : 0));
+		writeVarLong(out, vertices.size());
+		writeVarLong(out, g.getNumEdges());
+		for(int v = 0; v < vertices.size(); v++){
+			if(numeric)
+				writeVarLong(out, v == 0 ? zigzag(ids[0]) : ids[v] - ids[v - 1]);
+			else
+				writeString(out, vertices.get(v));
+		}
+		for(String vertex : vertices){
+			Double w = g.getVertexWeight(vertex);
+			if(w == null || w.isNaN()) throw new IllegalStateException("invalid vertex weight for ["+vertex+"]");
+			out.writeFloat(w.floatValue());
+		}
+
+		List<List<LabeledWeightedEdge>> outgoingEdges = new ArrayList<>(vertices.size());
+		Map<String,Integer> edgeLabels = new LinkedHashMap<>();
+		for(String vertex : vertices){
+			List<LabeledWeightedEdge> edges = new ArrayList<>(g.outgoingEdgesOf(vertex));
+			if(numeric)
+				edges.sort(Comparator.<LabeledWeightedEdge>comparingInt(e -> vertexIndexes.get((String)e.getTarget())).thenComparing(e -> String.valueOf(e.getLabel())));
+			for(LabeledWeightedEdge edge : edges)
+				edgeLabels.putIfAbsent(String.valueOf(edge.getLabel()), edgeLabels.size());
+			outgoingEdges.add(edges);
+		}
+		writeVarLong(out, edgeLabels.size());
+		for(String label : edgeLabels.keySet())
+			writeString(out, label);
+		for(List<LabeledWeightedEdge> edges : outgoingEdges){
+			writeVarLong(out, edges.size());
+			for(LabeledWeightedEdge edge : edges){
+				double w = edge.getWeight();
+				if(Double.isNaN(w)) throw new IllegalStateException("invalid edge weight for ["+edge+"]");
+				writeVarLong(out, vertexIndexes.get((String)edge.getTarget()));
+				writeVarLong(out, edgeLabels.get(String.valueOf(edge.getLabel())));
+				out.writeFloat((float)w);
+			}
+		}
+	}
+
+	/** Returns the vertex names as numbers, or null if some is not numeric. */
+	private static long[] parseIds(List<String> vertices) {
+		long[] ids = new long[vertices.size()];
+		try{
+			for(int i = 0; i < ids.length; i++)
+				ids[i] = Long.parseLong(vertices.get(i));
+		}catch(NumberFormatException e){
+			return null;
+		}
+		return ids;
+	}
+
+	/**
+	 * @param compact if true, the graph is loaded as a {@link CompactDirectedWeightedLabeledGraph}, which requires numeric vertex names
+	 */
+	public static GraphSample read(File file, boolean compact) {
+		try{
+			return fromBytes(Files.readAllBytes(file.toPath()), compact);
+		}catch(IOException e){
+			throw new RuntimeException(e);
+		}catch(RuntimeException e){
+			Logs.severe("Error while reading GraphSample from file " + file);
+			throw e;
+		}
+	}
+
+	public static GraphSample fromBytes(byte[] bytes, boolean compact) {
+		ByteBuffer in = ByteBuffer.wrap(bytes);
+		Preconditions.checkArgument(in.getInt() == MAGIC, "not a binary graph sample");
+		byte version = in.get();
+		Preconditions.checkArgument(version == VERSION, "unsupported binary graph sample version: " + version);
+		long id = unzigzag(readVarLong(in));
+		int nLabels = (int)readVarLong(in);
+		Set<String> labels = null;
+		if(nLabels > 0){
+			labels = new LinkedHashSet<>(nLabels);
+			for(int i = 0; i < nLabels; i++)
+				labels.add(readString(in));
+		}
+
+		int flags = in.get();
+		boolean weighted = (flags & FLAG_WEIGHTED) != 0, numeric = (flags & FLAG_NUMERIC_VERTICES) != 0;
+		int nVertices = (int)readVarLong(in), nEdges = (int)readVarLong(in);
+		long[] ids = numeric ? new long[nVertices] : null;
+		String[] names = numeric ? null : new String[nVertices];
+		for(int v = 0; v < nVertices; v++){
+			if(numeric)
+				ids[v] = v == 0 ? unzigzag(readVarLong(in)) : ids[v - 1] + readVarLong(in);
+			else
+				names[v] = readString(in);
+		}
+		double[] vertexWeights = new double[nVertices];
+		for(int v = 0; v < nVertices; v++)
+			vertexWeights[v] = in.getFloat();
+		String[] edgeLabels = new String[(int)readVarLong(in)];
+		for(int i = 0; i < edgeLabels.length; i++)
+			edgeLabels[i] = readString(in);
+
+		if(compact){
+			Preconditions.checkArgument(numeric, "compact graphs require numeric vertex names");
+			int[] edgeOffsets = new int[nVertices + 1], edgeTargets = new int[nEdges];
+			double[] edgeWeights = new double[nEdges];
+			String[] labelsOfEdges = new String[nEdges];
+			boolean defaultLabelsOnly = true;
+			int e = 0;
+			for(int v = 0; v < nVertices; v++){
+				edgeOffsets[v] = e;
+				for(int k = (int)readVarLong(in); k > 0; k--, e++){
+					edgeTargets[e] = (int)readVarLong(in);
+					labelsOfEdges[e] = edgeLabels[(int)readVarLong(in)];
+					edgeWeights[e] = in.getFloat();
+					defaultLabelsOnly &= labelsOfEdges[e].isEmpty();
+				}
+			}
+			edgeOffsets[nVertices] = e;
+			return new GraphSample(id, labels, CompactDirectedWeightedLabeledGraph.of(ids, weighted ? vertexWeights : null, edgeOffsets, edgeTargets, edgeWeights, defaultLabelsOnly ? null : labelsOfEdges));
+		}
+
+		DirectedWeightedLabeledGraph g = new DirectedWeightedLabeledGraph(weighted);
+		if(numeric){
+			names = new String[nVertices];
+			for(int v = 0; v < nVertices; v++)
+				names[v] = String.valueOf(ids[v]);
+		}
+		for(int v = 0; v < nVertices; v++)
+			g.addVertex(names[v], vertexWeights[v]);
+		for(int v = 0; v < nVertices; v++){
+			for(int k = (int)readVarLong(in); k > 0; k--){
+				String target = names[(int)readVarLong(in)];
+				String label = edgeLabels[(int)readVarLong(in)];
+				g.addEdge(names[v], target, new LabeledWeightedEdge(names[v], target, label, in.getFloat()));
+			}
+		}
+		return new GraphSample(id, labels, g);
+	}
+
+	/** Converts a graph sample file between the text and binary formats, according to the file extensions. */
+	public static void convert(File inputFile, File outputFile) {
+		GraphDataset.writeSample(GraphDataset.loadSampleFromFile(inputFile), outputFile);
+	}
+
+	/** Converts all graph samples of a folder to the other format (binary, if toBinary, otherwise text), on the output folder. */
+	public static void convertFolder(File inputFolder, File outputFolder, boolean toBinary) {
+		FileUtils.mkDirs(outputFolder);
+		GraphDataset.forEachSampleInFolder(inputFolder, true, sample -> {
+			String filename = toBinary ? getFilename(sample.getId()) : GraphDataset.getGraphSampleFilename(sample.getId());
+			GraphDataset.writeSample(sample, new File(outputFolder, filename));
+		});
+	}
+
+	public static String getFilename(long id) {
+		return id + EXTENSION;
+	}
+
+	private static long zigzag(long v) {
+		return (v << 1) ^ (v >> 63);
+	}
+	private static long unzigzag(long v) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	private static void writeVarLong(DataOutputStream out, long v) throws IOException {
+		while((v & ~0x7FL) != 0){
+			out.writeByte((int)((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		out.writeByte((int)v);
+	}
+	private static long readVarLong(ByteBuffer in) {
+		long v = 0;
+		for(int shift = 0; ; shift += 7){
+			byte b = in.get();
+			v |= (long)(b & 0x7F) << shift;
+			if(b >= 0)
+				return v;
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		writeVarLong(out, bytes.length);
+		out.write(bytes);
+	}
+	private static String readString(ByteBuffer in) {
+		int length = (int)readVarLong(in);
+		String s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+		in.position(in.position() + length);
+		return s;
+	}
+}
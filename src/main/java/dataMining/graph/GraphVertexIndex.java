@@ -0,0 +1,89 @@
+package dataMining.graph;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongConsumer;
+import dataMining.retrieval.CandidatesIndex;
+import util.graph.CompactDirectedWeightedLabeledGraph;
+import util.graph.LabeledMeasurableGraph;
+
+/**
+ * Inverted index from vertex ids to the graphs containing them.
+ * Since MCS- and WGU-based similarities are 0 for graphs sharing no vertex, only graphs sharing at least one vertex are candidates.
+ * Vertex names must be numeric, as in fusion graphs.
+ */
+public class GraphVertexIndex implements CandidatesIndex<GraphSample> {
+
+	private final long[] vertexIds; //sorted, distinct
+	private final int[] postingsOffsets; //graphs containing vertexIds[i] are at [postingsOffsets[i], postingsOffsets[i+1])
+	private final int[] postings; //positions of the graphs in the indexed list
+
+	public GraphVertexIndex(List<GraphSample> samples) {
+		int total = 0;
+		for(GraphSample sample : samples)
+			total += sample.getGraph().getNumVertices();
+
+		long[] allIds = new long[total];
+		{
+			int[] pos = {0};
+			for(GraphSample sample : samples)
+				forEachVertexId(sample.getGraph(), id -> allIds[pos[0]++] = id);
+			Arrays.sort(allIds);
+		}
+		int nDistinct = 0;
+		for(int i = 0; i < total; i++)
+			if(i == 0 || allIds[i] != allIds[i - 1])
+				allIds[nDistinct++] = allIds[i];
+		vertexIds = Arrays.copyOf(allIds, nDistinct);
+
+		postingsOffsets = new int[nDistinct + 1];
+		for(GraphSample sample : samples)
+			forEachVertexId(sample.getGraph(), id -> postingsOffsets[Arrays.binarySearch(vertexIds, id) + 1]++);
+		for(int i = 0; i < nDistinct; i++)
+			postingsOffsets[i + 1] += postingsOffsets[i];
+
+		postings = new int[total];
+		int[] next = Arrays.copyOf(postingsOffsets, nDistinct);
+		for(int s = 0; s < samples.size(); s++){
+			int s_ = s;
+			forEachVertexId(samples.get(s).getGraph(), id -> postings[next[Arrays.binarySearch(vertexIds, id)]++] = s_);
+		}
+	}
+
+	@Override
+	public int[] getCandidates(GraphSample sample) {
+		int[] size = {0};
+		forEachVertexId(sample.getGraph(), id -> {
+			int v = Arrays.binarySearch(vertexIds, id);
+			if(v >= 0)
+				size[0] += postingsOffsets[v + 1] - postingsOffsets[v];
+		});
+		int[] candidates = new int[size[0]];
+		int[] pos = {0};
+		forEachVertexId(sample.getGraph(), id -> {
+			int v = Arrays.binarySearch(vertexIds, id);
+			if(v >= 0){
+				int n = postingsOffsets[v + 1] - postingsOffsets[v];
+				System.arraycopy(postings, postingsOffsets[v], candidates, pos[0], n);
+				pos[0] += n;
+			}
+		});
+		Arrays.sort(candidates);
+		int nDistinct = 0;
+		for(int i = 0; i < candidates.length; i++)
+			if(i == 0 || candidates[i] != candidates[i - 1])
+				candidates[nDistinct++] = candidates[i];
+		return nDistinct == candidates.length ? candidates : Arrays.copyOf(candidates, nDistinct);
+	}
+
+	private static void forEachVertexId(LabeledMeasurableGraph graph, LongConsumer consumer) {
+		if(graph instanceof CompactDirectedWeightedLabeledGraph){
+			CompactDirectedWeightedLabeledGraph g = (CompactDirectedWeightedLabeledGraph)graph;
+			for(int v = 0; v < g.getNumVertices(); v++)
+				consumer.accept(g.getVertexId(v));
+		}else{
+			for(String vertex : graph.vertexSet())
+				consumer.accept(Long.parseLong(vertex));
+		}
+	}
+}
@@ -109,7 +109,7 @@ public abstract class SubgraphsHandler {
 		Iterator<SampleSubgraph> subgraphs = extractSubgraphsIterator(sample);
 		PrintStream out = null;
 		try{
-			out = new PrintStream(destineFile);
+			out = FileUtils.createPrintStreamToFile(destineFile);
 			while(subgraphs.hasNext())
 				out.append(getSubgraphAsStringLine(subgraphs.next())).append('\n');
 			out.close();
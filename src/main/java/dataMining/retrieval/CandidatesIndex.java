@@ -0,0 +1,13 @@
+package dataMining.retrieval;
+
+/**
+ * Index over a list of response samples, used to restrict the similarity computations of a query to the responses that can have non-zero similarity to it.
+ */
+public interface CandidatesIndex<T> {
+
+	/**
+	 * Returns, in ascending order and without repetitions, the positions of the indexed samples that may have non-zero similarity to the given sample.
+	 * The remaining samples are assumed to have similarity 0.
+	 */
+	int[] getCandidates(T sample);
+}
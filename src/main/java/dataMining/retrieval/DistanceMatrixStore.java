@@ -0,0 +1,212 @@
+package dataMining.retrieval;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.google.common.base.Preconditions;
+import util.FileUtils;
+import util.Logs;
+import util.TimeWatcher;
+
+/**
+ * Binary matrix of distances (or similarities) among n samples, as floats, read through memory mapping, so rows are accessed without copies nor parsing.
+ * <p>
+ * Layout (big endian): a header of {@value #HEADER_SIZE} bytes (magic, version, flags, n), followed by the rows in order.
+ * The matrix is either full, with n values per row, or upper-triangular, for symmetric matrices, taking about half the space:
+ * the row i has the n - i values of the columns i to n - 1 (the diagonal included), the remaining ones being taken from the previous rows.
+ */
+public class DistanceMatrixStore {
+
+	public static final String EXTENSION = ".distanceMatrix";
+
+	private static final int MAGIC = 0x444D4154; //"DMAT"
+	private static final int VERSION = 1;
+	private static final int FLAG_UPPER_TRIANGULAR = 1;
+	static final int HEADER_SIZE = 16;
+	static final int VALUE_SIZE = 4;
+
+	/** Consumer of the values of a row. */
+	public interface ValueConsumer {
+		void accept(int column, float value);
+	}
+
+	private final int n;
+	private final boolean upperTriangular;
+	//the rows are mapped in chunks of whole rows, with at most Integer.MAX_VALUE bytes each:
+	private final MappedByteBuffer[] chunks;
+	private final int[] rowChunks, rowStarts; //chunk of each row, and its position in the chunk
+
+	private DistanceMatrixStore(FileChannel channel) throws IOException {
+		ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_SIZE);
+		Preconditions.checkArgument(header.getInt() == MAGIC, "not a distance matrix store");
+		int version = header.getInt();
+		Preconditions.checkArgument(version == VERSION, "unsupported distance matrix store version: " + version);
+		upperTriangular = (header.getInt() & FLAG_UPPER_TRIANGULAR) != 0;
+		n = header.getInt();
+		Preconditions.checkArgument(channel.size() >= HEADER_SIZE + valuesBefore(n, n, upperTriangular) * VALUE_SIZE, "incomplete distance matrix store");
+
+		rowChunks = new int[n];
+		rowStarts = new int[n];
+		int numChunks = 0;
+		long[] chunkStarts = new long[1], chunkEnds = new long[1]; //in bytes, after the header
+		for(int row = 0; row < n; row++){
+			long start = valuesBefore(row, n, upperTriangular) * VALUE_SIZE, end = start + (long)rowLength(row, n, upperTriangular) * VALUE_SIZE;
+			if(numChunks == 0 || end - chunkStarts[numChunks - 1] > Integer.MAX_VALUE){
+				if(numChunks == chunkStarts.length){
+					chunkStarts = Arrays.copyOf(chunkStarts, numChunks * 2);
+					chunkEnds = Arrays.copyOf(chunkEnds, numChunks * 2);
+				}
+				chunkStarts[numChunks++] = start;
+			}
+			chunkEnds[numChunks - 1] = end;
+			rowChunks[row] = numChunks - 1;
+			rowStarts[row] = (int)(start - chunkStarts[numChunks - 1]);
+		}
+		chunks = new MappedByteBuffer[n == 0 ? 0 : numChunks];
+		for(int c = 0; c < chunks.length; c++)
+			chunks[c] = channel.map(MapMode.READ_ONLY, HEADER_SIZE + chunkStarts[c], chunkEnds[c] - chunkStarts[c]);
+	}
+
+	public static DistanceMatrixStore open(File file) {
+		try(RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()){
+			return new DistanceMatrixStore(channel); //the mappings remain valid after closing the channel
+		}catch(IOException e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Returns whether the file is named as a store, i.e. with {@link #EXTENSION}. */
+	public static boolean isStore(File file) {
+		return file.getName().endsWith(EXTENSION);
+	}
+
+	/** Number of rows (and columns). */
+	public int size() {
+		return n;
+	}
+
+	public boolean isUpperTriangular() {
+		return upperTriangular;
+	}
+
+	private static long valuesBefore(int row, int n, boolean upperTriangular) {
+		return upperTriangular ? (long)row * n - (long)row * (row - 1) / 2 : (long)row * n;
+	}
+
+	private static int rowLength(int row, int n, boolean upperTriangular) {
+		return upperTriangular ? n - row : n;
+	}
+
+	/** Returns a read-only view over the mapped file of the values stored for the row: those of all columns, for full matrices, or of the columns from the row on, for upper-triangular ones. */
+	public FloatBuffer getStoredRow(int row) {
+		Preconditions.checkElementIndex(row, n);
+		ByteBuffer values = chunks[rowChunks[row]].duplicate();
+		values.position(rowStarts[row]).limit(rowStarts[row] + rowLength(row, n, upperTriangular) * VALUE_SIZE);
+		return values.slice().asFloatBuffer().asReadOnlyBuffer();
+	}
+
+	public float get(int row, int column) {
+		Preconditions.checkElementIndex(row, n);
+		Preconditions.checkElementIndex(column, n);
+		if(upperTriangular && column < row){
+			int aux = row;
+			row = column;
+			column = aux;
+		}
+		return chunks[rowChunks[row]].getFloat(rowStarts[row] + (upperTriangular ? column - row : column) * VALUE_SIZE);
+	}
+
+	/** Gives the values of all columns of the row, in order. For upper-triangular matrices, the columns before the row come from the previous rows. */
+	public void forEachInRow(int row, ValueConsumer consumer) {
+		if(upperTriangular)
+			for(int column = 0; column < row; column++)
+				consumer.accept(column, get(column, row));
+		FloatBuffer values = getStoredRow(row);
+		for(int column = upperTriangular ? row : 0; values.hasRemaining(); column++)
+			consumer.accept(column, values.get());
+	}
+
+	/**
+	 * Converts a matrix in a text file, one row per line with the values of all columns separated by whitespace, to a store.
+	 * Lines are parsed in parallel. If upperTriangular, the matrix is assumed to be symmetric, and only the values from the diagonal on are kept.
+	 */
+	public static void convertFromText(File textFile, File storeFile, boolean upperTriangular) {
+		int n = RankFileParser.countColumns(textFile);
+		Logs.finer("converting matrix of " + n + " rows from " + textFile + " to " + storeFile);
+		TimeWatcher time = new TimeWatcher();
+		AtomicInteger numRows = new AtomicInteger();
+		ThreadLocal<float[]> rows = ThreadLocal.withInitial(() -> new float[n]);
+		try(Writer writer = new Writer(storeFile, n, upperTriangular)){
+			RankFileParser.forEachMatrixRow(textFile, 4 * Runtime.getRuntime().availableProcessors(), (row, line, length) -> {
+				Preconditions.checkArgument(row < n, "not a square matrix, it has more than " + n + " rows: " + textFile);
+				float[] values = rows.get();
+				int numValues = RankFileParser.forEachValue(line, length, (column, value) -> {
+					if(column < n)
+						values[column] = (float)value;
+				});
+				Preconditions.checkArgument(numValues == n, "row " + row + " with " + numValues + " values instead of " + n + ": " + textFile);
+				writer.writeRow((int)row, values);
+				numRows.incrementAndGet();
+			});
+		}
+		Preconditions.checkArgument(numRows.get() == n, "not a square matrix, it has " + numRows + " rows and " + n + " columns: " + textFile);
+		Logs.finer("matrix converted after " + time);
+	}
+
+	/** Writes a store, given its rows in any order. Rows can be written concurrently. */
+	public static class Writer implements Closeable {
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+		private final int n;
+		private final boolean upperTriangular;
+
+		public Writer(File storeFile, int n, boolean upperTriangular) {
+			FileUtils.mkDirsForFile(storeFile);
+			FileUtils.deleteQuietly(storeFile);
+			this.file = FileUtils.createRandomAccessFile(storeFile, "rw");
+			this.channel = file.getChannel();
+			this.n = n;
+			this.upperTriangular = upperTriangular;
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).putInt(upperTriangular ? FLAG_UPPER_TRIANGULAR : 0).putInt(n).flip();
+			write(header, 0);
+		}
+
+		/** Writes the row, given the values of all its columns (for upper-triangular matrices, those before the row are ignored). */
+		public void writeRow(int row, float[] values) {
+			Preconditions.checkElementIndex(row, n);
+			Preconditions.checkArgument(values.length >= n, "row with less than " + n + " values");
+			int first = upperTriangular ? row : 0;
+			ByteBuffer buffer = ByteBuffer.allocate((n - first) * VALUE_SIZE);
+			buffer.asFloatBuffer().put(values, first, n - first);
+			write(buffer, HEADER_SIZE + valuesBefore(row, n, upperTriangular) * VALUE_SIZE);
+		}
+
+		private void write(ByteBuffer buffer, long position) {
+			try{
+				while(buffer.hasRemaining())
+					position += channel.write(buffer, position);
+			}catch(IOException e){
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public void close() {
+			try{
+				file.setLength(HEADER_SIZE + valuesBefore(n, n, upperTriangular) * VALUE_SIZE);
+				file.close();
+			}catch(IOException e){
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
@@ -5,14 +5,13 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
-import java.text.DecimalFormat;
 import java.util.Scanner;
 import com.google.common.base.Preconditions;
+import util.DecimalEncoder;
 import util.ExceptionUtils;
 import util.FileUtils;
 import util.Logs;
 import util.MathUtils;
-import util.StringUtils;
 
 public class QualityQueries {
     public float[] precisions;
@@ -85,44 +84,47 @@ public class QualityQueries {
     }
     public Writer save(Writer out, boolean includeDetail) {
         try{
-			DecimalFormat decimalFormatter = StringUtils.getDecimalFormatter();
+			DecimalEncoder decimalEncoder = DecimalEncoder.DEFAULT;
 			out.write("#Line 1 indicates numQueries. Line 2 contains: NDCG@,AP@,mean P@,mean recall@,mean F-measure@,MAP,N-S");
 			if(includeDetail)
 				out.write(". Following lines: precisions,recalls,averagePrecisions,NDCGs,N-Ss");
 			out.write("\n");
 			out.write(String.valueOf(precisions.length));
 			out.write("\n");
-			out.write(decimalFormatter.format(NDCG()));
+			decimalEncoder.write(out, NDCG());
 			out.write(",");
-			out.write(decimalFormatter.format(meanAveragePrecision()));
+			decimalEncoder.write(out, meanAveragePrecision());
 			out.write(",");
-			out.write(decimalFormatter.format(meanPrecision()));
+			decimalEncoder.write(out, meanPrecision());
 			out.write(",");
-			out.write(decimalFormatter.format(meanRecall()));
+			decimalEncoder.write(out, meanRecall());
 			out.write(",");
-			out.write(decimalFormatter.format(meanFMeasure()));
+			decimalEncoder.write(out, meanFMeasure());
 			out.write(",");
-			out.write(mAP != null ? decimalFormatter.format(mAP) : "not_computed");
+			if(mAP != null)
+				decimalEncoder.write(out, mAP);
+			else
+				out.write("not_computed");
 			out.write(",");
-			out.write(decimalFormatter.format(meanNSScore()));
+			decimalEncoder.write(out, meanNSScore());
 			if(includeDetail){
 				out.write("\n");
-				printArray(out, decimalFormatter, precisions);
-				printArray(out, decimalFormatter, recalls);
-				printArray(out, decimalFormatter, averagePrecisions);
-				printArray(out, decimalFormatter, NDCGs);
-				printArray(out, decimalFormatter, NS);
+				printArray(out, decimalEncoder, precisions);
+				printArray(out, decimalEncoder, recalls);
+				printArray(out, decimalEncoder, averagePrecisions);
+				printArray(out, decimalEncoder, NDCGs);
+				printArray(out, decimalEncoder, NS);
 			}
 			out.flush();  // important!
 			return out;
 		}catch(IOException e){ throw ExceptionUtils.asRuntimeException(e); }
     }
 
-    private void printArray(Writer out, DecimalFormat decimalFormatter, float[] values) throws IOException {
+    private void printArray(Writer out, DecimalEncoder decimalEncoder, float[] values) throws IOException {
         for(int i = 0; i < values.length; i++){
             if(i > 0)
                 out.write(",");
-            out.write(decimalFormatter.format(values[i]));
+            decimalEncoder.write(out, values[i]);
         }
         out.write("\n");
     }
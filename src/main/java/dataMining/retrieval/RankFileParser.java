@@ -0,0 +1,434 @@
+package dataMining.retrieval;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import com.google.common.base.Throwables;
+
+/**
+ * Parser of rank files working directly over the bytes of the file, decoding ids and weights to primitives, instead of Scanner and String.split.
+ * The file is read in blocks as the parsing advances, so nothing after the last requested element is read.
+ * <p>
+ * Fields are separated by whitespace, and lines by '\n' or '\r' (empty lines are ignored).
+ * Numbers in unusual formats (too many digits, big exponents, etc.) are decoded by Long.valueOf and Float.valueOf, so the results and errors are the same as theirs.
+ * <p>
+ * It also reads matrix files (e.g. of distances), one row per line, whose lines are read into reused buffers and can be parsed in parallel (see {@link #forEachMatrixRow(File, int, RowConsumer)}).
+ */
+class RankFileParser {
+
+	/** Consumer of the elements of a rank. The weight is meaningless if the rank is unweighted. */
+	interface EntryConsumer {
+		void accept(int index, long id, boolean weighted, float weight);
+	}
+
+	/** Consumer of the lines of a matrix file, given as the row index and the bytes of the line. */
+	interface RowConsumer {
+		void accept(long row, byte[] line, int length);
+	}
+
+	/** Consumer of the values of a matrix row. */
+	interface ValueConsumer {
+		void accept(int column, double value);
+	}
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final double[] POW10 = new double[23]; //powers of 10 exactly representable as double
+	static {
+		POW10[0] = 1;
+		for(int i = 1; i < POW10.length; i++)
+			POW10[i] = POW10[i - 1] * 10;
+	}
+
+	private final InputStream in;
+	private final byte[] buffer;
+	private int pos, end;
+	private boolean eof;
+	//current token:
+	private byte[] token = new byte[32];
+	private int tokenLength;
+	private int lineLength; //of the last line read by readLine
+
+	private RankFileParser(InputStream in, int bufferSize) {
+		this.in = in;
+		this.buffer = new byte[bufferSize];
+	}
+
+	/**
+	 * Gives the first 'limit' elements (or all, if limit < 0) of the rank in the file, in one of the formats:
+	 * 'id' per line (unweighted), 'weight id' or 'id weight' per line (weighted; the order is detected by the first line, being 'id weight' if its second field contains '.').
+	 */
+	static void parseRank(File file, int limit, EntryConsumer consumer) {
+		if(limit == 0)
+			return;
+		try(InputStream in = new FileInputStream(file)){
+			new RankFileParser(in, (int)Math.min(BUFFER_SIZE, Math.max(1, file.length()))).parseRank(limit, consumer);
+		}catch(IOException e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void parseRank(int limit, EntryConsumer consumer) throws IOException {
+		if(!nextToken())
+			return;
+		int idxScore = 0; //index of the weight in the line, if weighted
+		boolean pair;
+		{
+			byte[] first = Arrays.copyOf(token, tokenLength);
+			int firstLength = tokenLength;
+			pair = nextTokenInLine();
+			if(pair){
+				boolean secondIsScore = contains(token, tokenLength, (byte)'.');
+				idxScore = secondIsScore ? 1 : 0;
+				float weight = parseFloat(secondIsScore ? token : first, secondIsScore ? tokenLength : firstLength);
+				long id = parseLong(secondIsScore ? first : token, secondIsScore ? firstLength : tokenLength);
+				consumer.accept(0, id, true, weight);
+			}else{
+				consumer.accept(0, parseLong(first, firstLength), false, Float.NaN);
+			}
+			skipLine();
+		}
+		for(int consumed = 1; limit < 0 || consumed < limit; consumed++){
+			if(!nextToken())
+				return;
+			if(pair){
+				float weight = 0;
+				long id = 0;
+				if(idxScore == 0)
+					weight = parseFloat(token, tokenLength);
+				else
+					id = parseLong(token, tokenLength);
+				if(!nextTokenInLine())
+					throw new IllegalArgumentException("line without weight in weighted rank, at element "+consumed);
+				if(idxScore == 0)
+					id = parseLong(token, tokenLength);
+				else
+					weight = parseFloat(token, tokenLength);
+				consumer.accept(consumed, id, true, weight);
+			}else{
+				consumer.accept(consumed, parseLong(token, tokenLength), false, Float.NaN);
+			}
+			skipLine();
+		}
+	}
+
+	/**
+	 * Gives the ids of each line of a file with one rank per line (ids separated by whitespace), from the field 'offset' on, up to 'maxRankSize' ids (or all, if maxRankSize < 0).
+	 * The remaining fields of each line are skipped without being decoded.
+	 */
+	static void parseRanksPerLine(File file, int maxRankSize, int offset, Consumer<List<Long>> consumer) {
+		try(InputStream in = new FileInputStream(file)){
+			RankFileParser parser = new RankFileParser(in, BUFFER_SIZE);
+			while(parser.nextToken()){
+				List<Long> rank = maxRankSize > 0 ? new ArrayList<>(maxRankSize) : new ArrayList<>();
+				int field = 0;
+				do{
+					if(field >= offset){
+						if(maxRankSize >= 0 && rank.size() >= maxRankSize)
+							break;
+						rank.add(parseLong(parser.token, parser.tokenLength));
+					}
+					field++;
+				}while(parser.nextTokenInLine());
+				parser.skipLine();
+				consumer.accept(rank);
+			}
+		}catch(IOException e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Gives the lines of a matrix file (one row per line) to the consumer, in parallel.
+	 * Lines are read in batches of 'batchSize' ones, into buffers reused from batch to batch, and each batch is consumed while the next one is read.
+	 */
+	static void forEachMatrixRow(File file, int batchSize, RowConsumer consumer) {
+		try(InputStream in = new FileInputStream(file)){
+			RankFileParser parser = new RankFileParser(in, BUFFER_SIZE);
+			//two sets of line buffers: one being read, the other being consumed
+			byte[][][] lines = new byte[2][batchSize][];
+			int[][] lengths = new int[2][batchSize];
+			for(byte[][] batch : lines)
+				Arrays.setAll(batch, i -> new byte[1024]);
+			CompletableFuture<Void> consuming = CompletableFuture.completedFuture(null);
+			long firstRow = 0;
+			for(int b = 0; ; b ^= 1){
+				byte[][] batch = lines[b];
+				int[] batchLengths = lengths[b];
+				int n = 0;
+				for(byte[] line; n < batchSize && (line = parser.readLine(batch[n])) != null; n++){
+					batch[n] = line;
+					batchLengths[n] = parser.lineLength;
+				}
+				join(consuming);
+				if(n == 0)
+					return;
+				long batchFirstRow = firstRow;
+				int batchSizeRead = n;
+				consuming = CompletableFuture.runAsync(() -> IntStream.range(0, batchSizeRead).parallel().forEach(i -> consumer.accept(batchFirstRow + i, batch[i], batchLengths[i])));
+				firstRow += n;
+			}
+		}catch(IOException e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void join(CompletableFuture<Void> future) {
+		try{
+			future.join();
+		}catch(CompletionException e){
+			Throwables.propagateIfPossible(e.getCause());
+			throw e;
+		}
+	}
+
+	/** Returns the number of values in the first line of a matrix file. */
+	static int countColumns(File file) {
+		try(InputStream in = new FileInputStream(file)){
+			RankFileParser parser = new RankFileParser(in, BUFFER_SIZE);
+			byte[] line = parser.readLine(new byte[1024]);
+			if(line == null)
+				return 0;
+			return forEachValue(line, parser.lineLength, (column, value) -> {});
+		}catch(IOException e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Gives the values of a matrix row, separated by whitespace, decoded as by Double.parseDouble. Returns the number of values. */
+	static int forEachValue(byte[] line, int length, ValueConsumer consumer) {
+		int column = 0;
+		for(int i = 0; ; column++){
+			while(i < length && (isSpace(line[i]) || isLineEnd(line[i])))
+				i++;
+			if(i == length)
+				return column;
+			int start = i;
+			while(i < length && !isSpace(line[i]) && !isLineEnd(line[i]))
+				i++;
+			consumer.accept(column, parseDouble(line, start, i - start));
+		}
+	}
+
+	/** Reads the next line into the given array, or into a bigger copy of it if needed, which is returned (or null, at the end of the file). The length is left in {@link #lineLength}. */
+	private byte[] readLine(byte[] line) throws IOException {
+		lineLength = 0;
+		if(pos == end && !fill())
+			return null;
+		while(true){
+			int start = pos;
+			while(pos < end && buffer[pos] != '\n')
+				pos++;
+			int n = pos - start;
+			if(lineLength + n > line.length)
+				line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + n));
+			System.arraycopy(buffer, start, line, lineLength, n);
+			lineLength += n;
+			if(pos < end){ //line end found
+				pos++;
+				break;
+			}
+			if(!fill())
+				break;
+		}
+		if(lineLength > 0 && line[lineLength - 1] == '\r')
+			lineLength--;
+		return line;
+	}
+
+	private boolean fill() throws IOException {
+		if(eof)
+			return false;
+		end = in.read(buffer, 0, buffer.length);
+		pos = 0;
+		if(end <= 0){
+			end = 0;
+			eof = true;
+			return false;
+		}
+		return true;
+	}
+
+	private int read() throws IOException {
+		if(pos == end && !fill())
+			return -1;
+		return buffer[pos++] & 0xFF;
+	}
+
+	private void unread() {
+		pos--;
+	}
+
+	private static boolean isLineEnd(int c) {
+		return c == '\n' || c == '\r';
+	}
+
+	private static boolean isSpace(int c) {
+		return c == ' ' || c == '\t' || c == '\f' || c == 0x0B;
+	}
+
+	/** Reads the next token, from the current line or the following non-empty ones. Returns false at the end of the file. */
+	private boolean nextToken() throws IOException {
+		int c;
+		do{
+			c = read();
+		}while(isSpace(c) || isLineEnd(c));
+		if(c < 0)
+			return false;
+		unread();
+		readToken();
+		return true;
+	}
+
+	/** Reads the next token of the current line. Returns false if the line has no more tokens, leaving the line end to be consumed. */
+	private boolean nextTokenInLine() throws IOException {
+		int c;
+		do{
+			c = read();
+		}while(isSpace(c));
+		if(c < 0)
+			return false;
+		unread();
+		if(isLineEnd(c))
+			return false;
+		readToken();
+		return true;
+	}
+
+	private void readToken() throws IOException {
+		tokenLength = 0;
+		for(int c = read(); c >= 0; c = read()){
+			if(isSpace(c) || isLineEnd(c)){
+				unread();
+				return;
+			}
+			if(tokenLength == token.length)
+				token = Arrays.copyOf(token, tokenLength * 2);
+			token[tokenLength++] = (byte)c;
+		}
+	}
+
+	/** Skips the rest of the current line, including its end. */
+	private void skipLine() throws IOException {
+		int c;
+		do{
+			c = read();
+		}while(c != -1 && !isLineEnd(c));
+	}
+
+	private static boolean contains(byte[] bytes, int length, byte b) {
+		for(int i = 0; i < length; i++)
+			if(bytes[i] == b)
+				return true;
+		return false;
+	}
+
+	static long parseLong(byte[] bytes, int length) {
+		int i = 0;
+		boolean negative = false;
+		if(length > 0 && (bytes[0] == '-' || bytes[0] == '+')){
+			negative = bytes[0] == '-';
+			i = 1;
+		}
+		if(i == length || length - i > 18) //empty, or possibly overflowing
+			return Long.valueOf(new String(bytes, 0, length, StandardCharsets.UTF_8));
+		long value = 0;
+		for(; i < length; i++){
+			int d = bytes[i] - '0';
+			if(d < 0 || d > 9)
+				return Long.valueOf(new String(bytes, 0, length, StandardCharsets.UTF_8));
+			value = value * 10 + d;
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses decimals giving the same result as Float.valueOf: the value is first computed as a correctly rounded double (see {@link #parseDecimal(byte[], int, int)}),
+	 * which rounds to the same float as the exact value unless it falls exactly in the middle of two floats.
+	 */
+	static float parseFloat(byte[] bytes, int length) {
+		double value = parseDecimal(bytes, 0, length);
+		if(Double.isNaN(value) || isFloatMidpoint(value))
+			return Float.valueOf(new String(bytes, 0, length, StandardCharsets.UTF_8));
+		return (float)value;
+	}
+
+	/** Parses decimals giving the same result as Double.parseDouble. */
+	static double parseDouble(byte[] bytes, int offset, int length) {
+		double value = parseDecimal(bytes, offset, length);
+		return Double.isNaN(value) ? Double.parseDouble(new String(bytes, offset, length, StandardCharsets.UTF_8)) : value;
+	}
+
+	/**
+	 * Parses decimals as [sign]digits[.digits][(e|E)[sign]digits] with up to 15 significant digits and a resulting power of 10 up to 22 in magnitude,
+	 * as a correctly rounded double (an exact integer multiplied or divided by an exact power of 10). Returns NaN for other formats.
+	 */
+	private static double parseDecimal(byte[] bytes, int offset, int length) {
+		int i = offset, end = offset + length;
+		boolean negative = false;
+		if(length > 0 && (bytes[i] == '-' || bytes[i] == '+')){
+			negative = bytes[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0, fractionDigits = -1;
+		boolean anyDigit = false;
+		for(; i < end; i++){
+			byte b = bytes[i];
+			if(b == '.' && fractionDigits < 0){
+				fractionDigits = 0;
+				continue;
+			}
+			if(b == 'e' || b == 'E')
+				break;
+			int d = b - '0';
+			if(d < 0 || d > 9 || digits >= 15 || fractionDigits >= POW10.length - 1)
+				return Double.NaN;
+			anyDigit = true;
+			if(mantissa != 0 || d != 0)
+				digits++;
+			mantissa = mantissa * 10 + d;
+			if(fractionDigits >= 0)
+				fractionDigits++;
+		}
+		if(!anyDigit)
+			return Double.NaN;
+		int scale = -Math.max(0, fractionDigits);
+		if(i < end){ //exponent
+			i++;
+			boolean negativeExponent = false;
+			if(i < end && (bytes[i] == '-' || bytes[i] == '+')){
+				negativeExponent = bytes[i] == '-';
+				i++;
+			}
+			if(i == end || end - i > 3)
+				return Double.NaN;
+			int exponent = 0;
+			for(; i < end; i++){
+				int d = bytes[i] - '0';
+				if(d < 0 || d > 9)
+					return Double.NaN;
+				exponent = exponent * 10 + d;
+			}
+			scale += negativeExponent ? -exponent : exponent;
+		}
+		if(scale < -(POW10.length - 1) || scale > POW10.length - 1)
+			return Double.NaN;
+		double value = scale < 0 ? mantissa / POW10[-scale] : mantissa * POW10[scale];
+		return negative ? -value : value;
+	}
+
+	/** Whether the double is exactly halfway between two consecutive floats (in the range of normal floats). */
+	private static boolean isFloatMidpoint(double value) {
+		long bits = Double.doubleToRawLongBits(value);
+		return (bits & 0x1FFFFFFFL) == 0x10000000L;
+	}
+}
@@ -3,16 +3,26 @@ package dataMining.retrieval;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.IntToLongFunction;
+import java.util.function.LongPredicate;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import com.google.common.base.Preconditions;
 import dataMining.Sample;
 import dataMining.distance.DistancesIO;
 import dataMining.distance.SampleDistanceMeasurer;
+import dataMining.distance.SampleMultiSimilarityMeasurer;
 import util.Logs;
 import util.MathUtils;
 import util.Pair;
@@ -20,9 +30,23 @@ import util.TimeWatcher;
 
 public class RankGenerator {
 
+    private static final int MAX_TILE_SIZE = 64;
+    private static final int MATRIX_ROWS_BATCH_SIZE = 4 * Runtime.getRuntime().availableProcessors();
+
     /** generated ranks considering samples as both queries and responses */
-    public static <T extends Sample> Pair<T,RankedList>[] generateRanks(ArrayList<T> samples, SampleDistanceMeasurer<T> similarityFunction, int rankSizeLimit,
+    public static <T extends Sample> List<Pair<T,RankedList>> generateRanks(ArrayList<T> samples, SampleDistanceMeasurer<T> similarityFunction, int rankSizeLimit,
 		boolean samplesCanBeDestroyed, boolean normalize, File outputDir)
+    {
+        return generateRanks(samples, similarityFunction, null, rankSizeLimit, samplesCanBeDestroyed, normalize, outputDir);
+    }
+
+    /**
+     * generated ranks considering samples as both queries and responses.
+     * @param indexer optional. Creates, from the samples sorted by id, an index such that only the candidate pairs have their similarities computed,
+     * being 0 the similarity of the remaining ones, which only fill the ranks up to rankSizeLimit.
+     */
+    public static <T extends Sample> List<Pair<T,RankedList>> generateRanks(ArrayList<T> samples, SampleDistanceMeasurer<T> similarityFunction,
+		Function<List<T>,CandidatesIndex<T>> indexer, int rankSizeLimit, boolean samplesCanBeDestroyed, boolean normalize, File outputDir)
     {
         final int numRanks = samples.size();
         Preconditions.checkArgument(numRanks > 0);
@@ -33,9 +57,11 @@ public class RankGenerator {
         //sort the samples so the ranks and therefore the quality measurements are comparable:
         Collections.sort(samples, (a,b) -> Long.compare(a.getId(), b.getId()));
 
-        Pair<T,RankedList>[] ranks = new Pair[numRanks];
+        List<Pair<T,RankedList>> ranks = new ArrayList<>(numRanks);
         for (int i = 0; i < numRanks; i++)
-            ranks[i] = new Pair<>(samples.get(i), new RankedList(rankSizeLimit, true));
+            ranks.add(new Pair<>(samples.get(i), new RankedList(rankSizeLimit, true)));
+
+        CandidatesIndex<T> candidatesIndex = indexer == null ? null : indexer.apply(samples);
 
         if(samplesCanBeDestroyed){ //destroy original dataset object to save some memory:
             samples.clear();
@@ -43,23 +69,18 @@ public class RankGenerator {
             samples = null;
         }
 
-        TimeWatcher logPooler = new TimeWatcher(0);
-        for (int i = 0; i < numRanks; i++) {
-            Pair<T,RankedList> rank = ranks[i];
-            T sample = rank.getA();
-            if(logPooler.checkSecondsSpent(30))
-                Logs.finest("Creating ranks... now on index " + i);
-
-            //como as listas sao montadas para amostras que sao tanto queries quanto retornos de consulta (i.e. dev x dev), colocamos a propria amostra como retorno da lista dela e tambem evitamos recomputo de d(A,B) e d(B,A) supondo medida simétrica
-            rank.getB().add(sample.getId(), 1);
-            MathUtils.forRange(i + 1, numRanks, true, j -> {
-                Pair<T,RankedList> anotherRank = ranks[j];
-                T anotherSample = anotherRank.getA();
-                float similarity = similarityFunction.getSimilarity(sample, anotherSample);
-                rank.getB().add(anotherSample.getId(), similarity);
-                anotherRank.getB().add(sample.getId(), similarity);
-            });
-        }
+        RankedList[] ranksOfSamples = new RankedList[numRanks];
+        for (int i = 0; i < numRanks; i++)
+            ranksOfSamples[i] = ranks.get(i).getB();
+        SampleMultiSimilarityMeasurer<T> similarities = new SampleMultiSimilarityMeasurer<T>() {
+            public int getNumSimilarities() {
+                return 1;
+            }
+            public void getSimilarities(T sampleA, T sampleB, float[] values) {
+                values[0] = similarityFunction.getSimilarity(sampleA, sampleB);
+            }
+        };
+        fillRanks(new RankedList[][]{ranksOfSamples}, i -> ranks.get(i).getA(), candidatesIndex, similarities, rankSizeLimit);
         Logs.finer("Ranks created after " + timeWatcher);
 
         if(normalize){
@@ -75,6 +96,121 @@ public class RankGenerator {
         return ranks;
     }
 
+    /**
+     * Fills the ranks of the samples (sorted by id) as both queries and responses, ranks[m][i] being the rank of the i-th sample by the m-th similarity.
+     * @param candidatesIndex optional, as given by the indexer of {@link #generateRanks(ArrayList, SampleDistanceMeasurer, Function, int, boolean, boolean, File)}
+     */
+    private static <T extends Sample> void fillRanks(RankedList[][] ranks, IntFunction<T> samples, CandidatesIndex<T> candidatesIndex,
+        SampleMultiSimilarityMeasurer<T> similarityFunctions, int rankSizeLimit)
+    {
+        final int numSimilarities = ranks.length, numRanks = ranks[0].length;
+
+        //como as listas sao montadas para amostras que sao tanto queries quanto retornos de consulta (i.e. dev x dev), colocamos a propria amostra como retorno da lista dela e tambem evitamos recomputo de d(A,B) e d(B,A) supondo medida simétrica
+        for(int i = 0; i < numRanks; i++)
+            for(RankedList[] ranksOfSimilarity : ranks)
+                ranksOfSimilarity[i].add(samples.apply(i).getId(), 1);
+
+        //the upper triangle of pairs is split into tiles of rows x columns, computed in parallel with local top-k buffers, which are merged into the ranks only at the end of each tile.
+        //With the index, the candidates of a row are spread over all columns, so each tile has all the columns after its rows.
+        final int tileSize = Math.max(numRanks / 40000 + 1, Math.min(MAX_TILE_SIZE, numRanks / Runtime.getRuntime().availableProcessors())); //the minimum keeps the number of tiles an int
+        final int numRowTiles = (numRanks + tileSize - 1) / tileSize;
+        final int numColumnTiles = candidatesIndex == null ? numRowTiles : 1;
+        //the column buffers span all the columns, since with the index a tile may reach any column after its rows; each worker takes a set from the pool and returns it after the tile
+        ConcurrentLinkedQueue<ColumnBuffers> columnBuffersPool = new ConcurrentLinkedQueue<>();
+        TimeWatcher logPooler = new TimeWatcher(0);
+        AtomicLong tilesDone = new AtomicLong();
+        MathUtils.forRange(0, numRowTiles * numColumnTiles, true, tile -> {
+            int rowTile = tile / numColumnTiles, columnTile = tile % numColumnTiles;
+            if(candidatesIndex == null && columnTile < rowTile)
+                return;
+            int i0 = rowTile * tileSize, i1 = Math.min(i0 + tileSize, numRanks);
+            int j0 = candidatesIndex == null ? columnTile * tileSize : i0;
+            int j1 = candidatesIndex == null ? Math.min(j0 + tileSize, numRanks) : numRanks;
+            RankedList[][] rowBuffers = new RankedList[numSimilarities][i1 - i0];
+            ColumnBuffers pooledColumnBuffers = columnBuffersPool.poll();
+            ColumnBuffers columnBuffers = pooledColumnBuffers != null ? pooledColumnBuffers : new ColumnBuffers(numSimilarities, numRanks);
+            float[] similarities = new float[numSimilarities];
+            for(int i = i0; i < i1; i++){
+                T sample = samples.apply(i);
+                int row = i - i0;
+                for(RankedList[] buffers : rowBuffers)
+                    buffers[row] = new RankedList(rankSizeLimit, true, false);
+                IntConsumer comparer = j -> {
+                    T anotherSample = samples.apply(j);
+                    similarityFunctions.getSimilarities(sample, anotherSample, similarities);
+                    RankedList[] buffersOfColumn = columnBuffers.get(j, rankSizeLimit);
+                    for(int m = 0; m < numSimilarities; m++){
+                        rowBuffers[m][row].add(anotherSample.getId(), similarities[m]);
+                        buffersOfColumn[m].add(sample.getId(), similarities[m]);
+                    }
+                };
+                if(candidatesIndex == null){
+                    for(int j = Math.max(i + 1, j0); j < j1; j++)
+                        comparer.accept(j);
+                }else{
+                    int[] candidates = candidatesIndex.getCandidates(sample);
+                    int start = Arrays.binarySearch(candidates, i);
+                    start = start < 0 ? -start - 1 : start + 1; //only the candidates after i
+                    for(int c = start; c < candidates.length; c++)
+                        comparer.accept(candidates[c]);
+                }
+            }
+            for(int m = 0; m < numSimilarities; m++)
+                mergeInto(ranks[m], i0, rowBuffers[m]);
+            columnBuffers.mergeInto(ranks);
+            columnBuffersPool.add(columnBuffers);
+            tilesDone.incrementAndGet();
+            if(logPooler.checkSecondsSpent(30))
+                Logs.finest("Creating ranks... "+tilesDone+" tiles done");
+        });
+        if(candidatesIndex != null){ //as in the exhaustive comparison, the ranks are completed with the non-candidates, taken with similarity 0:
+            MathUtils.forRange(0, numRanks, true, i -> {
+                int[] candidates = candidatesIndex.getCandidates(samples.apply(i));
+                int numEntries = 1 + candidates.length - (Arrays.binarySearch(candidates, i) < 0 ? 0 : 1);
+                for(RankedList[] ranksOfSimilarity : ranks)
+                    addNonCandidates(ranksOfSimilarity[i], numRanks, j -> samples.apply(j).getId(), i, candidates, numEntries, rankSizeLimit);
+            });
+        }
+    }
+
+    /**
+     * As {@link #generateRanks(ArrayList, SampleDistanceMeasurer, Function, int, boolean, boolean, File)}, for several similarities computed together for each pair of samples,
+     * giving one rank of each sample per similarity.
+     * @param outputDirs optional, the folder of the ranks of each similarity
+     * @return the ranks, ranks[m][i] being the rank of the i-th sample (in order of id) by the m-th similarity
+     */
+    public static <T extends Sample> RankedList[][] generateRanks(ArrayList<T> samples, SampleMultiSimilarityMeasurer<T> similarityFunctions,
+        Function<List<T>,CandidatesIndex<T>> indexer, int rankSizeLimit, boolean normalize, File[] outputDirs)
+    {
+        final int numRanks = samples.size(), numSimilarities = similarityFunctions.getNumSimilarities();
+        Preconditions.checkArgument(numRanks > 0 && numSimilarities > 0);
+        Preconditions.checkArgument(outputDirs == null || outputDirs.length == numSimilarities, "one output folder per similarity is required");
+
+        Logs.fine("Creating " + numRanks + " ranks for each of "+numSimilarities+" similarities "+similarityFunctions+", limit "+rankSizeLimit+(outputDirs==null?"":", on "+Arrays.toString(outputDirs))+" ...");
+        TimeWatcher timeWatcher = new TimeWatcher();
+
+        //sort the samples so the ranks and therefore the quality measurements are comparable:
+        Collections.sort(samples, (a,b) -> Long.compare(a.getId(), b.getId()));
+
+        RankedList[][] ranks = new RankedList[numSimilarities][numRanks];
+        for(RankedList[] ranksOfSimilarity : ranks)
+            for (int i = 0; i < numRanks; i++)
+                ranksOfSimilarity[i] = new RankedList(rankSizeLimit, true);
+
+        fillRanks(ranks, samples::get, indexer == null ? null : indexer.apply(samples), similarityFunctions, rankSizeLimit);
+        Logs.finer("Ranks created after " + timeWatcher);
+
+        for(int m = 0; m < numSimilarities; m++){
+            for (int i = 0; i < numRanks; i++){
+                if(normalize)
+                    ranks[m][i].normalize();
+                if(outputDirs != null)
+                    ranks[m][i].saveToFolder(samples.get(i).getId(), outputDirs[m]);
+            }
+        }
+        return ranks;
+    }
+
     public static void generateRanks(File metricesDir, boolean similaritiesOtherwiseDistances, int rankSizeLimit, boolean normalizeAsDecreasing, float min, float max, File outputDir) {
     	Map<Long,RankedList> ranksById = new HashMap<>();
     	float metricToItself = similaritiesOtherwiseDistances ? 1 : 0;
@@ -82,12 +218,12 @@ public class RankGenerator {
     		RankedList rankA = ranksById.get(idA);
     		RankedList rankB = ranksById.get(idB);
     		if(rankA == null) {
-    			rankA = new RankedList(rankSizeLimit, similaritiesOtherwiseDistances);
+    			rankA = new RankedList(rankSizeLimit, similaritiesOtherwiseDistances, false);
     			rankA.add(idA, metricToItself);
     			ranksById.put(idA, rankA);
     		}
     		if(rankB == null) {
-    			rankB = new RankedList(rankSizeLimit, similaritiesOtherwiseDistances);
+    			rankB = new RankedList(rankSizeLimit, similaritiesOtherwiseDistances, false);
     			rankB.add(idB, metricToItself);
     			ranksById.put(idB, rankB);
     		}
@@ -103,6 +239,232 @@ public class RankGenerator {
     	}
     }
 
+    /**
+     * Generates the ranks of the rows of a square matrix of distances (or similarities) into a {@link RankStore}. The ids are the indices of the rows and columns, from 0.
+     * The matrix is either a {@link DistanceMatrixStore} (named as such) or a text file, one row per line with the values of all columns separated by whitespace.
+     * Each line is parsed directly from its bytes into a bounded rank, with lines parsed in parallel while the next ones are read.
+     * @param queryIdsFilter if not null, only the rows it accepts get ranks
+     * @param responseIdsFilter if not null, only the columns it accepts enter the ranks
+     */
+    public static void generateRanksFromMatrix(File matrixFile, boolean similaritiesOtherwiseDistances, int rankSizeLimit, LongPredicate queryIdsFilter, LongPredicate responseIdsFilter, File storeFile) {
+    	if(DistanceMatrixStore.isStore(matrixFile)){
+    		generateRanksFromMatrix(DistanceMatrixStore.open(matrixFile), similaritiesOtherwiseDistances, rankSizeLimit, queryIdsFilter, responseIdsFilter, storeFile);
+    		return;
+    	}
+    	int numRows = RankFileParser.countColumns(matrixFile);
+    	TimeWatcher time = new TimeWatcher();
+    	AtomicLong numRanks = new AtomicLong();
+    	RankStore.Writer writer = new RankStore.Writer(storeFile, numRows, true);
+    	try{
+    		RankFileParser.forEachMatrixRow(matrixFile, MATRIX_ROWS_BATCH_SIZE, (row, line, length) -> {
+    			if(queryIdsFilter != null && !queryIdsFilter.test(row))
+    				return;
+    			RankedList rank = new RankedList(rankSizeLimit, similaritiesOtherwiseDistances, false);
+    			RankFileParser.forEachValue(line, length, (column, value) -> {
+    				if(responseIdsFilter == null || responseIdsFilter.test(column))
+    					rank.add(column, (float)value);
+    			});
+    			writer.add(row, rank);
+    			if(numRanks.incrementAndGet() % 1000 == 0)
+    				Logs.finest("now: "+numRanks+" ranks generated");
+    		});
+    	}finally{
+    		writer.close();
+    	}
+    	Logs.fine(numRanks+" ranks generated from "+matrixFile+" after "+time);
+    }
+
+    /** As {@link #generateRanksFromMatrix(File, boolean, int, LongPredicate, LongPredicate, File)}, with rows read in parallel straight from the mapped matrix. */
+    public static void generateRanksFromMatrix(DistanceMatrixStore matrix, boolean similaritiesOtherwiseDistances, int rankSizeLimit, LongPredicate queryIdsFilter, LongPredicate responseIdsFilter, File storeFile) {
+    	TimeWatcher time = new TimeWatcher();
+    	AtomicLong numRanks = new AtomicLong();
+    	RankStore.Writer writer = new RankStore.Writer(storeFile, matrix.size(), true);
+    	try{
+    		IntStream.range(0, matrix.size()).parallel().filter(row -> queryIdsFilter == null || queryIdsFilter.test(row)).forEach(row -> {
+    			RankedList rank = new RankedList(rankSizeLimit, similaritiesOtherwiseDistances, false);
+    			matrix.forEachInRow(row, (column, value) -> {
+    				if(responseIdsFilter == null || responseIdsFilter.test(column))
+    					rank.add(column, value);
+    			});
+    			writer.add(row, rank);
+    			if(numRanks.incrementAndGet() % 1000 == 0)
+    				Logs.finest("now: "+numRanks+" ranks generated");
+    		});
+    	}finally{
+    		writer.close();
+    	}
+    	Logs.fine(numRanks+" ranks generated from matrix of "+matrix.size()+" rows after "+time);
+    }
+
+    private static void mergeInto(RankedList[] ranks, int offset, RankedList[] buffers) {
+        for(int k = 0; k < buffers.length; k++){
+            if(buffers[k] != null){
+                RankedList rank = ranks[offset + k];
+                buffers[k].forEach((id, weight) -> rank.add(id, weight));
+            }
+        }
+    }
+
+    /**
+     * Local top-k buffers of the columns reached by a tile, one per similarity, merged into the ranks at the end of the tile.
+     * A worker reuses them in its next tiles, so they are allocated once per worker instead of once per tile.
+     */
+    private static class ColumnBuffers {
+        private final RankedList[][] buffers; //column -> similarity -> buffer
+        private final int numSimilarities;
+        private int[] reachedColumns = new int[64];
+        private int numReachedColumns;
+        private final boolean[] reached;
+
+        ColumnBuffers(int numSimilarities, int numRanks) {
+            this.numSimilarities = numSimilarities;
+            buffers = new RankedList[numRanks][];
+            reached = new boolean[numRanks];
+        }
+
+        RankedList[] get(int column, int rankSizeLimit) {
+            RankedList[] buffersOfColumn = buffers[column];
+            if(buffersOfColumn == null){
+                buffersOfColumn = buffers[column] = new RankedList[numSimilarities];
+                for(int m = 0; m < numSimilarities; m++)
+                    buffersOfColumn[m] = new RankedList(rankSizeLimit, true, false);
+            }
+            if(!reached[column]){
+                reached[column] = true;
+                if(numReachedColumns == reachedColumns.length)
+                    reachedColumns = Arrays.copyOf(reachedColumns, numReachedColumns * 2);
+                reachedColumns[numReachedColumns++] = column;
+            }
+            return buffersOfColumn;
+        }
+
+        /** Merges the buffers of the reached columns into the ranks, leaving the buffers empty for the next tile. */
+        void mergeInto(RankedList[][] ranks) {
+            for(int c = 0; c < numReachedColumns; c++){
+                int column = reachedColumns[c];
+                for(int m = 0; m < numSimilarities; m++){
+                    RankedList rank = ranks[m][column], buffer = buffers[column][m];
+                    buffer.forEach((id, weight) -> rank.add(id, weight));
+                    buffer.clear();
+                }
+                reached[column] = false;
+            }
+            numReachedColumns = 0;
+        }
+    }
+
+    /**
+     * generated ranks considering samples as both queries and responses, each rank being computed independently:
+     * if rankSizeLimit >= 0, the responses are visited in decreasing order of {@link SampleDistanceMeasurer#getSimilarityUpperBound},
+     * stopping as soon as the bound gets smaller than the worst similarity of the full rank.
+     * The ranks are the same of {@link #generateRanks(ArrayList, SampleDistanceMeasurer, Function, int, boolean, boolean, File)}, up to the order of ties.
+     * @param indexer optional, as in {@link #generateRanks(ArrayList, SampleDistanceMeasurer, Function, int, boolean, boolean, File)}.
+     */
+    public static <T extends Sample> List<Pair<T,RankedList>> generateTopRanks(ArrayList<T> samples, SampleDistanceMeasurer<T> similarityFunction,
+        Function<List<T>,CandidatesIndex<T>> indexer, int rankSizeLimit, boolean normalize, File outputDir)
+    {
+        final int numRanks = samples.size();
+        Preconditions.checkArgument(numRanks > 0);
+
+        Logs.fine("Creating " + numRanks + " top ranks, using similarity "+similarityFunction+", limit "+rankSizeLimit+(outputDir==null?"":", on "+outputDir)+" ...");
+        TimeWatcher timeWatcher = new TimeWatcher(), logPooler = new TimeWatcher(0);
+
+        //sort the samples so the ranks and therefore the quality measurements are comparable:
+        Collections.sort(samples, (a,b) -> Long.compare(a.getId(), b.getId()));
+
+        CandidatesIndex<T> candidatesIndex = indexer == null ? null : indexer.apply(samples);
+        RankedList[] ranksOfSamples = new RankedList[numRanks];
+        AtomicLong count = new AtomicLong();
+        MathUtils.forRange(0, numRanks, true, i -> {
+            T sample = samples.get(i);
+            RankedList rank = new RankedList(rankSizeLimit, true, false);
+            rank.add(sample.getId(), 1);
+            int[] candidates = candidatesIndex == null ? null : candidatesIndex.getCandidates(sample);
+            int numAdded = addResponses(rank, sample, samples, candidates, i, similarityFunction, rankSizeLimit >= 0);
+            if(candidates != null && numAdded >= 0)
+                addNonCandidates(rank, samples, i, candidates, 1 + numAdded, rankSizeLimit);
+            ranksOfSamples[i] = rank;
+            count.incrementAndGet();
+            if(logPooler.checkSecondsSpent(30)) Logs.finest(count+" ranks created so far");
+        });
+        Logs.finer("Ranks created after " + timeWatcher);
+
+        List<Pair<T,RankedList>> ranks = new ArrayList<>(numRanks);
+        for (int i = 0; i < numRanks; i++)
+            ranks.add(new Pair<>(samples.get(i), ranksOfSamples[i]));
+
+        if(normalize){
+            for(Pair<T,RankedList> sampleAndRankedList : ranks)
+                sampleAndRankedList.getB().normalize();
+        }
+
+        if(outputDir != null){
+            for(Pair<T,RankedList> rank : ranks)
+                rank.getB().saveToFolder(rank.getA().getId(), outputDir);
+        }
+
+        return ranks;
+    }
+
+    /**
+     * Adds to the rank the responses (only the candidates ones, if given), except the one at position skipIndex.
+     * If earlyTermination, the responses are visited in decreasing order of similarity upper bound, until the bound gets smaller than the worst similarity of the full rank.
+     * Returns the number of responses added, or -1 if terminated early (when the rank is full).
+     */
+    private static <T extends Sample> int addResponses(RankedList rank, T querySample, List<T> responseSamples, int[] candidates, int skipIndex,
+        SampleDistanceMeasurer<T> similarity, boolean earlyTermination)
+    {
+        int n = candidates == null ? responseSamples.size() : candidates.length;
+        if(!earlyTermination){
+            int numAdded = 0;
+            for(int c = 0; c < n; c++){
+                int j = candidates == null ? c : candidates[c];
+                if(j == skipIndex)
+                    continue;
+                T responseSample = responseSamples.get(j);
+                rank.add(responseSample.getId(), similarity.getSimilarity(querySample, responseSample));
+                numAdded++;
+            }
+            return numAdded;
+        }
+
+        //the bounds are not negative, so their bits keep their order and can be packed with the positions to be sorted as longs:
+        long[] boundsAndPositions = new long[n];
+        int m = 0;
+        for(int c = 0; c < n; c++){
+            int j = candidates == null ? c : candidates[c];
+            if(j != skipIndex)
+                boundsAndPositions[m++] = ((long)Float.floatToIntBits(similarity.getSimilarityUpperBound(querySample, responseSamples.get(j))) << 32) | j;
+        }
+        Arrays.sort(boundsAndPositions, 0, m);
+        for(int k = m - 1; k >= 0; k--){
+            Float entranceWeight = rank.getEntranceWeight();
+            if(entranceWeight != null && Float.intBitsToFloat((int)(boundsAndPositions[k] >>> 32)) < entranceWeight)
+                return -1;
+            T responseSample = responseSamples.get((int)boundsAndPositions[k]);
+            rank.add(responseSample.getId(), similarity.getSimilarity(querySample, responseSample));
+        }
+        return m;
+    }
+
+    /**
+     * fills the rank with the samples which are not candidates (given in ascending order) nor at position skipIndex, with similarity 0, until the rank reaches its size limit.
+     * numEntries is the number of entries already in the rank.
+     */
+    private static void addNonCandidates(RankedList rank, int numSamples, IntToLongFunction sampleId, int skipIndex, int[] candidates, int numEntries, int rankSizeLimit) {
+        for(int j = 0, c = 0; j < numSamples && (rankSizeLimit < 0 || numEntries < rankSizeLimit); j++){
+            while(c < candidates.length && candidates[c] < j)
+                c++;
+            if(j == skipIndex || (c < candidates.length && candidates[c] == j))
+                continue;
+            rank.add(sampleId.applyAsLong(j), 0);
+            numEntries++;
+        }
+    }
+    private static <T extends Sample> void addNonCandidates(RankedList rank, List<T> samples, int skipIndex, int[] candidates, int numEntries, int rankSizeLimit) {
+        addNonCandidates(rank, samples.size(), j -> samples.get(j).getId(), skipIndex, candidates, numEntries, rankSizeLimit);
+    }
+
     /** generated ranks considering different queries and responses */
     public static <T extends Sample> void generateRanks(Stream<T> querySamples, Iterable<T> responseSamples, SampleDistanceMeasurer<T> similarity, int rankSizeLimit, boolean normalize, File outputDir) {
         Logs.fine("Creating ranks, using similarity "+similarity+", limit "+rankSizeLimit+", on "+outputDir);
@@ -119,10 +481,94 @@ public class RankGenerator {
         Logs.finer("Ranks created after " + timeWatcher);
     }
 
+    /**
+     * generated ranks considering different queries and responses.
+     * @param indexer optional. Creates an index over the responses, such that only the candidate responses have their similarities computed.
+     * @param earlyTermination if true, each rank is computed as in {@link #generateTopRanks}.
+     */
+    public static <T extends Sample> void generateRanks(Stream<T> querySamples, List<T> responseSamples, SampleDistanceMeasurer<T> similarity,
+        Function<List<T>,CandidatesIndex<T>> indexer, boolean earlyTermination, int rankSizeLimit, boolean normalize, File outputDir)
+    {
+        Logs.fine("Creating ranks, using similarity "+similarity+", limit "+rankSizeLimit+", on "+outputDir);
+        TimeWatcher timeWatcher = new TimeWatcher(), logPooler = new TimeWatcher();
+        AtomicLong count = new AtomicLong();
+        CandidatesIndex<T> candidatesIndex = indexer == null ? null : indexer.apply(responseSamples);
+        querySamples.parallel().forEach(querySample -> {
+            RankedList rank = generateRank(querySample, responseSamples, candidatesIndex, similarity, rankSizeLimit, earlyTermination);
+            if(normalize)
+                rank.normalize();
+            rank.saveToFolder(querySample.getId(), outputDir);
+            count.incrementAndGet();
+            if(logPooler.checkSecondsSpent(30)) Logs.finest(count+" ranks created so far");
+        });
+        Logs.finer("Ranks created after " + timeWatcher);
+    }
+
+    /**
+     * As {@link #generateRanks(Stream, List, SampleDistanceMeasurer, Function, boolean, int, boolean, File)} without early termination,
+     * for several similarities computed together for each pair, giving one rank of each query per similarity.
+     * @param outputDirs the folder of the ranks of each similarity
+     */
+    public static <T extends Sample> void generateRanks(Stream<T> querySamples, List<T> responseSamples, SampleMultiSimilarityMeasurer<T> similarityFunctions,
+        Function<List<T>,CandidatesIndex<T>> indexer, int rankSizeLimit, boolean normalize, File[] outputDirs)
+    {
+        Preconditions.checkArgument(outputDirs.length == similarityFunctions.getNumSimilarities(), "one output folder per similarity is required");
+        Logs.fine("Creating ranks, using similarities "+similarityFunctions+", limit "+rankSizeLimit+", on "+Arrays.toString(outputDirs));
+        TimeWatcher timeWatcher = new TimeWatcher(), logPooler = new TimeWatcher();
+        AtomicLong count = new AtomicLong();
+        CandidatesIndex<T> candidatesIndex = indexer == null ? null : indexer.apply(responseSamples);
+        querySamples.parallel().forEach(querySample -> {
+            RankedList[] ranks = generateRanks(querySample, responseSamples, candidatesIndex, similarityFunctions, rankSizeLimit);
+            for(int m = 0; m < ranks.length; m++){
+                if(normalize)
+                    ranks[m].normalize();
+                ranks[m].saveToFolder(querySample.getId(), outputDirs[m]);
+            }
+            count.incrementAndGet();
+            if(logPooler.checkSecondsSpent(30)) Logs.finest(count+" ranks created so far");
+        });
+        Logs.finer("Ranks created after " + timeWatcher);
+    }
+
     public static <T extends Sample> RankedList generateRank(T querySample, Iterable<T> responseSamples, SampleDistanceMeasurer<T> similarity, int rankSizeLimit) {
-        RankedList rank = new RankedList(rankSizeLimit, true);
+        RankedList rank = new RankedList(rankSizeLimit, true, false);
         for(T responseSample : responseSamples)
             rank.add(responseSample.getId(), similarity.getSimilarity(querySample, responseSample));
         return rank;
     }
+
+    /** @param candidatesIndex optional, an index over the responses */
+    public static <T extends Sample> RankedList generateRank(T querySample, List<T> responseSamples, CandidatesIndex<T> candidatesIndex, SampleDistanceMeasurer<T> similarity,
+        int rankSizeLimit, boolean earlyTermination)
+    {
+        RankedList rank = new RankedList(rankSizeLimit, true, false);
+        int[] candidates = candidatesIndex == null ? null : candidatesIndex.getCandidates(querySample);
+        int numAdded = addResponses(rank, querySample, responseSamples, candidates, -1, similarity, earlyTermination && rankSizeLimit >= 0);
+        if(candidates != null && numAdded >= 0)
+            addNonCandidates(rank, responseSamples, -1, candidates, numAdded, rankSizeLimit);
+        return rank;
+    }
+
+    /** The ranks of the query by each of the similarities, computed together for each response. @param candidatesIndex optional, an index over the responses */
+    private static <T extends Sample> RankedList[] generateRanks(T querySample, List<T> responseSamples, CandidatesIndex<T> candidatesIndex,
+        SampleMultiSimilarityMeasurer<T> similarityFunctions, int rankSizeLimit)
+    {
+        RankedList[] ranks = new RankedList[similarityFunctions.getNumSimilarities()];
+        for(int m = 0; m < ranks.length; m++)
+            ranks[m] = new RankedList(rankSizeLimit, true, false);
+        float[] similarities = new float[ranks.length];
+        int[] candidates = candidatesIndex == null ? null : candidatesIndex.getCandidates(querySample);
+        int numResponses = candidates == null ? responseSamples.size() : candidates.length;
+        for(int c = 0; c < numResponses; c++){
+            T responseSample = responseSamples.get(candidates == null ? c : candidates[c]);
+            similarityFunctions.getSimilarities(querySample, responseSample, similarities);
+            for(int m = 0; m < ranks.length; m++)
+                ranks[m].add(responseSample.getId(), similarities[m]);
+        }
+        if(candidates != null){
+            for(RankedList rank : ranks)
+                addNonCandidates(rank, responseSamples, -1, candidates, numResponses, rankSizeLimit);
+        }
+        return ranks;
+    }
 }
@@ -0,0 +1,274 @@
+package dataMining.retrieval;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import com.google.common.base.Preconditions;
+import util.FileUtils;
+import util.Logs;
+import util.TriConsumer;
+
+/**
+ * Binary store of the ranks of many queries in a single file, read through memory mapping.
+ * <p>
+ * Layout (big endian): a header of {@value #HEADER_SIZE} bytes (magic, version, flags, number of ranks, size of the biggest rank, padding, start of the records),
+ * an offset table sorted by query id with entries of {@value #TABLE_ENTRY_SIZE} bytes (long query id, long index of the first record, int number of records),
+ * and then the records of all ranks, each one with {@value #RECORD_SIZE} bytes (long id, float weight, NaN for unweighted ranks), in the rank order.
+ */
+public class RankStore {
+
+	public static final String EXTENSION = ".rankStore";
+
+	private static final int MAGIC = 0x524E4B53; //"RNKS"
+	private static final int VERSION = 1;
+	private static final int FLAG_WEIGHTED = 1;
+	static final int HEADER_SIZE = 32;
+	static final int TABLE_ENTRY_SIZE = 20;
+	static final int RECORD_SIZE = 12;
+
+	private final boolean weighted;
+	private final long[] queryIds; //sorted
+	private final long[] firstRecords;
+	private final int[] rankSizes;
+	//the records are mapped in chunks of chunkRecords records, each chunk also covering the size of the biggest rank, so any rank starting in a chunk is entirely inside it:
+	private final MappedByteBuffer[] chunks;
+	private final long chunkRecords;
+
+	private RankStore(FileChannel channel) throws IOException {
+		ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_SIZE);
+		Preconditions.checkArgument(header.getInt() == MAGIC, "not a rank store");
+		int version = header.getInt();
+		Preconditions.checkArgument(version == VERSION, "unsupported rank store version: " + version);
+		weighted = (header.getInt() & FLAG_WEIGHTED) != 0;
+		int numRanks = header.getInt();
+		int maxRankSize = header.getInt();
+		header.getInt();
+		long recordsStart = header.getLong();
+
+		queryIds = new long[numRanks];
+		firstRecords = new long[numRanks];
+		rankSizes = new int[numRanks];
+		ByteBuffer table = channel.map(MapMode.READ_ONLY, HEADER_SIZE, (long)numRanks * TABLE_ENTRY_SIZE);
+		for(int i = 0; i < numRanks; i++){
+			queryIds[i] = table.getLong();
+			firstRecords[i] = table.getLong();
+			rankSizes[i] = table.getInt();
+		}
+
+		long numRecords = (channel.size() - recordsStart) / RECORD_SIZE;
+		chunkRecords = Math.max(1, Integer.MAX_VALUE / RECORD_SIZE - maxRankSize);
+		chunks = new MappedByteBuffer[(int)((numRecords + chunkRecords - 1) / chunkRecords)];
+		for(int c = 0; c < chunks.length; c++){
+			long first = c * chunkRecords, end = Math.min(numRecords, first + chunkRecords + maxRankSize);
+			chunks[c] = channel.map(MapMode.READ_ONLY, recordsStart + first * RECORD_SIZE, (end - first) * RECORD_SIZE);
+		}
+	}
+
+	public static RankStore open(File file) {
+		try(RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()){
+			return new RankStore(channel); //the mappings remain valid after closing the channel
+		}catch(IOException e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Returns the store of the ranks folder (i.e. the folder path plus {@link #EXTENSION}), if the folder does not exist but such store does, otherwise returns the folder itself. */
+	public static File resolve(File ranksFolder) {
+		if(ranksFolder.exists())
+			return ranksFolder;
+		File store = new File(ranksFolder.getPath() + EXTENSION);
+		return store.isFile() ? store : ranksFolder;
+	}
+
+	public boolean isWeighted() {
+		return weighted;
+	}
+
+	public int getNumRanks() {
+		return queryIds.length;
+	}
+
+	/** Returns the query ids, sorted. */
+	public long[] getQueryIDs() {
+		return queryIds.clone();
+	}
+
+	public boolean contains(long queryId) {
+		return Arrays.binarySearch(queryIds, queryId) >= 0;
+	}
+
+	/** Returns the records of the first 'limit' (or all, if limit < 0) elements of the rank of the query, as a read-only buffer over the mapped file, or null if the query is not in the store. */
+	public ByteBuffer getRecords(long queryId, int limit) {
+		int r = Arrays.binarySearch(queryIds, queryId);
+		if(r < 0)
+			return null;
+		int size = limit < 0 ? rankSizes[r] : Math.min(limit, rankSizes[r]);
+		if(size == 0)
+			return ByteBuffer.allocate(0).asReadOnlyBuffer();
+		int chunk = (int)(firstRecords[r] / chunkRecords);
+		int start = (int)(firstRecords[r] - chunk * chunkRecords) * RECORD_SIZE;
+		ByteBuffer records = chunks[chunk].duplicate();
+		records.position(start).limit(start + size * RECORD_SIZE);
+		return records.slice().asReadOnlyBuffer();
+	}
+
+	/** Returns the rank of the query, with at most 'limit' elements (or all of them, if limit < 0), or null if the query is not in the store. */
+	public RankedList getRank(long queryId, int limit) {
+		ByteBuffer records = getRecords(queryId, limit);
+		if(records == null)
+			return null;
+		int size = records.remaining() / RECORD_SIZE;
+		long[] ids = new long[size];
+		float[] weights = weighted ? new float[size] : null;
+		for(int i = 0; i < size; i++){
+			ids[i] = records.getLong();
+			float weight = records.getFloat();
+			if(weighted)
+				weights[i] = weight;
+		}
+		return new RankedList(ids, weights);
+	}
+
+	/** Gives (index, id, weight) for the first 'limit' elements of the query rank, as {@link RankedList#load(File, int, TriConsumer)} does. The weights are null for unweighted ranks. */
+	public void forEach(long queryId, int limit, TriConsumer<Integer,Long,Float> consumer) {
+		ByteBuffer records = getRecords(queryId, limit);
+		Preconditions.checkArgument(records != null, "no such query in store: " + queryId);
+		for(int i = 0; records.hasRemaining(); i++){
+			long id = records.getLong();
+			float weight = records.getFloat();
+			consumer.accept(i, id, weighted ? weight : null);
+		}
+	}
+
+	/** Converts the store to the folder format, one text file per query. */
+	public void saveToFolder(File ranksFolder) {
+		ranksFolder.mkdirs();
+		for(long queryId : queryIds)
+			getRank(queryId, -1).saveToFolder(queryId, ranksFolder);
+	}
+
+	/** Converts the ranks of a folder (one text file per query) to a store. The ranks must be all weighted or all unweighted. */
+	public static void convertFromFolder(File ranksFolder, File storeFile) {
+		File[] files = ranksFolder.listFiles();
+		Preconditions.checkArgument(files != null, "not a folder: " + ranksFolder);
+		Logs.finer("converting " + files.length + " ranks from " + ranksFolder + " to " + storeFile);
+		Writer writer = null;
+		List<Long> emptyRanks = new ArrayList<>(); //empty ranks do not tell whether the ranks are weighted, so they wait for the first non-empty one
+		try{
+			for(File file : files){
+				long queryId = Long.parseLong(file.getName());
+				RankedList rank = RankedList.load(file, -1);
+				if(writer == null){
+					if(rank.size() == 0){
+						emptyRanks.add(queryId);
+						continue;
+					}
+					writer = new Writer(storeFile, files.length, rank.isWeighted());
+				}
+				writer.add(queryId, rank);
+			}
+			if(writer == null)
+				writer = new Writer(storeFile, files.length, true);
+			for(long queryId : emptyRanks)
+				writer.add(queryId, new RankedList(new long[0], null));
+		}finally{
+			if(writer != null)
+				writer.close();
+		}
+	}
+
+	/**
+	 * Writes a store given the ranks in any order. Ranks can be added concurrently.
+	 * The number of ranks must be informed beforehand, as the offset table precedes the records; adding less ranks just leaves unused space.
+	 */
+	public static class Writer implements Closeable {
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+		private final boolean weighted;
+		private final long recordsStart;
+		private final long[] queryIds, firstRecords;
+		private final int[] rankSizes;
+		private final Set<Long> addedQueryIds = new HashSet<>();
+		private int numRanks, maxRankSize;
+		private long numRecords;
+
+		public Writer(File storeFile, int maxNumRanks, boolean weighted) {
+			FileUtils.mkDirsForFile(storeFile);
+			FileUtils.deleteQuietly(storeFile);
+			this.file = FileUtils.createRandomAccessFile(storeFile, "rw");
+			this.channel = file.getChannel();
+			this.weighted = weighted;
+			this.recordsStart = HEADER_SIZE + (long)maxNumRanks * TABLE_ENTRY_SIZE;
+			queryIds = new long[maxNumRanks];
+			firstRecords = new long[maxNumRanks];
+			rankSizes = new int[maxNumRanks];
+		}
+
+		/** @throws IllegalArgumentException if the query was already added, or if the rank is not empty and its kind (weighted or not) differs from the store's */
+		public void add(long queryId, RankedList rank) {
+			int size = rank.size();
+			Preconditions.checkArgument(size == 0 || rank.isWeighted() == weighted, "rank of query %s is %s, but the store is %s",
+				queryId, rank.isWeighted() ? "weighted" : "unweighted", weighted ? "weighted" : "unweighted");
+			ByteBuffer records = ByteBuffer.allocate(size * RECORD_SIZE);
+			for(int i = 0; i < size; i++){
+				records.putLong(rank.getIdAt(i));
+				records.putFloat(weighted ? rank.getWeightAt(i) : Float.NaN);
+			}
+			records.flip();
+			long firstRecord;
+			synchronized(this){
+				Preconditions.checkState(numRanks < queryIds.length, "more ranks than informed");
+				Preconditions.checkArgument(addedQueryIds.add(queryId), "duplicate query id: %s", queryId);
+				firstRecord = numRecords;
+				numRecords += size;
+				queryIds[numRanks] = queryId;
+				firstRecords[numRanks] = firstRecord;
+				rankSizes[numRanks] = size;
+				numRanks++;
+				maxRankSize = Math.max(maxRankSize, size);
+			}
+			write(records, recordsStart + firstRecord * RECORD_SIZE);
+		}
+
+		private void write(ByteBuffer buffer, long position) {
+			try{
+				while(buffer.hasRemaining())
+					position += channel.write(buffer, position);
+			}catch(IOException e){
+				throw new RuntimeException(e);
+			}
+		}
+
+		/** Writes the header and the offset table, sorted by query id. */
+		@Override
+		public synchronized void close() {
+			Integer[] order = new Integer[numRanks];
+			for(int i = 0; i < numRanks; i++)
+				order[i] = i;
+			Arrays.sort(order, (a,b) -> Long.compare(queryIds[a], queryIds[b]));
+
+			ByteBuffer headerAndTable = ByteBuffer.allocate(HEADER_SIZE + numRanks * TABLE_ENTRY_SIZE);
+			headerAndTable.putInt(MAGIC).putInt(VERSION).putInt(weighted ? FLAG_WEIGHTED : 0).putInt(numRanks).putInt(maxRankSize).putInt(0).putLong(recordsStart);
+			for(int i : order)
+				headerAndTable.putLong(queryIds[i]).putLong(firstRecords[i]).putInt(rankSizes[i]);
+			headerAndTable.flip();
+			write(headerAndTable, 0);
+			try{
+				file.setLength(recordsStart + numRecords * RECORD_SIZE);
+				file.close();
+			}catch(IOException e){
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
@@ -2,78 +2,230 @@ package dataMining.retrieval;
 
 import java.io.File;
 import java.io.PrintStream;
-import java.text.DecimalFormat;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Scanner;
 import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import com.google.common.collect.MinMaxPriorityQueue;
-import com.google.common.collect.MinMaxPriorityQueue.Builder;
-import util.DataStructureUtils;
+import com.google.common.base.Preconditions;
+import util.DecimalEncoder;
 import util.FileUtils;
 import util.Logs;
 import util.MathUtils;
 import util.Pair;
-import util.StringUtils;
 import util.TriConsumer;
 
 public class RankedList implements Iterable<Pair<Long,Float>> {
-	private MinMaxPriorityQueue<Pair<Long,Float>> priorityQueue; //queue of pairs of <id,weight> elements, sorted. The sorting order depends on the criteria used: similarity are decreasing, distance are increasing.
-	private List<Pair<Long,Float>> finalRank;
+	//elements as parallel arrays of ids and weights. Until the rank is finalized, if it has size limit they form a binary heap with the worst element at the root, otherwise they are kept in insertion order.
+	//Once finalized, they are sorted from the best to the worst. The sorting order depends on the criteria used: similarity are decreasing, distance are increasing.
+	private long[] ids;
+	private float[] weights; //null for unweighted ranks
+	private int size;
+	private volatile boolean finalized;
+	private final int sizeLimit;
+	private final boolean biggerValuesAsBetter;
+	private final boolean threadSafe;
 
 	public RankedList(int size, boolean biggerValuesAsBetter) {
-		Builder<Pair<Long,Float>> builder = MinMaxPriorityQueue.orderedBy(biggerValuesAsBetter ? Pair.<Long,Float>createComparatorByBReversed() : Pair.<Long,Float>createComparatorByB());
-		if(size >= 0)
-			builder = builder.expectedSize(size).maximumSize(size);
-		priorityQueue = builder.create();
+		this(size, biggerValuesAsBetter, true);
+	}
+	/** @param threadSafe if false, {@link #add(long, float)} is not synchronized, so the rank must be filled by a single thread. */
+	public RankedList(int size, boolean biggerValuesAsBetter, boolean threadSafe) {
+		this.sizeLimit = size;
+		this.biggerValuesAsBetter = biggerValuesAsBetter;
+		this.threadSafe = threadSafe;
+		int capacity = size >= 0 ? size : 16;
+		ids = new long[capacity];
+		weights = new float[capacity];
+	}
+	/** Final rank given by its ids and weights (null for unweighted ranks), from the best to the worst. The arrays are not copied. */
+	public RankedList(long[] ids, float[] weights) {
+		sizeLimit = -1;
+		biggerValuesAsBetter = true;
+		threadSafe = true;
+		finalized = true;
+		size = ids.length;
+		this.ids = ids;
+		this.weights = weights;
 	}
 	public RankedList(List<Pair<Long,Float>> finalRank) {
-	    this.finalRank = finalRank;
+		sizeLimit = -1;
+		biggerValuesAsBetter = true;
+		threadSafe = true;
+		finalized = true;
+		size = finalRank.size();
+		ids = new long[size];
+		boolean weighted = size > 0 && finalRank.get(0).getB() != null;
+		weights = weighted ? new float[size] : null;
+		for(int i = 0; i < size; i++){
+			Pair<Long,Float> pair = finalRank.get(i);
+			ids[i] = pair.getA();
+			if(weighted)
+				weights[i] = pair.getB();
+		}
+	}
+
+	public void add(long id, float weight) {
+		if(threadSafe){
+			synchronized(this){
+				offer(id, weight);
+			}
+		}else{
+			offer(id, weight);
+		}
+	}
+
+	private void offer(long id, float weight) {
+		if(finalized)
+			throw new IllegalStateException("rank already finalized");
+		if(sizeLimit < 0){
+			if(size == ids.length){
+				ids = Arrays.copyOf(ids, size * 2);
+				weights = Arrays.copyOf(weights, size * 2);
+			}
+			ids[size] = id;
+			weights[size] = weight;
+			size++;
+		}else if(size < sizeLimit){
+			ids[size] = id;
+			weights[size] = weight;
+			siftUp(size++);
+		}else if(sizeLimit > 0 && isBetter(weight, weights[0])){
+			ids[0] = id;
+			weights[0] = weight;
+			siftDown(0, size);
+		}
+	}
+
+	/** Empties the rank, even if finalized, keeping its capacity so it can be filled again without reallocation. */
+	synchronized void clear() {
+		Preconditions.checkState(weights != null, "unweighted ranks can not be refilled");
+		size = 0;
+		finalized = false;
+	}
+
+	private boolean isBetter(float weight, float anotherWeight) {
+		return biggerValuesAsBetter ? weight > anotherWeight : weight < anotherWeight;
+	}
+
+	private void siftUp(int i) {
+		while(i > 0){
+			int parent = (i - 1) >>> 1;
+			if(!isBetter(weights[parent], weights[i]))
+				break;
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i, int heapSize) {
+		while(true){
+			int worst = i, left = 2*i + 1, right = left + 1;
+			if(left < heapSize && isBetter(weights[worst], weights[left]))
+				worst = left;
+			if(right < heapSize && isBetter(weights[worst], weights[right]))
+				worst = right;
+			if(worst == i)
+				break;
+			swap(i, worst);
+			i = worst;
+		}
+	}
+
+	private void swap(int i, int j) {
+		long id = ids[i]; ids[i] = ids[j]; ids[j] = id;
+		float weight = weights[i]; weights[i] = weights[j]; weights[j] = weight;
 	}
 
-	public synchronized void add(long id, float weight) {
-		priorityQueue.offer(new Pair<>(id, weight));
+	/** Returns the weight of the worst element when the rank is full (so new elements must be at least as good as it to enter), otherwise null. */
+	public synchronized Float getEntranceWeight() {
+		if(finalized || sizeLimit <= 0 || size < sizeLimit)
+			return null;
+		return weights[0];
 	}
 
-	public synchronized List<Pair<Long, Float>> getRank() {
-		if(finalRank == null){
-		    finalRank = DataStructureUtils.consumeQueueToList(priorityQueue, null);
-			priorityQueue = null; //as we changed the queue, here we guarantee the rankedList would not be wrongly used afterwards
+	/** sorts the elements from the best to the worst by heapsort, after which no elements can be added */
+	private void finalizeRank() {
+		if(!finalized)
+			sortFinalRank();
+	}
+	private synchronized void sortFinalRank() {
+		if(finalized)
+			return;
+		if(sizeLimit < 0)
+			for(int i = size/2 - 1; i >= 0; i--)
+				siftDown(i, size);
+		for(int end = size - 1; end > 0; end--){ //the worst element goes to the end
+			swap(0, end);
+			siftDown(0, end);
 		}
-		return finalRank;
+		finalized = true;
+	}
+
+	/** Returns a read-only view of the rank, from the best element to the worst. */
+	public List<Pair<Long, Float>> getRank() {
+		finalizeRank();
+		return new AbstractList<Pair<Long,Float>>() {
+			public Pair<Long, Float> get(int index) {
+				Preconditions.checkElementIndex(index, size);
+				return new Pair<>(ids[index], weights == null ? null : weights[index]);
+			}
+			public int size() {
+				return size;
+			}
+		};
 	}
 
 	public int size(){
-		return getRank().size();
+		finalizeRank();
+		return size;
+	}
+
+	public boolean isWeighted(){
+		return weights != null;
+	}
+
+	/** Returns the id at the given position of the final rank, starting by 0. */
+	public long getIdAt(int pos){
+		finalizeRank();
+		Preconditions.checkElementIndex(pos, size);
+		return ids[pos];
+	}
+
+	/** Returns the weight at the given position of the final rank, starting by 0. The rank must be weighted. */
+	public float getWeightAt(int pos){
+		finalizeRank();
+		Preconditions.checkElementIndex(pos, size);
+		return weights[pos];
 	}
 
 	public Long getID(int i){
-		return getRank().get(i).getA();
+		return getIdAt(i);
 	}
 
 	public void forEach(BiConsumer<Long,Float> consumer){
-		for(Pair<Long,Float> pair : getRank())
-			consumer.accept(pair.getA(), pair.getB());
+		finalizeRank();
+		for(int i = 0; i < size; i++)
+			consumer.accept(ids[i], weights == null ? null : weights[i]);
 	}
 
 	public void forEach(TriConsumer<Integer,Long,Float> consumer){
-		List<Pair<Long,Float>> r = getRank();
-		for(int i = 0; i < r.size(); i++){
-			Pair<Long,Float> pair = r.get(i);
-			consumer.accept(i, pair.getA(), pair.getB());
-		}
+		finalizeRank();
+		for(int i = 0; i < size; i++)
+			consumer.accept(i, ids[i], weights == null ? null : weights[i]);
 	}
 
 	public void forEachID(Consumer<Long> consumer){
-		for(Pair<Long,Float> pair : getRank())
-			consumer.accept(pair.getA());
+		finalizeRank();
+		for(int i = 0; i < size; i++)
+			consumer.accept(ids[i]);
 	}
 
     public Iterator<Pair<Long, Float>> iterator() {
@@ -81,11 +233,16 @@ public class RankedList implements Iterable<Pair<Long,Float>> {
     }
 
 	public List<Long> getIDs() {
-		return DataStructureUtils.collectAsList(getRank(), pair -> pair.getA());
+		finalizeRank();
+		List<Long> list = new ArrayList<>(size);
+		forEachID(list::add);
+		return list;
 	}
 
 	public LinkedHashSet<Long> getIDsAsSet() {
-		return DataStructureUtils.collectAsSet(getRank(), pair -> pair.getA());
+		LinkedHashSet<Long> set = new LinkedHashSet<>();
+		forEachID(set::add);
+		return set;
 	}
 
 	public static Set<Long> getIDs(Collection<RankedList> ranks){
@@ -94,31 +251,37 @@ public class RankedList implements Iterable<Pair<Long,Float>> {
 		return ids;
 	}
 
+	/** Returns the position of the response item, starting by 0, if it belongs to the rank, otherwise returns -1. */
+	public int getPosition(long responseItem){
+		finalizeRank();
+		for(int pos = 0; pos < size; pos++)
+			if(ids[pos] == responseItem)
+				return pos;
+		return -1;
+	}
+
 	/** Returns <pos,weight> for the response item, if it belongs to the rank, otherwise returns null. 'Pos' starts by 0. */
 	public Pair<Integer,Float> getPositionAndWeight(Long responseItem){
-		List<Pair<Long,Float>> rank = getRank();
-		for(int pos = 0; pos < rank.size(); pos++){
-			Pair<Long,Float> rankElement = rank.get(pos);
-			if(rankElement.getA().equals(responseItem))
-				return Pair.get(pos, rankElement.getB());
-		}
-		return null;
+		int pos = getPosition(responseItem);
+		if(pos < 0)
+			return null;
+		return Pair.get(pos, weights == null ? null : weights[pos]);
 	}
 
 	/** Returns weight for the response item, if it belongs to the rank, otherwise returns defaultValue */
 	public Float getWeight(Long responseItem, Float defaultValue){
-		for(Pair<Long,Float> rankElement : getRank()){
-			if(rankElement.getA().equals(responseItem))
-				return rankElement.getB();
-		}
-		return defaultValue;
+		int pos = getPosition(responseItem);
+		if(pos < 0)
+			return defaultValue;
+		return weights == null ? null : weights[pos];
 	}
 
 	public void normalize() {
 		normalize(0, 1);
 	}
 	public void normalize(float min_new, float max_new) {
-		MathUtils.normalizeFloat(getRank(), Pair::getB, Pair::setB, min_new, max_new);
+		finalizeRank();
+		MathUtils.normalizeFloat(weights, size, min_new, max_new);
     }
 
 	/**
@@ -136,27 +299,31 @@ public class RankedList implements Iterable<Pair<Long,Float>> {
 	 * Changes the weights of the rank uniformifly starting by 'first' and ending by 'last', with uniform steps.
 	 */
 	public void changeWeightsToInterval(float first, float last) {
-	    List<Pair<Long,Float>> elements = getRank();
-	    int n = elements.size();
+		finalizeRank();
+	    int n = size;
 	    float step = (last - first)/(n-1);
+	    if(weights == null)
+	    	weights = new float[n];
 	    for (int i = 0; i < n; i++) {
-	        elements.get(i).setB(first + i*step);
+	        weights[i] = first + i*step;
         }
 	}
 
 	private boolean isDecreasing(){
-	    List<Pair<Long,Float>> elements = getRank();
-	    for (int i = 1; i < elements.size(); i++)
-			if( elements.get(i).getB() > elements.get(i-1).getB() )
+		finalizeRank();
+	    for (int i = 1; i < size; i++)
+			if( weights[i] > weights[i-1] )
 				return false;
 		return true;
 	}
 
 	private void invertValues() {
-	    List<Pair<Long,Float>> elements = getRank();
-	    float max = MathUtils.maxFloat(elements, e -> e.getB());
-	    for (Pair<Long,Float> pair : elements) {
-	        pair.setB(max - pair.getB());
+	    float max = Float.NEGATIVE_INFINITY;
+	    for (int i = 0; i < size; i++)
+	        if(weights[i] > max)
+	            max = weights[i];
+	    for (int i = 0; i < size; i++) {
+	        weights[i] = max - weights[i];
 	    }
     }
 
@@ -182,9 +349,10 @@ public class RankedList implements Iterable<Pair<Long,Float>> {
 			for(Pair<?, Float> elementAndWeight : rank)
 				out.append(elementAndWeight.getA().toString()).append('\n');
 		}else{
-			DecimalFormat decimalFormat = StringUtils.getDecimalFormatter();
-			for(Pair<?, Float> elementAndWeight : rank)
-				out.append(decimalFormat.format(elementAndWeight.getB())).append('\t').append(elementAndWeight.getA().toString()).append('\n');
+			for(Pair<?, Float> elementAndWeight : rank){
+				DecimalEncoder.DEFAULT.print(out, elementAndWeight.getB());
+				out.append('\t').append(elementAndWeight.getA().toString()).append('\n');
+			}
 		}
 	}
 
@@ -192,18 +360,28 @@ public class RankedList implements Iterable<Pair<Long,Float>> {
         return load(getRankedListFile(sampleId, folder), limit);
     }
 	public static RankedList load(File file, int limit) {
-	    try(Scanner reader = FileUtils.createScannerFromFile(file)){
-	        return load(reader, limit);
+		int capacity = limit > 0 ? limit : 16;
+		long[][] ids = {new long[capacity]};
+		float[][] weights = {new float[capacity]};
+		boolean[] weighted = {false};
+		int[] size = {0};
+	    try{
+	    	RankFileParser.parseRank(file, limit, (index,id,isWeighted,weight) -> {
+	    		if(index == ids[0].length){
+	    			ids[0] = Arrays.copyOf(ids[0], index * 2);
+	    			weights[0] = Arrays.copyOf(weights[0], index * 2);
+	    		}
+	    		ids[0][index] = id;
+	    		weights[0][index] = weight;
+	    		weighted[0] = isWeighted;
+	    		size[0] = index + 1;
+	    	});
         }catch (RuntimeException e) {
         	Logs.severe("error loading rank "+file);
         	throw e;
 		}
+	    return new RankedList(Arrays.copyOf(ids[0], size[0]), weighted[0] ? Arrays.copyOf(weights[0], size[0]) : null);
     }
-	static RankedList load(Scanner reader, int limit) {
-		List<Pair<Long,Float>> list = limit > 0 ? new ArrayList<>(limit) : new ArrayList<>();
-		load(reader, limit, (index,id,weight) -> list.add(new Pair<>(id, weight)));
-		return new RankedList(list);
-	}
 	public static LinkedHashSet<Long> loadEntries(File file, int limit){
 		return loadEntries(file, limit, new LinkedHashSet<>());
 	}
@@ -214,44 +392,10 @@ public class RankedList implements Iterable<Pair<Long,Float>> {
 		load(file, limit, (index,id,weight) -> container.add(id));
 		return container;
 	}
+	/** Gives (index, id, weight) for the first 'limit' elements of the rank in the file (or all, if limit < 0). The weights are null for unweighted ranks. */
 	static void load(File file, int limit, TriConsumer<Integer,Long,Float> consumer) {
-		try(Scanner reader = FileUtils.createScannerFromFile(file)){
-	        load(reader, limit, consumer);
-        }
+		RankFileParser.parseRank(file, limit, (index,id,weighted,weight) -> consumer.accept(index, id, weighted ? weight : null));
 	}
-    static void load(Scanner reader, int limit, TriConsumer<Integer,Long,Float> consumer) {
-    	if(!reader.hasNextLine() || limit == 0)
-    		return;
-
-    	String line = reader.nextLine();
-		String[] pieces = line.split("\\s+");
-		boolean pair = pieces.length > 1;
-		int idxScore = 0, idxId = 1;
-		if(pair && pieces[1].contains(".")){
-			idxId = 0;
-			idxScore = 1;
-		}
-
-		int consumed = 0;
-		do{
-			Long id;
-			Float v = null;
-			if(pair){
-				v = Float.valueOf(pieces[idxScore]);
-				id = Long.valueOf(pieces[idxId]);
-			}else{
-				id = Long.valueOf(line);
-			}
-			consumer.accept(consumed, id, v);
-			consumed++;
-			if(!reader.hasNextLine())
-				break;
-			if(limit > 0 && consumed >= limit)
-				break;
-			line = reader.nextLine();
-			pieces = line.split("\\s+");
-		}while(true);
-    }
 
 	public static void copyRankFileDecorated(File rankFile, File destineRankfile, int loadSizeLimit, Function<Long,String> idDecorator){
 		List<Pair<String,Float>> elsNames = new ArrayList<>();
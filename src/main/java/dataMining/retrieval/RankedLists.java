@@ -2,25 +2,26 @@ package dataMining.retrieval;
 
 import java.io.File;
 import java.io.PrintStream;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.function.BiConsumer;
-import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import com.google.common.base.Preconditions;
 import util.DataStructureUtils;
 import util.FileUtils;
 import util.Logs;
-import util.Pair;
 
 public class RankedLists {
 
+	/** Number of entries (of 8 bytes) aimed for the index of positions built per block of queries when reranking. */
+	private static final int MAX_BLOCK_INDEX_ENTRIES = 1 << 25;
+
 	private SortedMap<Long,RankedList> ids_ranks;
 
 	public RankedLists(SortedMap<Long, RankedList> ids_ranks) {
@@ -41,12 +42,20 @@ public class RankedLists {
 		return DataStructureUtils.toArray(ids_ranks.keySet(), Long.class);
 	}
 
+	public int size() {
+		return ids_ranks.size();
+	}
+
 	public void forEach(BiConsumer<? super Long,? super RankedList> action) {
 		ids_ranks.forEach(action);
 	}
 
 	public static SortedMap<Long,List<Long>> loadFromFile(File ranksFile, int maxRankSize, String separator, int offset, Function<String,Long> mapperToID){
 		SortedMap<Long,List<Long>> ranks = new TreeMap<>();
+		if(mapperToID == null && "\\s+".equals(separator)){ //common case, parsed directly from the bytes
+			RankFileParser.parseRanksPerLine(ranksFile, maxRankSize, offset, rank -> ranks.put(rank.get(0), rank));
+			return ranks;
+		}
 		FileUtils.forEachLine(ranksFile, line -> {
 			String[] pieces = line.split(separator);
 			int endPosExclusive = maxRankSize < 0 ? pieces.length : Math.min(offset + maxRankSize, pieces.length);
@@ -60,51 +69,233 @@ public class RankedLists {
 		return ranks;
 	}
 
+	/** Loads the ranks from either a folder, with one file per query, or a {@link RankStore}. */
 	public static RankedLists loadFromFolder(File folder, int rankSizeLimit, int rerank, int rankSizeRerankingLimit) {
-		Preconditions.checkArgument(folder.isDirectory(), "path either does not exist or it is a file (method not yet implemented for ranks as a file): "+folder);
+		return loadFromFolder(folder, null, rankSizeLimit, rerank, rankSizeRerankingLimit);
+	}
+
+	/**
+	 * As {@link #loadFromFolder(File, int, int, int)}, but if the query and response sets differ, the reranking takes the ranks of the responses,
+	 * in 'inverseRanksFolder' (folder or {@link RankStore}), as the ranks of the elements. If null, the ranks themselves are used.
+	 * Ranks in a {@link RankStore} are read from it as needed, instead of being all loaded in memory before reranking.
+	 */
+	public static RankedLists loadFromFolder(File folder, File inverseRanksFolder, int rankSizeLimit, int rerank, int rankSizeRerankingLimit) {
+		return loadFromFolder(folder, inverseRanksFolder, rankSizeLimit, rerank, rankSizeRerankingLimit, MAX_BLOCK_INDEX_ENTRIES);
+	}
+
+	static RankedLists loadFromFolder(File folder, File inverseRanksFolder, int rankSizeLimit, int rerank, int rankSizeRerankingLimit, int maxBlockIndexEntries) {
+		if(rerank <= 0)
+			return new RankedLists(loadRanks(folder, rankSizeLimit));
+		RankSource ranks = RankSource.of(folder, rankSizeRerankingLimit);
+		RankSource inverseRanks = inverseRanksFolder == null ? ranks : RankSource.of(inverseRanksFolder, rankSizeRerankingLimit);
+		return new RankedLists(rerank(ranks, inverseRanks, rerank==2, rankSizeLimit, maxBlockIndexEntries));
+	}
+
+	public static RankedLists loadFromStore(RankStore store, int rankSizeLimit, int rerank, int rankSizeRerankingLimit) {
+		if(rerank <= 0)
+			return new RankedLists(loadRanks(store, rankSizeLimit));
+		RankSource ranks = RankSource.of(store, rankSizeRerankingLimit);
+		return new RankedLists(rerank(ranks, ranks, rerank==2, rankSizeLimit, MAX_BLOCK_INDEX_ENTRIES));
+	}
+
+	private static SortedMap<Long,RankedList> loadRanks(File folder, int limit) {
+		if(folder.isFile())
+			return loadRanks(RankStore.open(folder), limit);
+		Preconditions.checkArgument(folder.isDirectory(), "path does not exist: "+folder);
 		Logs.finer("loading ranks from " + folder);
-		if(rerank > 0){
-			LinkedHashMap<Long,Map<Long,Pair<Integer,Float>>> ids_ranks = new LinkedHashMap(); //a rank here is a map of <id,<index,weight>>
-			for(File rankedListFile : folder.listFiles()){
-	        	LinkedHashMap<Long,Pair<Integer,Float>> rank = new LinkedHashMap();
-	        	RankedList.load(rankedListFile, rankSizeRerankingLimit, (rank_index,rank_id,rank_weight) -> rank.put(rank_id, Pair.get(rank_index, rank_weight)));
-	        	ids_ranks.put(Long.valueOf(rankedListFile.getName()), rank);
-	        }
-			return new RankedLists(rerank(ids_ranks, rerank==2, rankSizeLimit));
-		}else{
-		    SortedMap<Long,RankedList> ids_ranks = new TreeMap();
-			for(File rankedListFile : folder.listFiles())
-	        	ids_ranks.put(Long.valueOf(rankedListFile.getName()), RankedList.load(rankedListFile, rankSizeLimit));
-			return new RankedLists(ids_ranks);
-		}
+		//the files are read and parsed in parallel, and collected in the order of the files
+		File[] files = folder.listFiles();
+	    return Arrays.stream(files).parallel().collect(Collectors.toMap(
+	    	rankedListFile -> Long.valueOf(rankedListFile.getName()),
+	    	rankedListFile -> RankedList.load(rankedListFile, limit),
+	    	(a,b) -> { throw new IllegalStateException("duplicated rank id"); }, TreeMap::new));
 	}
 
-	private static SortedMap<Long,RankedList> rerank(Map<Long,Map<Long,Pair<Integer,Float>>> id_rank, boolean considerReciprocal, int finalMaxListEvaluationSize){
+	private static SortedMap<Long,RankedList> loadRanks(RankStore store, int limit) {
+	    return Arrays.stream(store.getQueryIDs()).parallel().boxed().collect(Collectors.toMap(
+	    	queryId -> queryId, queryId -> store.getRank(queryId, limit),
+	    	(a,b) -> { throw new IllegalStateException("duplicated rank id"); }, TreeMap::new));
+	}
+
+	/**
+	 * Reranks the ranks by the reciprocal positions of their elements (see {@link #rerank(RankedList, int[], boolean, int)}), taking the ranks of the elements from 'inverseRanks'.
+	 * Every element of a rank must have its rank there, and ranks are assumed to have no repeated elements.
+	 * The queries need no rank of their own in 'inverseRanks' (as when the query and response sets differ): a query absent from the rank of an element gets the position after its end.
+	 * <p>
+	 * The queries are reranked in blocks of consecutive ids. For each block, the ranks of the elements are scanned once, indexing the positions of the queries of the block
+	 * found there; the block size is chosen so that this index has about 'maxBlockIndexEntries' entries.
+	 */
+	private static SortedMap<Long,RankedList> rerank(RankSource originalRanks, RankSource inverseRanks, boolean considerReciprocal, int finalMaxListEvaluationSize, int maxBlockIndexEntries){
 		Logs.finer("starting reranking");
-		//normaliza conforme: 2017 P.R., Pedronette, 'Unsupervised manifold learning through reciprocal kNN graph and Connected Components for image retrieval tasks'
-        BiFunction<Integer,Integer,Float> normalizer;
-		if(considerReciprocal)
-			normalizer = (pos,anotherPos) -> (float)(pos + anotherPos + Math.max(pos, anotherPos));
-        else
-        	normalizer = (pos,anotherPos) -> (float)(pos + anotherPos);
-    	TreeMap<Long,RankedList> newRanks = new TreeMap();
-    	id_rank.forEach((id, rank) -> {
-    		List<Pair<Long,Float>> newRank = new ArrayList(rank.size());
-			rank.forEach((rankedElement,index_weight) -> {
-				int pos = index_weight.getA() + 1;
-
-				Map<Long,Pair<Integer,Float>> inverseRank = id_rank.get(rankedElement);
-				Pair<Integer,Float> pos_weight = inverseRank.get(id);
-				Integer inversePos = pos_weight != null ? pos_weight.getA()+1 : inverseRank.size()+1;
-
-				newRank.add(new Pair<>(rankedElement, normalizer.apply(pos, inversePos)));
-        	});
-			DataStructureUtils.stableSort(newRank, Pair.createComparatorByB());
-			if(finalMaxListEvaluationSize >= 0)
-				DataStructureUtils.removeAtEnd(newRank, newRank.size() - finalMaxListEvaluationSize);
-			newRanks.put(id, new RankedList(newRank));
-        });
-    	return newRanks;
+		long[] queryIds = originalRanks.ids;
+		int[] inverseRankSizes = IntStream.range(0, inverseRanks.ids.length).parallel().map(inverseRanks::size).toArray();
+		long numEntries = Math.max(1, Arrays.stream(inverseRankSizes).asLongStream().sum());
+		int blockSize = (int)Math.max(1, Math.min(queryIds.length, (long)maxBlockIndexEntries * queryIds.length / numEntries));
+
+		RankedList[] newRanks = new RankedList[queryIds.length];
+		for(int b0 = 0; b0 < queryIds.length; b0 += blockSize){
+			int b1 = Math.min(b0 + blockSize, queryIds.length), blockStart = b0;
+			BlockIndex index = new BlockIndex(queryIds, b0, b1, inverseRanks);
+			IntStream.range(b0, b1).parallel().forEach(q -> {
+				RankedList rank = originalRanks.getRank(originalRanks.indexOf(queryIds[q]));
+				int[] inversePositions = new int[rank.size()];
+				for(int idx = 0; idx < rank.size(); idx++){
+					int e = inverseRanks.indexOf(rank.getIdAt(idx));
+					if(e < 0)
+						throw new IllegalStateException("element "+rank.getIdAt(idx)+" of rank "+queryIds[q]+" has no rank to rerank with");
+					int inverseIdx = index.getIndex(q - blockStart, e);
+					inversePositions[idx] = inverseIdx >= 0 ? inverseIdx + 1 : inverseRankSizes[e] + 1;
+				}
+				newRanks[q] = rerank(rank, inversePositions, considerReciprocal, finalMaxListEvaluationSize);
+			});
+		}
+		TreeMap<Long,RankedList> result = new TreeMap<>();
+		for(int q = 0; q < queryIds.length; q++)
+			result.put(queryIds[q], newRanks[q]);
+		return result;
+	}
+
+	/** Consumer of the ids of a rank, with their indices. */
+	private interface IdConsumer {
+		void accept(int index, long id);
+	}
+
+	/** Ranks to be reranked or to rerank with, either loaded in memory or read from a {@link RankStore} as needed, addressed by their index among the sorted ids. */
+	private static abstract class RankSource {
+		final long[] ids; //sorted
+
+		RankSource(long[] ids) {
+			this.ids = ids;
+		}
+
+		int indexOf(long id) {
+			return Arrays.binarySearch(ids, id);
+		}
+
+		abstract int size(int r);
+		abstract RankedList getRank(int r);
+		abstract void forEachId(int r, IdConsumer consumer);
+
+		static RankSource of(File folderOrStore, int limit) {
+			return folderOrStore.isFile() ? of(RankStore.open(folderOrStore), limit) : of(loadRanks(folderOrStore, limit));
+		}
+
+		static RankSource of(SortedMap<Long,RankedList> ranks) {
+			RankedList[] ranksByIndex = ranks.values().toArray(new RankedList[ranks.size()]);
+			return new RankSource(ranks.keySet().stream().mapToLong(Long::longValue).toArray()) {
+				int size(int r) {
+					return ranksByIndex[r].size();
+				}
+				RankedList getRank(int r) {
+					return ranksByIndex[r];
+				}
+				void forEachId(int r, IdConsumer consumer) {
+					RankedList rank = ranksByIndex[r];
+					for(int idx = 0; idx < rank.size(); idx++)
+						consumer.accept(idx, rank.getIdAt(idx));
+				}
+			};
+		}
+
+		static RankSource of(RankStore store, int limit) {
+			return new RankSource(store.getQueryIDs()) {
+				int size(int r) {
+					return store.getRecords(ids[r], limit).remaining() / RankStore.RECORD_SIZE;
+				}
+				RankedList getRank(int r) {
+					return store.getRank(ids[r], limit);
+				}
+				void forEachId(int r, IdConsumer consumer) {
+					ByteBuffer records = store.getRecords(ids[r], limit);
+					for(int idx = 0, size = records.remaining() / RankStore.RECORD_SIZE; idx < size; idx++)
+						consumer.accept(idx, records.getLong(idx * RankStore.RECORD_SIZE));
+				}
+			};
+		}
+	}
+
+	/** Indices of a block of queries in the ranks of the elements: for each query of the block, the elements having it in their ranks, sorted, and its index there. */
+	private static class BlockIndex {
+		private final int[] starts; //per query of the block, where its entries start
+		private final int[] elements, indices;
+
+		BlockIndex(long[] queryIds, int b0, int b1, RankSource ranks) {
+			long firstId = queryIds[b0], lastId = queryIds[b1 - 1];
+			//the ranks of the elements are scanned in parallel by chunks of consecutive elements, whose entries are then placed in order of query and element
+			int m = ranks.ids.length, numChunks = Math.min(m, 4 * Runtime.getRuntime().availableProcessors());
+			int[][][] chunks = IntStream.range(0, numChunks).parallel().mapToObj(c -> {
+				int[][] entries = new int[3][16]; //query in block, element, index
+				int[] size = {0};
+				for(int e = (int)((long)m * c / numChunks), end = (int)((long)m * (c + 1) / numChunks); e < end; e++){
+					int element = e;
+					ranks.forEachId(e, (idx, id) -> {
+						if(id < firstId || id > lastId)
+							return;
+						int q = Arrays.binarySearch(queryIds, b0, b1, id);
+						if(q < 0)
+							return;
+						if(size[0] == entries[0].length)
+							for(int k = 0; k < entries.length; k++)
+								entries[k] = Arrays.copyOf(entries[k], size[0] * 2);
+						entries[0][size[0]] = q - b0;
+						entries[1][size[0]] = element;
+						entries[2][size[0]] = idx;
+						size[0]++;
+					});
+				}
+				for(int k = 0; k < entries.length; k++)
+					entries[k] = Arrays.copyOf(entries[k], size[0]);
+				return entries;
+			}).toArray(int[][][]::new);
+
+			starts = new int[b1 - b0 + 1];
+			for(int[][] chunk : chunks)
+				for(int q : chunk[0])
+					starts[q + 1]++;
+			for(int q = 0; q < b1 - b0; q++)
+				starts[q + 1] += starts[q];
+			elements = new int[starts[b1 - b0]];
+			indices = new int[elements.length];
+			int[] next = Arrays.copyOf(starts, b1 - b0);
+			for(int[][] chunk : chunks){ //chunks and their entries are in order of element
+				for(int k = 0; k < chunk[0].length; k++){
+					int pos = next[chunk[0][k]]++;
+					elements[pos] = chunk[1][k];
+					indices[pos] = chunk[2][k];
+				}
+			}
+		}
+
+		/** Index of the q-th query of the block in the rank of the element, or -1 if absent. */
+		int getIndex(int q, int element) {
+			int pos = Arrays.binarySearch(elements, starts[q], starts[q + 1], element);
+			return pos >= 0 ? indices[pos] : -1;
+		}
+	}
+
+	/**
+	 * Reranks a rank by the positions of its elements, as in: 2017 P.R., Pedronette, 'Unsupervised manifold learning through reciprocal kNN graph and Connected Components for image retrieval tasks'.
+	 * Each element gets the score pos + inversePos (plus max(pos, inversePos) if considerReciprocal), where pos is its position in the rank and inversePos is the position of the query in the rank of the element
+	 * (or the size of that rank + 1, if absent), both starting by 1. The new rank is in increasing order of score, keeping the original order on ties.
+	 * @param inversePositions for each element of the rank, the position of the query in its rank
+	 */
+	public static RankedList rerank(RankedList rank, int[] inversePositions, boolean considerReciprocal, int finalMaxListEvaluationSize){
+		int size = rank.size();
+		long[] scoresAndIndices = new long[size]; //scores are integers, packed with the index in the rank, so sorting keeps the original order on ties
+		for(int idx = 0; idx < size; idx++){
+			int pos = idx + 1, inversePos = inversePositions[idx];
+			long score = considerReciprocal ? pos + inversePos + Math.max(pos, inversePos) : pos + inversePos;
+			scoresAndIndices[idx] = score << 32 | idx;
+		}
+		Arrays.sort(scoresAndIndices);
+		int newSize = finalMaxListEvaluationSize >= 0 ? Math.min(size, finalMaxListEvaluationSize) : size;
+		long[] newIds = new long[newSize];
+		float[] newScores = new float[newSize];
+		for(int i = 0; i < newSize; i++){
+			newIds[i] = rank.getIdAt((int)scoresAndIndices[i]);
+			newScores[i] = (float)(scoresAndIndices[i] >>> 32);
+		}
+		return new RankedList(newIds, newScores);
 	}
 
 	public static void writeToFile(SortedMap<Long,List<Long>> ranks, File ranksFile){
@@ -2,7 +2,9 @@ package fusionGraph;
 
 import java.io.File;
 import java.util.Map;
+import com.google.common.base.Preconditions;
 import dataMining.distance.graphDistance.GraphDistanceType;
+import dataMining.graph.GraphMinHashIndex;
 import fusionGraph.dataset.DatasetFacade;
 import util.FileUtils;
 import util.Params;
@@ -72,8 +74,65 @@ public class Configs extends Params {
         return assertArray("descriptors");
     }
 
-    public GraphDistanceType fusionGraphComparator() {
-        return GraphDistanceType.get(get("similarityFusionGraph", "WGU"));
+    /** comparators of fusion graphs, as a list in similarityFusionGraph: if more than one, all are computed in a single pass over the pairs of graphs, each giving its own ranks */
+    public GraphDistanceType[] fusionGraphComparators() {
+        GraphDistanceType[] comparators = GraphDistanceType.getByNames(getArray("similarityFusionGraph", "WGU"));
+        for(GraphDistanceType comparator : comparators)
+            Preconditions.checkArgument(comparator != null, "unknown comparator in similarityFusionGraph: "+get("similarityFusionGraph"));
+        return comparators;
+    }
+
+    /** if true, fusion graphs are written in the binary format of {@link dataMining.graph.GraphSampleBinaryIO}. Either format is recognized when loading */
+    public boolean binaryFusionGraphs() {
+        return getBoolean("binaryFusionGraphs", false);
+    }
+
+    /** if true, the fusion graphs of a folder are packed in a single {@link dataMining.graph.GraphSampleArchive}, instead of one file per query. Either layout is recognized when loading */
+    public boolean packedFusionGraphs() {
+        return getBoolean("packedFusionGraphs", false);
+    }
+
+    /** if true, fusion graphs are compared only to those sharing some vertex with them, as the remaining ones have similarity 0 */
+    public boolean fusionGraphsVertexIndex() {
+        return getBoolean("fusionGraphsVertexIndex", true);
+    }
+
+    /**
+     * if true, fusion graphs are compared only to the candidates colliding with them in LSH bands of weighted MinHash sketches (see {@link GraphMinHashIndex}),
+     * giving approximate ranks, instead of to all graphs sharing some vertex with them
+     */
+    public boolean fusionGraphsMinHash() {
+        return getBoolean("fusionGraphsMinHash", false);
+    }
+
+    /** number of LSH bands of {@link #fusionGraphsMinHash()}: more bands give more candidates, increasing recall and time */
+    public int fusionGraphsMinHashBands() {
+        return getInt("fusionGraphsMinHashBands", 32);
+    }
+
+    /** number of hashes per LSH band of {@link #fusionGraphsMinHash()}: more rows give fewer and more similar candidates, decreasing recall and time */
+    public int fusionGraphsMinHashRows() {
+        return getInt("fusionGraphsMinHashRows", 1);
+    }
+
+    /** if true, the similarities of fusion graphs are computed in decreasing order of their upper bounds, stopping once no remaining graph can enter the rank */
+    public boolean fusionGraphsEarlyTermination() {
+        return getBoolean("fusionGraphsEarlyTermination", false);
+    }
+
+    /** if true, fusion graphs are generated for batches of queries, loading ranks on demand and keeping a bounded cache of them, instead of loading all ranks beforehand */
+    public boolean streamingAggregation() {
+        return getBoolean("streamingAggregation", false);
+    }
+
+    /** number of queries whose fusion graphs are generated together, in streaming aggregation */
+    public int aggregationBatchSize() {
+        return getInt("aggregationBatchSize", 1000);
+    }
+
+    /** maximum number of ids whose ranks are kept in memory, in streaming aggregation */
+    public int aggregationCacheSize() {
+        return getInt("aggregationCacheSize", 20000);
     }
 
     public boolean normalizeLinear() {
@@ -3,8 +3,7 @@ package fusionGraph;
 import java.util.List;
 import java.util.function.Function;
 import dataMining.retrieval.RankedList;
-import util.Pair;
-import util.graph.DirectedWeightedLabeledGraph;
+import util.graph.CompactDirectedWeightedLabeledGraph;
 import util.graph.LabeledMeasurableGraph;
 
 public class FusionGraphCreator {
@@ -18,16 +17,14 @@ public class FusionGraphCreator {
 		return g;
     }
     private LabeledMeasurableGraph createBeforeNormalization(@SuppressWarnings("unused") Long queryId, List<RankedList> ranks, Function<Long,List<RankedList>> responsesRanks){
-        LabeledMeasurableGraph g = new DirectedWeightedLabeledGraph(true);
+        CompactDirectedWeightedLabeledGraph.DenseBuilder g = new CompactDirectedWeightedLabeledGraph.DenseBuilder(true);
 
         // Nodes are composed by the results that occur in the ranks from the query q.
  		// The weight of node v(A) is given by the sum of similarities that the response item A has in the ranks of q.
         for(RankedList rank : ranks){
-        	List<Pair<Long,Float>> rank_ = rank.getRank();
-            for(int idx = 0; idx < rank_.size(); idx++){
-            	Pair<Long,Float> a_simQA = rank_.get(idx);
-				Long a = a_simQA.getA();
-            	Float sim_qa = a_simQA.getB();
+            for(int idx = 0; idx < rank.size(); idx++){
+				long a = rank.getIdAt(idx);
+            	float sim_qa = rank.getWeightAt(idx);
             	//int pos_a = idx+1;
 
                 addVertex(g, a, sim_qa);
@@ -36,38 +33,37 @@ public class FusionGraphCreator {
 
     	//for each result of each rank, obtain its rank and use it to create edges:
     	for(RankedList rank : ranks){
-    		List<Pair<Long,Float>> rank_ = rank.getRank();
-    		for(int idx = 0; idx < rank_.size(); idx++){
-    			Pair<Long,Float> a_simQA = rank_.get(idx);
-    			Long a = a_simQA.getA();
-    			//Float simQA = a_simQA.getB();
+    		for(int idx = 0; idx < rank.size(); idx++){
+    			long a = rank.getIdAt(idx);
+    			int vA = g.indexOf(a); //vertices are mapped to their local indices just once
+    			//float simQA = rank.getWeightAt(idx);
     			int posA = idx+1;
 
-    			String a_ = a.toString();
     			List<RankedList> ranks_a = responsesRanks.apply(a);
     			for(RankedList rank_a : ranks_a) {
-    				for(Pair<Long,Float> b_simAB : rank_a){
-    					String b_ = b_simAB.getA().toString();
-    					Float simAB = b_simAB.getB();
-    					addEdge(g, a_, posA, /*simQA,*/ b_, simAB);
+    				for(int idxB = 0; idxB < rank_a.size(); idxB++){
+    					int vB = g.indexOf(rank_a.getIdAt(idxB));
+    					float simAB = rank_a.getWeightAt(idxB);
+    					addEdge(g, vA, posA, /*simQA,*/ vB, simAB);
     				}
     			}
     			//print(g);
     		}
         }
 
-        return g;
+        return g.build();
     }
 
-	private void addVertex(LabeledMeasurableGraph g, Long a, Float weight) {
-        g.addVertex(a.toString(), weight);
+	private void addVertex(CompactDirectedWeightedLabeledGraph.DenseBuilder g, long a, float weight) {
+        g.addVertex(a, weight);
     }
 
-	private void addEdge(LabeledMeasurableGraph g, String a_, int posA, /*Float simQA,*/ String b_, Float simAB){
-    	if(!g.containsVertex(a_) || !g.containsVertex(b_) || a_.equals(b_))
+	/** @param vA,vB local indices of the vertices in the builder, negative if not vertices of the graph */
+	private void addEdge(CompactDirectedWeightedLabeledGraph.DenseBuilder g, int vA, int posA, /*float simQA,*/ int vB, float simAB){
+    	if(vA < 0 || vB < 0 || vA == vB)
     		return;
         double weight = simAB / posA;
-        g.addEdgeOtherwiseWeight(a_, b_, weight);
+        g.addEdgeOtherwiseWeight(vA, vB, weight);
 	}
 
 	public String getSetupInfoSufix(){
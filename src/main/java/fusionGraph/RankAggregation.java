@@ -2,20 +2,30 @@ package fusionGraph;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
+import com.google.common.primitives.Longs;
 import dataMining.SamplePathResolver;
 import dataMining.SamplePathResolverSimple;
 import dataMining.distance.graphDistance.GraphDistanceType;
 import dataMining.distance.graphDistance.GraphSampleDistanceMeasurer;
+import dataMining.distance.graphDistance.GraphSampleMultiSimilarityMeasurer;
 import dataMining.graph.GraphDataset;
+import dataMining.graph.GraphMinHashIndex;
 import dataMining.graph.GraphSample;
+import dataMining.graph.GraphSampleArchive;
+import dataMining.graph.GraphVertexIndex;
+import dataMining.retrieval.CandidatesIndex;
 import dataMining.retrieval.RankGenerator;
+import dataMining.retrieval.RankStore;
 import dataMining.retrieval.RankedList;
 import fusionGraph.dataset.DatasetFacade;
 import util.FileUtils;
@@ -31,6 +41,9 @@ public class RankAggregation {
     private int rerankOptionAtFusion;
     final int L;
     private final boolean normalizeLinear;
+    private final boolean binaryFusionGraphs, packedFusionGraphs;
+    private final boolean streamingAggregation;
+    private final int aggregationBatchSize, aggregationCacheSize;
     private final FusionGraphCreator fusionCreator;
     private final String fusionConfigName;
 	public final File queryFusionGraphsFolder;
@@ -44,6 +57,11 @@ public class RankAggregation {
     	rerankOptionAtFusion = params.rerankOptionAtFusion();
 
     	normalizeLinear = params.normalizeLinear();
+    	binaryFusionGraphs = params.binaryFusionGraphs();
+    	packedFusionGraphs = params.packedFusionGraphs();
+    	streamingAggregation = params.streamingAggregation();
+    	aggregationBatchSize = params.aggregationBatchSize();
+    	aggregationCacheSize = params.aggregationCacheSize();
 
     	fusionCreator = new FusionGraphCreator();
 
@@ -60,23 +78,27 @@ public class RankAggregation {
         File queryRanksParentFolder = Configs.queryRanksParentFolder(dataset);
         File responseRanksParentFolder = Configs.responseRanksParentFolder(dataset);
         boolean useSameQueriesAndResponses = queryRanksParentFolder.equals(responseRanksParentFolder);
+        if(streamingAggregation){
+        	aggregateRanksStreaming(dataset, queryRanksParentFolder, responseRanksParentFolder, useSameQueriesAndResponses, incremental);
+        	return;
+        }
         int nQueries;
         LazySupplier<Map<Long,List<RankedList>>> getter_queryIds_ranks;
+        Function<String,File> getterDescriptorRanksFolderResponse = d -> Configs.getDescriptorBasedRanksFolder(responseRanksParentFolder, d);
         {
         	Function<String,File> getterDescriptorRanksFolderQuery = d -> Configs.getDescriptorBasedRanksFolder(queryRanksParentFolder, d);
-        	File firstDescriptorRanksDir = getterDescriptorRanksFolderQuery.apply(descriptors[0]);
-        	Preconditions.checkState(firstDescriptorRanksDir.isDirectory(), "it must be an existing dir: "+firstDescriptorRanksDir);
-    		nQueries = FileUtils.countDirFiles(firstDescriptorRanksDir, false);
-        	getter_queryIds_ranks = LazySupplier.create(() -> loadRanksForAggregation(dataset, getterDescriptorRanksFolderQuery));
+        	File firstDescriptorRanksDir = RankStore.resolve(getterDescriptorRanksFolderQuery.apply(descriptors[0]));
+        	Preconditions.checkState(firstDescriptorRanksDir.exists(), "it must be an existing dir or rank store: "+firstDescriptorRanksDir);
+    		nQueries = firstDescriptorRanksDir.isFile() ? RankStore.open(firstDescriptorRanksDir).getNumRanks() : FileUtils.countDirFiles(firstDescriptorRanksDir, false);
+    		//with different sets, the queries are reranked by the ranks of the responses
+        	getter_queryIds_ranks = LazySupplier.create(() -> loadRanksForAggregation(dataset, getterDescriptorRanksFolderQuery, useSameQueriesAndResponses ? null : getterDescriptorRanksFolderResponse));
         }
         if(useSameQueriesAndResponses){
 			aggregateRanksAsGraphs(nQueries, getter_queryIds_ranks, DatasetFacade.getLabelsIfApplicable(dataset), getter_queryIds_ranks, queryFusionGraphsFolder, incremental);
         }else{
-            if(rerankOptionAtFusion != 0)
-                throw new UnsupportedOperationException("reranking not yet supported for different response and query sets");
             if(DatasetFacade.isLabeled(dataset))
                 throw new UnsupportedOperationException("to be implemented. it requires labels for different response and query sets...");
-            Map<Long,List<RankedList>> responseIds_ranks = loadRanksForAggregation(dataset, d -> Configs.getDescriptorBasedRanksFolder(responseRanksParentFolder, d));
+            Map<Long,List<RankedList>> responseIds_ranks = loadRanksForAggregation(dataset, getterDescriptorRanksFolderResponse, null);
             LazySupplier<Map<Long,List<RankedList>>> getter_responseIds_ranks = LazySupplier.create(() -> responseIds_ranks);
             aggregateRanksAsGraphs(nQueries, getter_queryIds_ranks, null, getter_responseIds_ranks, queryFusionGraphsFolder, incremental);
             //gerar tambem pra response vs response, pois é usado posteriormente no rerankeamento dos ranks das consultas
@@ -84,51 +106,145 @@ public class RankAggregation {
             aggregateRanksAsGraphs(nResponses, getter_responseIds_ranks, null, getter_responseIds_ranks, Configs.responseFusionGraphsFolder(queryFusionGraphsFolder), incremental);
         }
     }
-	private Map<Long,List<RankedList>> loadRanksForAggregation(String dataset, Function<String,File> getterDescriptorRanksFolder){
-		 return RanksForAggregationLoader.loadRanksForAggregation(dataset, getterDescriptorRanksFolder, descriptors, L, normalizeLinear, rerankOptionAtFusion);
+	private Map<Long,List<RankedList>> loadRanksForAggregation(String dataset, Function<String,File> getterDescriptorRanksFolder, Function<String,File> getterDescriptorInverseRanksFolder){
+		 return RanksForAggregationLoader.loadRanksForAggregation(dataset, getterDescriptorRanksFolder, getterDescriptorInverseRanksFolder, descriptors, L, normalizeLinear, rerankOptionAtFusion);
+	}
+
+	/** As {@link #aggregateRanks(String, int)}, but loading the ranks on demand for batches of queries, with a bounded cache of ranks, so that memory does not grow with the collection. */
+	private void aggregateRanksStreaming(String dataset, File queryRanksParentFolder, File responseRanksParentFolder, boolean useSameQueriesAndResponses, int incremental){
+		if(useSameQueriesAndResponses){
+			RanksOnDemandLoader queryRanks = createRanksOnDemandLoader(dataset, queryRanksParentFolder, null);
+			aggregateRanksAsGraphs(queryRanks.getIds(), queryRanks, DatasetFacade.getLabelsIfApplicable(dataset), queryRanks, queryFusionGraphsFolder, incremental);
+			queryRanks.logCacheStats();
+		}else{
+            if(DatasetFacade.isLabeled(dataset))
+                throw new UnsupportedOperationException("to be implemented. it requires labels for different response and query sets...");
+            RanksOnDemandLoader responseRanks = createRanksOnDemandLoader(dataset, responseRanksParentFolder, null);
+            RanksOnDemandLoader queryRanks = createRanksOnDemandLoader(dataset, queryRanksParentFolder, responseRanks);
+            aggregateRanksAsGraphs(queryRanks.getIds(), queryRanks, null, responseRanks, queryFusionGraphsFolder, incremental);
+            aggregateRanksAsGraphs(responseRanks.getIds(), responseRanks, null, responseRanks, Configs.responseFusionGraphsFolder(queryFusionGraphsFolder), incremental);
+            queryRanks.logCacheStats();
+            responseRanks.logCacheStats();
+		}
 	}
+	private RanksOnDemandLoader createRanksOnDemandLoader(String dataset, File ranksParentFolder, RanksOnDemandLoader inverseRanks){
+		return new RanksOnDemandLoader(DatasetFacade.getRankSizeLimitGeneration(dataset), d -> Configs.getDescriptorBasedRanksFolder(ranksParentFolder, d),
+			descriptors, L, normalizeLinear, rerankOptionAtFusion, aggregationCacheSize, inverseRanks);
+	}
+	private void aggregateRanksAsGraphs(long[] queryIds, Function<Long,List<RankedList>> queryIds_ranks, Map<Long,String> queryIds_labels,
+		Function<Long,List<RankedList>> responseIds_ranks, File outputDir_, int incremental)
+	{
+		Supplier<Iterator<Map<Long,List<RankedList>>>> batches = () -> Iterators.transform(Iterators.partition(Longs.asList(queryIds).iterator(), aggregationBatchSize),
+			batch -> batch.parallelStream().collect(Collectors.toMap(id -> id, queryIds_ranks)));
+		aggregateRanksAsGraphs(queryIds.length, batches, queryIds_labels, () -> responseIds_ranks, outputDir_, incremental);
+	}
+
 	public void aggregateRanksAsGraphs(int nQueries, LazySupplier<Map<Long,List<RankedList>>> queryIds_ranks, Map<Long,String> queryIds_labels,
 		LazySupplier<Map<Long, List<RankedList>>> getter_responseIds_ranks, File outputDir_, int incremental)
 	{
-		SamplePathResolver outputDir = new SamplePathResolverSimple(outputDir_);
+		aggregateRanksAsGraphs(nQueries, () -> Iterators.singletonIterator(queryIds_ranks.get()), queryIds_labels, () -> getter_responseIds_ranks.get()::get, outputDir_, incremental);
+	}
+	/** @param queryIds_ranks gives the ranks of all queries, in one or more batches */
+	private void aggregateRanksAsGraphs(int nQueries, Supplier<Iterator<Map<Long,List<RankedList>>>> queryIds_ranks, Map<Long,String> queryIds_labels,
+		Supplier<Function<Long,List<RankedList>>> getter_responseIds_ranks, File outputDir_, int incremental)
+	{
+		SamplePathResolver outputDir = packedFusionGraphs ? new GraphSampleArchive(outputDir_) : new SamplePathResolverSimple(outputDir_);
         if(outputDir.exists() && outputDir.countFiles() >= nQueries){
         	Logs.fine("fusion graphs exist, skipping. "+outputDir);
         	return;
         }
-        Function<Long,List<RankedList>> responseIds_ranks = getter_responseIds_ranks.get()::get;
+        Function<Long,List<RankedList>> responseIds_ranks = getter_responseIds_ranks.get();
     	Logs.info("Generating fusion graphs: "+outputDir);
         outputDir.initialize(incremental > 0);
         AtomicInteger progressCount = new AtomicInteger(); TimeWatcher progressWatcher = new TimeWatcher();
         TimeWatcher totalTime = new TimeWatcher();
-        queryIds_ranks.get().entrySet().parallelStream().forEach(id_ranks -> {
-            Long id = id_ranks.getKey();
-            File outputFile = GraphDataset.getGraphSampleFile(outputDir, id);
-            if(incremental < 1 || !outputFile.exists()){
-            	String label = queryIds_labels==null ? null : queryIds_labels.get(id);
-				LabeledMeasurableGraph fg = fusionCreator.create(id, id_ranks.getValue(), responseIds_ranks);
-            	GraphDataset.writeSample(new GraphSample(id, label, fg), outputFile);
-            }
-            progressCount.incrementAndGet();
-            if(progressWatcher.checkSecondsSpent())
-            	Logs.finest("now: "+progressCount+" fusion graphs generated");
-        });
+        for(Iterator<Map<Long,List<RankedList>>> batches = queryIds_ranks.get(); batches.hasNext(); ){
+            batches.next().entrySet().parallelStream().forEach(id_ranks -> {
+                Long id = id_ranks.getKey();
+                File outputFile = packedFusionGraphs ? null : GraphDataset.getGraphSampleFile(outputDir, id, binaryFusionGraphs);
+                if(incremental < 1 || (packedFusionGraphs ? !((GraphSampleArchive)outputDir).contains(id) : !outputFile.exists())){
+                	String label = queryIds_labels==null ? null : queryIds_labels.get(id);
+    				LabeledMeasurableGraph fg = fusionCreator.create(id, id_ranks.getValue(), responseIds_ranks);
+    				GraphSample sample = new GraphSample(id, label, fg);
+    				if(packedFusionGraphs)
+    					GraphDataset.writeSampleOnFolder(sample, outputDir);
+    				else
+    					GraphDataset.writeSample(sample, outputFile);
+                }
+                progressCount.incrementAndGet();
+                if(progressWatcher.checkSecondsSpent())
+                	Logs.finest("now: "+progressCount+" fusion graphs generated");
+            });
+        }
+        if(packedFusionGraphs)
+        	((GraphSampleArchive)outputDir).close();
         Logs.info(progressCount+" fusion graphs generated, ater " + totalTime);
     }
 
+    /**
+     * Ranks the fusion graphs by each comparator of {@link Configs#fusionGraphComparators()}, each into its own folder, and evaluates them.
+     * With several comparators, their similarities are computed together for each pair of graphs (without early termination).
+     */
     public void rankFromFusedGraphsByQuerying(String dataset, Configs params) {
-        final GraphDistanceType similarityFusionGraph = params.fusionGraphComparator();
-        final File queryGraphBasedRerankedRanksFolder = getFusedRanksFolder(Configs.queryRanksParentFolder(dataset), similarityFusionGraph);
+        final GraphDistanceType[] comparators = params.fusionGraphComparators();
+        boolean weighted = false;
+        for(GraphDistanceType comparator : comparators)
+            weighted |= comparator.isWeighted();
+        File[] queryGraphBasedRerankedRanksFolders = new File[comparators.length];
+        for(int c = 0; c < comparators.length; c++)
+            queryGraphBasedRerankedRanksFolders[c] = getFusedRanksFolder(Configs.queryRanksParentFolder(dataset), comparators[c]);
+        final Function<List<GraphSample>,CandidatesIndex<GraphSample>> indexer;
+        if(params.fusionGraphsMinHash()){ //approximate, so the ranks get their own folder
+            int bands = params.fusionGraphsMinHashBands(), rows = params.fusionGraphsMinHashRows();
+            final boolean weightedSketches = weighted;
+            indexer = samples -> new GraphMinHashIndex(samples, weightedSketches, bands, rows);
+            for(int c = 0; c < comparators.length; c++)
+                queryGraphBasedRerankedRanksFolders[c] = new File(queryGraphBasedRerankedRanksFolders[c].getPath() + "_LSH" + bands + "x" + rows);
+        }else{
+            indexer = params.fusionGraphsVertexIndex() ? GraphVertexIndex::new : null;
+        }
+        if(comparators.length == 1)
+            rankFromFusedGraphsByQuerying(dataset, params, comparators[0], indexer, queryGraphBasedRerankedRanksFolders[0]);
+        else
+            rankFromFusedGraphsByQuerying(dataset, params, comparators, indexer, queryGraphBasedRerankedRanksFolders);
+        for(File queryGraphBasedRerankedRanksFolder : queryGraphBasedRerankedRanksFolders)
+            DatasetFacade.evaluateRanks(dataset, queryGraphBasedRerankedRanksFolder, params.rerankOptionAtEval(), false);
+    }
+
+    private void rankFromFusedGraphsByQuerying(String dataset, Configs params, GraphDistanceType similarityFusionGraph,
+        Function<List<GraphSample>,CandidatesIndex<GraphSample>> indexer, File queryGraphBasedRerankedRanksFolder)
+    {
+        if( DatasetFacade.isQuerySetAndResponseSetEquals(dataset) ){
+            ArrayList<GraphSample> fusionGraphs = GraphDataset.loadFromFolder(queryFusionGraphsFolder, true).getSamples();
+            if(params.fusionGraphsEarlyTermination())
+                RankGenerator.generateTopRanks(fusionGraphs, new GraphSampleDistanceMeasurer(similarityFusionGraph), indexer,
+                    DatasetFacade.getRankSizeLimitEvaluation(dataset), true, queryGraphBasedRerankedRanksFolder);
+            else
+                RankGenerator.generateRanks(fusionGraphs, new GraphSampleDistanceMeasurer(similarityFusionGraph), indexer,
+                    DatasetFacade.getRankSizeLimitEvaluation(dataset), true, true, queryGraphBasedRerankedRanksFolder);
+        }else{
+            Stream<GraphSample> queryFusionGraphs = GraphDataset.streamFromFolder(queryFusionGraphsFolder, true);
+            ArrayList<GraphSample> responseFusionGraphs = GraphDataset.loadFromFolder(Configs.responseFusionGraphsFolder(queryFusionGraphsFolder), true).getSamples();
+            RankGenerator.generateRanks(queryFusionGraphs, responseFusionGraphs, new GraphSampleDistanceMeasurer(similarityFusionGraph), indexer,
+                params.fusionGraphsEarlyTermination(), DatasetFacade.getRankSizeLimitEvaluation(dataset), true, queryGraphBasedRerankedRanksFolder);
+        }
+    }
+
+    private void rankFromFusedGraphsByQuerying(String dataset, Configs params, GraphDistanceType[] similaritiesFusionGraph,
+        Function<List<GraphSample>,CandidatesIndex<GraphSample>> indexer, File[] queryGraphBasedRerankedRanksFolders)
+    {
+        if(params.fusionGraphsEarlyTermination())
+            Logs.warn("early termination is not applicable to several comparators, so all pairs of fusion graphs are compared");
+        GraphSampleMultiSimilarityMeasurer similarities = new GraphSampleMultiSimilarityMeasurer(similaritiesFusionGraph);
         if( DatasetFacade.isQuerySetAndResponseSetEquals(dataset) ){
-            ArrayList<GraphSample> fusionGraphs = GraphDataset.loadFromFolder(queryFusionGraphsFolder).getSamples();
-            RankGenerator.generateRanks(fusionGraphs, new GraphSampleDistanceMeasurer(similarityFusionGraph),
-                DatasetFacade.getRankSizeLimitEvaluation(dataset), true, true, queryGraphBasedRerankedRanksFolder);
+            ArrayList<GraphSample> fusionGraphs = GraphDataset.loadFromFolder(queryFusionGraphsFolder, true).getSamples();
+            RankGenerator.generateRanks(fusionGraphs, similarities, indexer, DatasetFacade.getRankSizeLimitEvaluation(dataset), true, queryGraphBasedRerankedRanksFolders);
         }else{
-            Stream<GraphSample> queryFusionGraphs = Arrays.stream(queryFusionGraphsFolder.listFiles()).map(f -> GraphDataset.loadSampleFromFile(f));
-            ArrayList<GraphSample> responseFusionGraphs = GraphDataset.loadFromFolder(Configs.responseFusionGraphsFolder(queryFusionGraphsFolder)).getSamples();
-            RankGenerator.generateRanks(queryFusionGraphs, responseFusionGraphs, new GraphSampleDistanceMeasurer(similarityFusionGraph),
-                DatasetFacade.getRankSizeLimitEvaluation(dataset), true, queryGraphBasedRerankedRanksFolder);
+            Stream<GraphSample> queryFusionGraphs = GraphDataset.streamFromFolder(queryFusionGraphsFolder, true);
+            ArrayList<GraphSample> responseFusionGraphs = GraphDataset.loadFromFolder(Configs.responseFusionGraphsFolder(queryFusionGraphsFolder), true).getSamples();
+            RankGenerator.generateRanks(queryFusionGraphs, responseFusionGraphs, similarities, indexer, DatasetFacade.getRankSizeLimitEvaluation(dataset), true,
+                queryGraphBasedRerankedRanksFolders);
         }
-        DatasetFacade.evaluateRanks(dataset, queryGraphBasedRerankedRanksFolder, params.rerankOptionAtEval(), false);
     }
 
     public File getFusedRanksFolder(File ranksParentFolder, GraphDistanceType fusionGraphComparator){
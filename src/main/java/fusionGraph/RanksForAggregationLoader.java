@@ -1,48 +1,76 @@
 package fusionGraph;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import dataMining.retrieval.RankStore;
 import dataMining.retrieval.RankedList;
 import dataMining.retrieval.RankedLists;
 import fusionGraph.dataset.DatasetFacade;
 import util.DataStructureUtils;
+import util.Logs;
 import util.MemoryUtils;
+import util.TimeWatcher;
 
 public class RanksForAggregationLoader {
 
     public static Map<Long,List<RankedList>> loadRanksForAggregation(String dataset, Function<String,File> getterDescriptorRanksFolder, String[] descriptors, int rankSizeLimit, boolean normalizeToLinearInterval, int rerankOptionAtFusion){
-        boolean rerank = rerankOptionAtFusion > 0;
-        if(rerank && DatasetFacade.isFullRankRequired(dataset))
-            throw new UnsupportedOperationException("not yet implemented");
+        return loadRanksForAggregation(dataset, getterDescriptorRanksFolder, null, descriptors, rankSizeLimit, normalizeToLinearInterval, rerankOptionAtFusion);
+    }
+
+    /** @param getterDescriptorInverseRanksFolder for query and response sets that differ, gives the ranks of the responses, used for reranking the ranks of the queries (see {@link RankedLists#loadFromFolder(File, File, int, int, int)}); null if they are the same */
+    public static Map<Long,List<RankedList>> loadRanksForAggregation(String dataset, Function<String,File> getterDescriptorRanksFolder, Function<String,File> getterDescriptorInverseRanksFolder,
+        String[] descriptors, int rankSizeLimit, boolean normalizeToLinearInterval, int rerankOptionAtFusion)
+    {
         int rankSizeRerankingLimit = DatasetFacade.getRankSizeLimitGeneration(dataset);
-        return loadRanksForAggregation(rankSizeRerankingLimit, getterDescriptorRanksFolder, descriptors, rankSizeLimit, normalizeToLinearInterval, rerankOptionAtFusion);
+        return loadRanksForAggregation(rankSizeRerankingLimit, getterDescriptorRanksFolder, getterDescriptorInverseRanksFolder, descriptors, rankSizeLimit, normalizeToLinearInterval, rerankOptionAtFusion);
     }
 
 	public static Map<Long,List<RankedList>> loadRanksForAggregation(int rankSizeRerankingLimit, Function<String,File> getterDescriptorRanksFolder, String[] descriptors, int rankSizeLimit, boolean normalizeToLinearInterval, int rerankOptionAtFusion){
-		Consumer<RankedList> normalizer;
-		{
-			float normMin = 0.1F, normMax = 1F; //IMPORTANT: normalization interval not in 0 to avoid empty weight contribution for vertices and edges
-			normalizer =
-				normalizeToLinearInterval
-				? rank -> rank.changeWeightsToInterval(normMax, normMin) //tentativa de normalizar evitando possiveis impactos de intervalos muito dispares, do modelo anterior
-					: rank -> rank.normalizeDecreasing(normMin, normMax);
-		}
+		return loadRanksForAggregation(rankSizeRerankingLimit, getterDescriptorRanksFolder, null, descriptors, rankSizeLimit, normalizeToLinearInterval, rerankOptionAtFusion);
+	}
+
+	public static Map<Long,List<RankedList>> loadRanksForAggregation(int rankSizeRerankingLimit, Function<String,File> getterDescriptorRanksFolder, Function<String,File> getterDescriptorInverseRanksFolder,
+		String[] descriptors, int rankSizeLimit, boolean normalizeToLinearInterval, int rerankOptionAtFusion)
+	{
+		Consumer<RankedList> normalizer = createNormalizer(normalizeToLinearInterval);
+		//descriptors are loaded in parallel (and the files of each one too, by RankedLists), but merged in the order of the descriptors:
+		TimeWatcher totalTime = new TimeWatcher();
+		RankedLists[] ranksByDescriptor = Arrays.stream(descriptors).parallel().map(descriptor -> {
+			File ranksFolder = RankStore.resolve(getterDescriptorRanksFolder.apply(descriptor));
+			File inverseRanksFolder = getterDescriptorInverseRanksFolder == null ? null : RankStore.resolve(getterDescriptorInverseRanksFolder.apply(descriptor));
+			TimeWatcher time = new TimeWatcher();
+			RankedLists ranks = RankedLists.loadFromFolder(ranksFolder, inverseRanksFolder, rankSizeLimit, rerankOptionAtFusion, rankSizeRerankingLimit);
+			ranks.forEach((id,rank) -> normalizer.accept(rank));
+			Logs.finer(ranks.size()+" ranks loaded from "+ranksFolder+" after "+time+" ("+ranksPerSecond(ranks.size(), time)+" ranks/s)");
+			return ranks;
+		}).toArray(RankedLists[]::new);
 		Map<Long,List<RankedList>> ranksById = new HashMap();
-		for(String descriptor : descriptors){
-			File ranksFolder = getterDescriptorRanksFolder.apply(descriptor);
-			RankedLists ranks = RankedLists.loadFromFolder(ranksFolder, rankSizeLimit, rerankOptionAtFusion, rankSizeRerankingLimit);
-			ranks.forEach((id,rank) -> {
-				normalizer.accept(rank);
-				DataStructureUtils.putOnListValue(ranksById, id, rank);
-			});
-			MemoryUtils.log();
+		int total = 0;
+		for(RankedLists ranks : ranksByDescriptor){
+			ranks.forEach((id,rank) -> DataStructureUtils.putOnListValue(ranksById, id, rank));
+			total += ranks.size();
 		}
+		Logs.fine(total+" ranks of "+descriptors.length+" descriptors loaded after "+totalTime+" ("+ranksPerSecond(total, totalTime)+" ranks/s)");
+		MemoryUtils.log();
 		return ranksById;
 	}
+
+	private static long ranksPerSecond(int numRanks, TimeWatcher time){
+		return numRanks * 1000L / Math.max(1, time.getTimeInMiliSecs());
+	}
+
+	static Consumer<RankedList> createNormalizer(boolean normalizeToLinearInterval){
+		float normMin = 0.1F, normMax = 1F; //IMPORTANT: normalization interval not in 0 to avoid empty weight contribution for vertices and edges
+		return
+			normalizeToLinearInterval
+			? rank -> rank.changeWeightsToInterval(normMax, normMin) //tentativa de normalizar evitando possiveis impactos de intervalos muito dispares, do modelo anterior
+				: rank -> rank.normalizeDecreasing(normMin, normMax);
+	}
 }
 
 
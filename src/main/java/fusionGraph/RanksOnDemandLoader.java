@@ -0,0 +1,134 @@
+package fusionGraph;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import com.google.common.base.Preconditions;
+import dataMining.retrieval.RankStore;
+import dataMining.retrieval.RankedList;
+import dataMining.retrieval.RankedLists;
+import util.CachedFunction;
+import util.Logs;
+import util.Pair;
+
+/**
+ * Alternative to {@link RanksForAggregationLoader} for collections whose ranks do not fit in memory:
+ * the ranks of an id (one per descriptor) are loaded only when requested, and kept in a {@link CachedFunction} bounded by number of ids.
+ * The ranks are the same as those of {@link RanksForAggregationLoader}, including the reranking, which here is computed per id from the original ranks of its elements
+ * (for query and response sets that differ, those of another loader, of the responses).
+ */
+public class RanksOnDemandLoader implements Function<Long,List<RankedList>> {
+
+	private final Source[] sources; //one per descriptor
+	private final int rankSizeLimit, rankSizeRerankingLimit, rerankOptionAtFusion;
+	private final Consumer<RankedList> normalizer;
+	private final CachedFunction<Long,List<RankedList>> ranks;
+	private final CachedFunction<Pair<Integer,Long>,RankedList> originalRanks; //<descriptor index, id> -> rank before reranking
+	private final RanksOnDemandLoader inverseRanks; //loader with the ranks of the elements, for reranking
+
+	public RanksOnDemandLoader(int rankSizeRerankingLimit, Function<String,File> getterDescriptorRanksFolder, String[] descriptors, int rankSizeLimit,
+		boolean normalizeToLinearInterval, int rerankOptionAtFusion, int cacheSize)
+	{
+		this(rankSizeRerankingLimit, getterDescriptorRanksFolder, descriptors, rankSizeLimit, normalizeToLinearInterval, rerankOptionAtFusion, cacheSize, null);
+	}
+
+	/** @param inverseRanks for query and response sets that differ, the loader of the ranks of the responses, for reranking; null if they are the same */
+	public RanksOnDemandLoader(int rankSizeRerankingLimit, Function<String,File> getterDescriptorRanksFolder, String[] descriptors, int rankSizeLimit,
+		boolean normalizeToLinearInterval, int rerankOptionAtFusion, int cacheSize, RanksOnDemandLoader inverseRanks)
+	{
+		Preconditions.checkArgument(inverseRanks == null || inverseRanks.rankSizeRerankingLimit == rankSizeRerankingLimit, "the ranks of the elements must be loaded as for reranking");
+		sources = new Source[descriptors.length];
+		for(int d = 0; d < descriptors.length; d++)
+			sources[d] = new Source(RankStore.resolve(getterDescriptorRanksFolder.apply(descriptors[d])));
+		this.rankSizeLimit = rankSizeLimit;
+		this.rankSizeRerankingLimit = rankSizeRerankingLimit;
+		this.rerankOptionAtFusion = rerankOptionAtFusion;
+		this.normalizer = RanksForAggregationLoader.createNormalizer(normalizeToLinearInterval);
+		ranks = new CachedFunction<>(this::load, cacheSize);
+		originalRanks = rerankOptionAtFusion > 0 ? new CachedFunction<>(descriptor_id -> loadOriginal(descriptor_id.getA(), descriptor_id.getB()), cacheSize) : null;
+		this.inverseRanks = inverseRanks != null ? inverseRanks : this;
+	}
+
+	/** Returns the ids having ranks in the first descriptor, sorted. */
+	public long[] getIds() {
+		return sources[0].getIds();
+	}
+
+	/** Returns the ranks of the id, one per descriptor having it, or null if no descriptor has it (as Map::get for the ranks of {@link RanksForAggregationLoader}). */
+	@Override
+	public List<RankedList> apply(Long id) {
+		List<RankedList> r = ranks.apply(id);
+		return r.isEmpty() ? null : r;
+	}
+
+	/** Logs the hits, misses and evictions of the caches of ranks. */
+	public void logCacheStats() {
+		Logs.fine("ranks " + ranks + (originalRanks == null ? "" : "; ranks before reranking " + originalRanks));
+	}
+
+	private List<RankedList> load(Long id) {
+		List<RankedList> r = new ArrayList<>(sources.length);
+		for(int d = 0; d < sources.length; d++){
+			RankedList rank = rerankOptionAtFusion > 0 ? rerank(d, id) : sources[d].load(id, rankSizeLimit);
+			if(rank != null){
+				normalizer.accept(rank);
+				r.add(rank);
+			}
+		}
+		return r;
+	}
+
+	private RankedList loadOriginal(int descriptor, long id) {
+		RankedList rank = sources[descriptor].load(id, rankSizeRerankingLimit);
+		Preconditions.checkState(rank != null, "no rank for id "+id+" to rerank with");
+		return rank;
+	}
+
+	/** Same reranking as in {@link dataMining.retrieval.RankedLists#loadFromFolder(File, File, int, int, int)}. */
+	private RankedList rerank(int descriptor, long id) {
+		if(!sources[descriptor].contains(id))
+			return null;
+		RankedList rank = originalRanks.apply(Pair.get(descriptor, id));
+		int[] inversePositions = new int[rank.size()];
+		for(int idx = 0; idx < rank.size(); idx++){
+			RankedList inverseRank = inverseRanks.originalRanks.apply(Pair.get(descriptor, rank.getIdAt(idx)));
+			int inverseIdx = inverseRank.getPosition(id);
+			inversePositions[idx] = inverseIdx >= 0 ? inverseIdx + 1 : inverseRank.size() + 1;
+		}
+		return RankedLists.rerank(rank, inversePositions, rerankOptionAtFusion == 2, rankSizeLimit);
+	}
+
+	/** Ranks of a descriptor, either in a folder (one file per id) or in a {@link RankStore}. */
+	private static class Source {
+		private final File folder;
+		private final RankStore store;
+
+		Source(File folderOrStore) {
+			Preconditions.checkArgument(folderOrStore.exists(), "it must be an existing dir or rank store: "+folderOrStore);
+			store = folderOrStore.isFile() ? RankStore.open(folderOrStore) : null;
+			folder = store == null ? folderOrStore : null;
+		}
+
+		long[] getIds() {
+			if(store != null)
+				return store.getQueryIDs();
+			long[] ids = Arrays.stream(folder.list()).mapToLong(Long::parseLong).toArray();
+			Arrays.sort(ids);
+			return ids;
+		}
+
+		boolean contains(long id) {
+			return store != null ? store.contains(id) : new File(folder, String.valueOf(id)).isFile();
+		}
+
+		/** Returns null if there is no rank for the id. */
+		RankedList load(long id, int limit) {
+			if(store != null)
+				return store.getRank(id, limit);
+			return contains(id) ? RankedList.loadFromFolder(id, folder, limit) : null;
+		}
+	}
+}
@@ -2,11 +2,13 @@ package fusionGraph.dataset;
 
 import java.io.File;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.function.Function;
-import org.apache.commons.lang3.mutable.MutableInt;
-import dataMining.retrieval.RankedList;
+import dataMining.retrieval.DistanceMatrixStore;
+import dataMining.retrieval.RankGenerator;
+import dataMining.retrieval.RankStore;
 import fusionGraph.Configs;
-import util.FileUtils;
 import util.Logs;
 import util.StringUtils;
 
@@ -21,32 +23,44 @@ public abstract class DistanceMatricesDataset {
 	public void generateRanks(int rankSizeLimit){
 		generateRanks(rankSizeLimit, null, null, Configs.queryRanksParentFolder(name));
 	}
+	/** The ranks of each descriptor are written in a {@link RankStore}, next to the folder that would hold them otherwise (see {@link RankStore#resolve(File)}). */
 	protected void generateRanks(int rankSizeLimit, Set<Long> queryIdsFilter, Set<Long> responseIdsFilter, File ranksParentFolder){
 		Function<String,File> descriptorNameToRanksFolder = d -> Configs.getDescriptorBasedRanksFolder(ranksParentFolder, d);
-		for(File distancesFile : getDistancesDir().listFiles()){
-			File ranksFolder = descriptorNameToRanksFolder.apply(distancesFile.getName());
-			if(ranksFolder.exists()) {
-				Logs.info("ranks exist, skipping. "+ranksFolder);
-				continue;
+		getDistanceMatrices().forEach((descriptor, distancesFile) -> {
+			File ranksFolder = descriptorNameToRanksFolder.apply(descriptor);
+			if(RankStore.resolve(ranksFolder).exists()) {
+				Logs.info("ranks exist, skipping. "+RankStore.resolve(ranksFolder));
+				return;
 			}
-			Logs.info("generating ranks at "+ranksFolder);
-			ranksFolder.mkdirs();
-			MutableInt currentId = new MutableInt();
-			FileUtils.forEachLine(distancesFile, distsLine -> {
-				long id = currentId.intValue();
-				if( queryIdsFilter == null || queryIdsFilter.contains(id) ){
-					double[] dists = StringUtils.splitDoubles(distsLine.trim(), " ");
-					RankedList rank = new RankedList(rankSizeLimit, false);
-					for(long responseId = 0; responseId < dists.length; responseId++){
-						if(responseIdsFilter == null || responseIdsFilter.contains(responseId)){
-							rank.add(responseId, (float)dists[(int)responseId]);
-						}
-					}
-					rank.saveToFolder(id, ranksFolder);
-				}
-				currentId.increment();
-			});
+			File storeFile = new File(ranksFolder.getPath() + RankStore.EXTENSION);
+			Logs.info("generating ranks at "+storeFile);
+			RankGenerator.generateRanksFromMatrix(distancesFile, false, rankSizeLimit,
+				queryIdsFilter == null ? null : queryIdsFilter::contains, responseIdsFilter == null ? null : responseIdsFilter::contains, storeFile);
+		});
+	}
+
+	/** Returns the distance matrix of each descriptor, preferring its {@link DistanceMatrixStore} (named as the descriptor plus {@link DistanceMatrixStore#EXTENSION}) to its text file. */
+	public SortedMap<String,File> getDistanceMatrices(){
+		SortedMap<String,File> matrices = new TreeMap<>();
+		for(File distancesFile : getDistancesDir().listFiles()){
+			if(DistanceMatrixStore.isStore(distancesFile))
+				matrices.put(StringUtils.removeEnd(distancesFile.getName(), DistanceMatrixStore.EXTENSION), distancesFile);
+			else
+				matrices.putIfAbsent(distancesFile.getName(), distancesFile);
 		}
+		return matrices;
+	}
+
+	/**
+	 * Converts the text distance matrices to {@link DistanceMatrixStore}, next to them, once; from then on, ranks are generated from the stores.
+	 * @param upperTriangular if the matrices are symmetric, keeps only their upper triangles
+	 */
+	public void convertDistanceMatrices(boolean upperTriangular){
+		getDistanceMatrices().values().stream().filter(distancesFile -> !DistanceMatrixStore.isStore(distancesFile)).forEach(distancesFile -> {
+			File storeFile = new File(distancesFile.getPath() + DistanceMatrixStore.EXTENSION);
+			Logs.info("converting distance matrix to "+storeFile);
+			DistanceMatrixStore.convertFromText(distancesFile, storeFile, upperTriangular);
+		});
 	}
 
 	public File getDistancesDir(){
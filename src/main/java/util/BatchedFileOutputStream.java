@@ -0,0 +1,86 @@
+package util;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+
+/**
+ * Output stream to a file accumulating the written bytes in a large buffer, written to the file in bulk only when full, flushed or closed,
+ * so that writers printing token by token (as PrintStream does, one write per print) issue few write calls.
+ * <p>
+ * The buffers are reused: each one is taken from a pool of the creating thread and returned to the pool of the closing thread, so writing many small files allocates no buffers.
+ */
+public class BatchedFileOutputStream extends OutputStream {
+
+	private static final int BUFFER_SIZE = 1 << 18;
+	private static final int MAX_POOLED_BUFFERS = 4; //per thread
+	private static final ThreadLocal<ArrayDeque<byte[]>> BUFFERS = ThreadLocal.withInitial(ArrayDeque::new);
+
+	private final FileOutputStream out;
+	private byte[] buffer;
+	private int count;
+
+	public BatchedFileOutputStream(File file) throws FileNotFoundException {
+		out = new FileOutputStream(file);
+		byte[] pooled = BUFFERS.get().pollFirst();
+		buffer = pooled != null ? pooled : new byte[BUFFER_SIZE];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		if(count == buffer.length)
+			flushBuffer();
+		buffer[count++] = (byte)b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		if(len >= buffer.length){ //bigger than the buffer, written directly
+			flushBuffer();
+			out.write(b, off, len);
+			return;
+		}
+		if(len > buffer.length - count)
+			flushBuffer();
+		System.arraycopy(b, off, buffer, count, len);
+		count += len;
+	}
+
+	private void flushBuffer() throws IOException {
+		if(count > 0){
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if(buffer == null)
+			throw new IOException("stream closed");
+	}
+
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		flushBuffer();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(buffer == null)
+			return;
+		try{
+			flushBuffer();
+		}finally{
+			ArrayDeque<byte[]> pool = BUFFERS.get();
+			if(pool.size() < MAX_POOLED_BUFFERS)
+				pool.addFirst(buffer);
+			buffer = null;
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package util;
+
+import java.util.Optional;
+import java.util.function.Function;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Function whose results are kept in a cache bounded by number of entries, evicting the least recently used ones.
+ * The cache is split in segments with their own locks (one per available processor), so concurrent calls rarely contend.
+ * Null results are cached too. Hits, misses and evictions are counted.
+ */
+public class CachedFunction<K,V> implements Function<K,V> {
+
+	private final LoadingCache<K,Optional<V>> cache;
+
+	public CachedFunction(Function<K,V> loader, int maxSize) {
+		cache = CacheBuilder.newBuilder()
+			.maximumSize(maxSize)
+			.concurrencyLevel(Runtime.getRuntime().availableProcessors())
+			.recordStats()
+			.build(CacheLoader.from(key -> Optional.ofNullable(loader.apply(key))));
+	}
+
+	@Override
+	public V apply(K key) {
+		try{
+			return cache.getUnchecked(key).orElse(null);
+		}catch(UncheckedExecutionException e){
+			Throwables.propagateIfPossible(e.getCause());
+			throw e;
+		}
+	}
+
+	public long getHits() {
+		return cache.stats().hitCount();
+	}
+
+	public long getMisses() {
+		return cache.stats().missCount();
+	}
+
+	public long getEvictions() {
+		return cache.stats().evictionCount();
+	}
+
+	public long size() {
+		return cache.size();
+	}
+
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	@Override
+	public String toString() {
+		CacheStats stats = cache.stats();
+		return new StringBuilder("cache size: ").append(cache.size())
+			.append(", hits: ").append(stats.hitCount())
+			.append(", misses: ").append(stats.missCount())
+			.append(String.format(" (hit rate: %.3f)", stats.hitRate()))
+			.append(", evictions: ").append(stats.evictionCount()).toString();
+	}
+}
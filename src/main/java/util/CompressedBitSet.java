@@ -0,0 +1,160 @@
+package util;
+
+import java.util.Arrays;
+import com.google.common.base.Preconditions;
+
+/**
+ * Immutable set of non-negative longs (up to 2^48), compressed as in Roaring bitmaps: the values are grouped by their high bits (value >>> 16) in containers,
+ * each keeping the low 16 bits of its values either in a sorted array, if up to {@value #MAX_ARRAY_SIZE} values, or in a bitmap of 2^16 bits otherwise.
+ * <p>
+ * Meant for computing sizes of intersections: containers are matched by their keys, and then intersected by AND + popcount (bitmaps), lookups (array against bitmap) or merge (arrays).
+ * As small sets are the common case, the arrays of all containers share a single array.
+ */
+public class CompressedBitSet {
+
+	private static final int MAX_ARRAY_SIZE = 4096; //beyond this, a bitmap (1024 longs) takes less memory than an array of chars
+	private static final int BITMAP_LENGTH = 1 << 10;
+
+	private final long[] keys; //sorted
+	private final int[] offsets; //values of the container c, if an array, are in values[offsets[c], offsets[c+1])
+	private final char[] values;
+	private final long[][] bitmaps; //values of each container, if a bitmap; null if no container is a bitmap
+	private final int cardinality;
+
+	private CompressedBitSet(long[] keys, int[] offsets, char[] values, long[][] bitmaps, int cardinality) {
+		this.keys = keys;
+		this.offsets = offsets;
+		this.values = values;
+		this.bitmaps = bitmaps;
+		this.cardinality = cardinality;
+	}
+
+	/** Creates the set from the first 'length' values of the array, which must be strictly increasing and in [0, 2^48). */
+	public static CompressedBitSet of(long[] sortedValues, int length) {
+		Preconditions.checkArgument(length == 0 || (sortedValues[0] >= 0 && sortedValues[length - 1] >>> 48 == 0), "values out of range");
+		int numContainers = 0;
+		for(int i = 0; i < length; i++){
+			Preconditions.checkArgument(i == 0 || sortedValues[i] > sortedValues[i - 1], "values not strictly increasing");
+			if(i == 0 || sortedValues[i] >>> 16 != sortedValues[i - 1] >>> 16)
+				numContainers++;
+		}
+		long[] keys = new long[numContainers];
+		int[] offsets = new int[numContainers + 1];
+		char[] values = new char[length];
+		long[][] bitmaps = null;
+		int numValues = 0;
+		for(int c = 0, start = 0; c < numContainers; c++){
+			long key = sortedValues[start] >>> 16;
+			int end = start + 1;
+			while(end < length && sortedValues[end] >>> 16 == key)
+				end++;
+			keys[c] = key;
+			if(end - start <= MAX_ARRAY_SIZE){
+				for(int i = start; i < end; i++)
+					values[numValues++] = (char)sortedValues[i];
+			}else{
+				if(bitmaps == null)
+					bitmaps = new long[numContainers][];
+				long[] bitmap = new long[BITMAP_LENGTH];
+				for(int i = start; i < end; i++){
+					int low = (char)sortedValues[i];
+					bitmap[low >>> 6] |= 1L << low;
+				}
+				bitmaps[c] = bitmap;
+			}
+			offsets[c + 1] = numValues;
+			start = end;
+		}
+		return new CompressedBitSet(keys, offsets, numValues < length ? Arrays.copyOf(values, numValues) : values, bitmaps, length);
+	}
+
+	public int cardinality() {
+		return cardinality;
+	}
+
+	public boolean contains(long value) {
+		int c = Arrays.binarySearch(keys, value >>> 16);
+		if(c < 0)
+			return false;
+		int low = (char)value;
+		if(bitmaps != null && bitmaps[c] != null)
+			return (bitmaps[c][low >>> 6] & (1L << low)) != 0;
+		return Arrays.binarySearch(values, offsets[c], offsets[c + 1], (char)low) >= 0;
+	}
+
+	/** Size of the intersection with the other set, computed without creating it. */
+	public int andCardinality(CompressedBitSet other) {
+		long[] keysA = keys, keysB = other.keys;
+		int nA = keysA.length, nB = keysB.length;
+		if(nA == 0 || nB == 0 || keysA[nA - 1] < keysB[0] || keysB[nB - 1] < keysA[0])
+			return 0;
+		int count = 0;
+		for(int a = 0, b = 0; a < nA && b < nB; ){
+			long keyA = keysA[a], keyB = keysB[b];
+			if(keyA != keyB){ //branchless advance, as most containers are usually not in common
+				a += keyA < keyB ? 1 : 0;
+				b += keyA > keyB ? 1 : 0;
+			}else{
+				long[] bitmapA = bitmaps == null ? null : bitmaps[a], bitmapB = other.bitmaps == null ? null : other.bitmaps[b];
+				if(bitmapA != null && bitmapB != null)
+					count += andCardinality(bitmapA, bitmapB);
+				else if(bitmapA != null)
+					count += andCardinality(other.values, other.offsets[b], other.offsets[b + 1], bitmapA);
+				else if(bitmapB != null)
+					count += andCardinality(values, offsets[a], offsets[a + 1], bitmapB);
+				else
+					count += andCardinality(values, offsets[a], offsets[a + 1], other.values, other.offsets[b], other.offsets[b + 1]);
+				a++;
+				b++;
+			}
+		}
+		return count;
+	}
+
+	private static int andCardinality(long[] bitmapA, long[] bitmapB) {
+		int count = 0;
+		for(int i = 0; i < BITMAP_LENGTH; i++)
+			count += Long.bitCount(bitmapA[i] & bitmapB[i]);
+		return count;
+	}
+
+	private static int andCardinality(char[] array, int from, int to, long[] bitmap) {
+		int count = 0;
+		for(int i = from; i < to; i++){
+			int low = array[i];
+			count += (int)(bitmap[low >>> 6] >>> low) & 1;
+		}
+		return count;
+	}
+
+	/** Intersection of the sorted ranges of arrays: by merge, or by binary searches if one is much smaller. */
+	private static int andCardinality(char[] arrayA, int fromA, int toA, char[] arrayB, int fromB, int toB) {
+		if((toA - fromA) * 32 < toB - fromB)
+			return andCardinalityBySearch(arrayA, fromA, toA, arrayB, fromB, toB);
+		if((toB - fromB) * 32 < toA - fromA)
+			return andCardinalityBySearch(arrayB, fromB, toB, arrayA, fromA, toA);
+		//branchless merge, as the comparisons are unpredictable:
+		int count = 0;
+		for(int i = fromA, j = fromB; i < toA && j < toB; ){
+			int x = arrayA[i], y = arrayB[j];
+			count += x == y ? 1 : 0;
+			i += x <= y ? 1 : 0;
+			j += x >= y ? 1 : 0;
+		}
+		return count;
+	}
+
+	private static int andCardinalityBySearch(char[] small, int fromSmall, int toSmall, char[] large, int from, int to) {
+		int count = 0;
+		for(int i = fromSmall; i < toSmall && from < to; i++){
+			int j = Arrays.binarySearch(large, from, to, small[i]);
+			if(j >= 0){
+				count++;
+				from = j + 1;
+			}else{
+				from = -j - 1;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,137 @@
+package util;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.text.DecimalFormat;
+import com.google.common.base.Preconditions;
+
+/**
+ * Encoder of decimals as text with a fixed maximum number of fraction digits, giving the same text as {@link StringUtils#getDecimalFormatter(Integer, Integer)}
+ * (rounding HALF_UP, no grouping, dot as separator, trailing zeros of the fraction omitted), but writing straight into byte arrays.
+ * It is immutable, so a single instance can be shared by all threads.
+ * <p>
+ * Values are scaled to an integer number of units of the last fraction digit, which is then rounded and printed.
+ * The scaling is exact enough unless the scaled value is too big or lies too close to a rounding tie, cases in which (as for NaN and infinities) a DecimalFormat is used instead.
+ */
+public class DecimalEncoder {
+
+	/** Encoder equivalent to {@link StringUtils#getDecimalFormatter()}. */
+	public static final DecimalEncoder DEFAULT = new DecimalEncoder(6);
+
+	/** Maximum length of an encoded value, in bytes, except for those delegated to DecimalFormat. */
+	private static final int MAX_LENGTH = 32;
+	//up to this magnitude, the scaled value is off by less than 2 ulps (5e-4) from the exact scaled decimal that DecimalFormat rounds, far below the margin to ties:
+	private static final double MAX_SCALED = 1L << 40;
+	private static final double TIE_MARGIN = 1e-3;
+	private static final long[] POW10 = new long[19];
+	static {
+		POW10[0] = 1;
+		for(int i = 1; i < POW10.length; i++)
+			POW10[i] = POW10[i - 1] * 10;
+	}
+
+	private final int minFractionDigits, maxFractionDigits;
+	private final ThreadLocal<DecimalFormat> fallbackFormatter;
+	private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[MAX_LENGTH]);
+
+	public DecimalEncoder(int maxFractionDigits) {
+		this(0, maxFractionDigits);
+	}
+
+	public DecimalEncoder(int minFractionDigits, int maxFractionDigits) {
+		Preconditions.checkArgument(0 <= minFractionDigits && minFractionDigits <= maxFractionDigits && maxFractionDigits <= 18, "invalid number of fraction digits");
+		this.minFractionDigits = minFractionDigits;
+		this.maxFractionDigits = maxFractionDigits;
+		fallbackFormatter = ThreadLocal.withInitial(() -> StringUtils.getDecimalFormatter(minFractionDigits > 0 ? minFractionDigits : null, maxFractionDigits));
+	}
+
+	/**
+	 * Encodes the value in the array from the offset on, returning the offset after it, or -1 if the value must be formatted by DecimalFormat.
+	 * The array must have at least {@value #MAX_LENGTH} bytes after the offset.
+	 */
+	private int encode(double value, byte[] bytes, int offset) {
+		boolean negative = value < 0 || (value == 0 && 1 / value < 0); //as DecimalFormat, negative values are signaled even if rounded to 0
+		double scaled = Math.abs(value) * POW10[maxFractionDigits];
+		if(!(scaled < MAX_SCALED)) //too big, or NaN
+			return -1;
+		double floor = Math.floor(scaled);
+		double fraction = scaled - floor;
+		if(Math.abs(fraction - 0.5) < TIE_MARGIN)
+			return -1;
+		long units = (long)floor + (fraction > 0.5 ? 1 : 0);
+
+		int fractionDigits = maxFractionDigits;
+		while(fractionDigits > minFractionDigits && units % 10 == 0 && units != 0){
+			units /= 10;
+			fractionDigits--;
+		}
+		if(units == 0)
+			fractionDigits = minFractionDigits;
+		long integerPart = units / POW10[fractionDigits], fractionPart = units % POW10[fractionDigits];
+
+		if(negative)
+			bytes[offset++] = '-';
+		offset = encodeDigits(integerPart, 1, bytes, offset);
+		if(fractionDigits > 0){
+			bytes[offset++] = '.';
+			offset = encodeDigits(fractionPart, fractionDigits, bytes, offset);
+		}
+		return offset;
+	}
+
+	/** Writes the digits of the non-negative number, with leading zeros up to the given number of digits. */
+	private static int encodeDigits(long number, int minDigits, byte[] bytes, int offset) {
+		int numDigits = 1;
+		while(numDigits < POW10.length && number >= POW10[numDigits])
+			numDigits++;
+		numDigits = Math.max(numDigits, minDigits);
+		for(int i = offset + numDigits - 1; i >= offset; i--){
+			bytes[i] = (byte)('0' + number % 10);
+			number /= 10;
+		}
+		return offset + numDigits;
+	}
+
+	public String format(double value) {
+		byte[] bytes = buffers.get();
+		int end = encode(value, bytes, 0);
+		if(end < 0)
+			return fallbackFormatter.get().format(value);
+		char[] chars = new char[end];
+		for(int i = 0; i < end; i++)
+			chars[i] = (char)bytes[i];
+		return new String(chars);
+	}
+
+	/** Writes the value in the stream, as its bytes, without intermediate strings. */
+	public void print(PrintStream out, double value) {
+		byte[] bytes = buffers.get();
+		int end = encode(value, bytes, 0);
+		if(end < 0)
+			out.print(fallbackFormatter.get().format(value));
+		else
+			out.write(bytes, 0, end);
+	}
+
+	public void write(Writer out, double value) throws IOException {
+		byte[] bytes = buffers.get();
+		int end = encode(value, bytes, 0);
+		if(end < 0){
+			out.write(fallbackFormatter.get().format(value));
+			return;
+		}
+		for(int i = 0; i < end; i++)
+			out.write(bytes[i]);
+	}
+
+	public StringBuilder append(StringBuilder sb, double value) {
+		byte[] bytes = buffers.get();
+		int end = encode(value, bytes, 0);
+		if(end < 0)
+			return sb.append(fallbackFormatter.get().format(value));
+		for(int i = 0; i < end; i++)
+			sb.append((char)bytes[i]);
+		return sb;
+	}
+}
@@ -247,11 +247,12 @@ public class FileUtils extends org.apache.commons.io.FileUtils {
 	public static PrintStream createPrintStreamToFile(File file) {
 		return createPrintStreamToFile(file, false);
 	}
+	/** The stream is not flushed until closed (or its buffer of {@link BatchedFileOutputStream} fills), so printing token by token is cheap. */
 	public static PrintStream createPrintStreamToFile(File file, boolean createDir) {
 		try {
 			if(createDir)
 				mkDirsForFile(file);
-			return new PrintStream(file);
+			return new PrintStream(new BatchedFileOutputStream(file));
 		} catch (FileNotFoundException e) {
 			throw new RuntimeException(e);
 		}
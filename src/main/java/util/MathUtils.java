@@ -420,6 +420,27 @@ public class MathUtils
                 elements[i] = a*elements[i] + b;
         }
     }
+	/** Same of {@link #normalizeFloat(Iterable, Function, BiConsumer, float, float)}, over the first 'length' elements of the array. */
+	public static void normalizeFloat(float[] elements, int length, float min_new, float max_new) {
+		float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < length; i++) {
+			if(elements[i] < min)
+				min = elements[i];
+			if(elements[i] > max)
+				max = elements[i];
+		}
+		float range = max - min;
+		if(range == 0){
+			for (int i = 0; i < length; i++)
+				elements[i] = max;
+		}else{
+			float a = (max_new - min_new) / range;
+			if(a == 1) return; //already in desired interval
+			float b = max_new - a*max;
+			for (int i = 0; i < length; i++)
+				elements[i] = a*elements[i] + b;
+		}
+	}
 
 	/** 2ab/(a+b). We return 0 when 2ab = 0 */
 	public static float harmonicMean(float a, float b) {
@@ -0,0 +1,692 @@
+package util.graph;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import org.apache.commons.lang3.mutable.MutableDouble;
+import org.jgrapht.EdgeFactory;
+import org.jgrapht.graph.ClassBasedEdgeFactory;
+import dataMining.distance.graphDistance.MaximumCommonSubgraphCreator;
+import util.CompressedBitSet;
+import util.DataStructureUtils;
+import util.MathUtils;
+
+/**
+ * Grafo direcionado e imutavel, equivalente a {@link DirectedWeightedLabeledGraph}, mas com nós identificados por ids long
+ * e armazenamento em arrays primitivos (adjacencia no formato CSR), para reduzir o consumo de memoria quando muitos grafos ficam carregados. <BR>
+ * - nós ficam ordenados por id; arestas de saida de cada nó ficam ordenadas por id de destino e label
+ * - os conjuntos de nós e arestas da API do jgrapht são visões geradas sob demanda; as arestas retornadas são copias desacopladas do grafo
+ * - criação via {@link Builder} ou {@link DenseBuilder}; apenas os pesos podem ser alterados depois, via normalização
+ */
+public class CompactDirectedWeightedLabeledGraph implements LabeledMeasurableGraph {
+
+	private static final String DEFAULT_LABEL = "";
+
+	private final long[] vertexIds; //sorted
+	private final double[] vertexWeights; //null if unweighted
+	private final int[] edgeOffsets; //outgoing edges of vertex i are at [edgeOffsets[i], edgeOffsets[i+1])
+	private final int[] edgeTargets; //index of the target vertex
+	private final double[] edgeWeights;
+	private final String[] edgeLabels; //null if all edges have the default label
+
+	//totals of weights, computed once since only normalization can change weights
+	private double sumNodesWeights, sumEdgesWeights;
+	//vertices and edges as bitsets, computed on demand, see getStructureSignature
+	private volatile CompressedBitSet[] structureSignature;
+	private static final CompressedBitSet[] NO_SIGNATURE = new CompressedBitSet[0];
+	private static final int SIGNATURE_ID_BITS = 24;
+	private static final int SIGNATURE_MIN_VERTICES = 64; //smaller graphs are compared as fast by merge-joins over their arrays
+
+	private CompactDirectedWeightedLabeledGraph(long[] vertexIds, double[] vertexWeights, int[] edgeOffsets, int[] edgeTargets, double[] edgeWeights, String[] edgeLabels) {
+		this.vertexIds = vertexIds;
+		this.vertexWeights = vertexWeights;
+		this.edgeOffsets = edgeOffsets;
+		this.edgeTargets = edgeTargets;
+		this.edgeWeights = edgeWeights;
+		this.edgeLabels = edgeLabels;
+		invalidateSizeCache();
+	}
+
+	/**
+	 * Creates the graph directly from its arrays, which must already be in the compact order (vertex ids strictly increasing, outgoing edges of each vertex sorted by target id and label).
+	 * The arrays are not copied. edgeLabels can be null if all edges have the default label.
+	 */
+	public static CompactDirectedWeightedLabeledGraph of(long[] vertexIds, double[] vertexWeights, int[] edgeOffsets, int[] edgeTargets, double[] edgeWeights, String[] edgeLabels) {
+		for(int i = 1; i < vertexIds.length; i++)
+			if(vertexIds[i] <= vertexIds[i - 1])
+				throw new IllegalArgumentException("vertex ids not strictly increasing");
+		if(edgeOffsets.length != vertexIds.length + 1 || edgeOffsets[vertexIds.length] != edgeTargets.length)
+			throw new IllegalArgumentException("edge offsets inconsistent with vertices and edges");
+		return new CompactDirectedWeightedLabeledGraph(vertexIds, vertexWeights, edgeOffsets, edgeTargets, edgeWeights, edgeLabels);
+	}
+
+	@Override
+	public boolean isWeighted() {
+		return vertexWeights != null;
+	}
+
+	@Override
+	public int getNumVertices() {
+		return vertexIds.length;
+	}
+
+	@Override
+	public int getNumEdges() {
+		return edgeTargets.length;
+	}
+
+	@Override
+	public double getSumNodesWeights() {
+		return sumNodesWeights;
+	}
+
+	@Override
+	public double getSumEdgesWeights() {
+		return sumEdgesWeights;
+	}
+
+	@Override
+	public void invalidateSizeCache() {
+		sumNodesWeights = vertexWeights == null ? vertexIds.length : sum(vertexWeights);
+		sumEdgesWeights = sum(edgeWeights);
+	}
+	private static double sum(double[] values) {
+		double sum = 0;
+		for(double v : values)
+			sum += v;
+		return sum;
+	}
+
+	/** Returns the index of the vertex with the given id, or a negative value if absent. */
+	public int indexOf(long vertexId) {
+		return Arrays.binarySearch(vertexIds, vertexId);
+	}
+	private int indexOf(Object vertex) {
+		if(!(vertex instanceof String))
+			return -1;
+		try{
+			return indexOf(Long.parseLong((String)vertex));
+		}catch(NumberFormatException e){
+			return -1;
+		}
+	}
+
+	public long getVertexId(int vertexIdx) {
+		return vertexIds[vertexIdx];
+	}
+
+	public double getVertexWeight(int vertexIdx) {
+		return vertexWeights == null ? 1D : vertexWeights[vertexIdx];
+	}
+
+	/** First index (inclusive) of the outgoing edges of the vertex */
+	public int getEdgesStart(int vertexIdx) {
+		return edgeOffsets[vertexIdx];
+	}
+
+	/** Last index (exclusive) of the outgoing edges of the vertex */
+	public int getEdgesEnd(int vertexIdx) {
+		return edgeOffsets[vertexIdx + 1];
+	}
+
+	public int getEdgeTarget(int edgeIdx) {
+		return edgeTargets[edgeIdx];
+	}
+
+	public double getEdgeWeight(int edgeIdx) {
+		return edgeWeights[edgeIdx];
+	}
+
+	public String getEdgeLabel(int edgeIdx) {
+		return edgeLabels == null ? DEFAULT_LABEL : edgeLabels[edgeIdx];
+	}
+
+	@Override
+	public Double getVertexWeight(String vertex) {
+		if(vertexWeights == null)
+			return 1D;
+		int idx = indexOf(vertex);
+		return idx < 0 ? null : vertexWeights[idx];
+	}
+
+	/** Returns a copy of the vertex weights, or null if the graph is unweighted. */
+	@Override
+	public Map<String, MutableDouble> getVertexesWeights() {
+		if(vertexWeights == null)
+			return null;
+		Map<String, MutableDouble> map = new LinkedHashMap<>(vertexIds.length);
+		for(int i = 0; i < vertexIds.length; i++)
+			map.put(String.valueOf(vertexIds[i]), new MutableDouble(vertexWeights[i]));
+		return map;
+	}
+
+	@Override
+	public void normalizeWeights() {
+		normalizeWeights(0F, 1F);
+	}
+
+	@Override
+	public void normalizeWeights(float min, float max) {
+		if(vertexWeights != null)
+			MathUtils.normalize(vertexWeights, min, max);
+		MathUtils.normalize(edgeWeights, min, max);
+		invalidateSizeCache();
+	}
+
+	@Override
+	public float getMaximumCommonSubgraphSizeTo(MeasurableGraph graphB, boolean useWeightsIfApplicable) {
+		return MaximumCommonSubgraphCreator.getMaximumCommonSubgraphSize(this, (CompactDirectedWeightedLabeledGraph)graphB, useWeightsIfApplicable);
+	}
+
+	/**
+	 * Returns the vertices and the edges of the graph as bitsets, of vertex ids and of source id << {@value #SIGNATURE_ID_BITS} | target id,
+	 * so that the unweighted size of the maximum common subgraph is given by their intersections.
+	 * As the structure of the graph never changes, they are computed once, on the first call.
+	 * Returns null if not applicable: for small graphs, labeled edges, or vertex ids out of [0, 2^{@value #SIGNATURE_ID_BITS}), which holds for datasets whose ids are already indices.
+	 */
+	public CompressedBitSet[] getStructureSignature() {
+		CompressedBitSet[] signature = structureSignature;
+		if(signature == null) //concurrent calls may compute it more than once, with the same result
+			structureSignature = signature = computeStructureSignature();
+		return signature == NO_SIGNATURE ? null : signature;
+	}
+	private CompressedBitSet[] computeStructureSignature() {
+		int n = vertexIds.length;
+		if(n < SIGNATURE_MIN_VERTICES || edgeLabels != null || vertexIds[0] < 0 || vertexIds[n - 1] >>> SIGNATURE_ID_BITS != 0)
+			return NO_SIGNATURE;
+		long[] edges = new long[edgeTargets.length]; //sorted, as edges are sorted by source and then by target
+		for(int v = 0; v < n; v++)
+			for(int e = edgeOffsets[v]; e < edgeOffsets[v + 1]; e++)
+				edges[e] = vertexIds[v] << SIGNATURE_ID_BITS | vertexIds[edgeTargets[e]];
+		return new CompressedBitSet[]{ CompressedBitSet.of(vertexIds, n), CompressedBitSet.of(edges, edges.length) };
+	}
+
+	private LabeledWeightedEdge createEdge(int sourceIdx, int edgeIdx) {
+		return new LabeledWeightedEdge(String.valueOf(vertexIds[sourceIdx]), String.valueOf(vertexIds[edgeTargets[edgeIdx]]), getEdgeLabel(edgeIdx), edgeWeights[edgeIdx]);
+	}
+
+	private int findEdge(int sourceIdx, int targetIdx, String label) {
+		for(int e = edgeOffsets[sourceIdx]; e < edgeOffsets[sourceIdx + 1]; e++)
+			if(edgeTargets[e] == targetIdx && (label == null || label.equals(getEdgeLabel(e))))
+				return e;
+		return -1;
+	}
+
+	/** Retorna a primeira aresta com origem-destino-label especificados */
+	public LabeledWeightedEdge getEdge(String source, String target, String label) {
+		int sourceIdx = indexOf(source), targetIdx = indexOf(target);
+		if(sourceIdx < 0 || targetIdx < 0)
+			return null;
+		int e = findEdge(sourceIdx, targetIdx, label);
+		return e < 0 ? null : createEdge(sourceIdx, e);
+	}
+
+	@Override
+	public LabeledWeightedEdge getEdge(String source, String target) {
+		return getEdge(source, target, null);
+	}
+
+	@Override
+	public Set<LabeledWeightedEdge> getAllEdges(String source, String target) {
+		int sourceIdx = indexOf(source), targetIdx = indexOf(target);
+		if(sourceIdx < 0 || targetIdx < 0)
+			return null;
+		Set<LabeledWeightedEdge> edges = new LinkedHashSet<>();
+		for(int e = edgeOffsets[sourceIdx]; e < edgeOffsets[sourceIdx + 1]; e++)
+			if(edgeTargets[e] == targetIdx)
+				edges.add(createEdge(sourceIdx, e));
+		return edges;
+	}
+
+	@Override
+	public boolean containsVertex(String vertex) {
+		return indexOf(vertex) >= 0;
+	}
+
+	@Override
+	public boolean containsEdge(String source, String target) {
+		int sourceIdx = indexOf(source), targetIdx = indexOf(target);
+		return sourceIdx >= 0 && targetIdx >= 0 && findEdge(sourceIdx, targetIdx, null) >= 0;
+	}
+
+	@Override
+	public boolean containsEdge(LabeledWeightedEdge edge) {
+		int sourceIdx = indexOf(edge.getSource()), targetIdx = indexOf(edge.getTarget());
+		return sourceIdx >= 0 && targetIdx >= 0 && findEdge(sourceIdx, targetIdx, edge.getLabel()) >= 0;
+	}
+
+	@Override
+	public Set<String> vertexSet() {
+		return new AbstractSet<String>() {
+			@Override
+			public Iterator<String> iterator() {
+				return new Iterator<String>() {
+					int i = 0;
+					public boolean hasNext() {
+						return i < vertexIds.length;
+					}
+					public String next() {
+						if(!hasNext()) throw new NoSuchElementException();
+						return String.valueOf(vertexIds[i++]);
+					}
+				};
+			}
+			@Override
+			public boolean contains(Object o) {
+				return indexOf(o) >= 0;
+			}
+			@Override
+			public int size() {
+				return vertexIds.length;
+			}
+		};
+	}
+
+	@Override
+	public Set<LabeledWeightedEdge> edgeSet() {
+		return new EdgesView(0, vertexIds.length);
+	}
+
+	@Override
+	public Set<LabeledWeightedEdge> outgoingEdgesOf(String vertex) {
+		int idx = indexOf(vertex);
+		if(idx < 0)
+			throw new IllegalArgumentException("no such vertex in graph: " + vertex);
+		return new EdgesView(idx, idx + 1);
+	}
+
+	@Override
+	public Set<LabeledWeightedEdge> incomingEdgesOf(String vertex) {
+		int idx = indexOf(vertex);
+		if(idx < 0)
+			throw new IllegalArgumentException("no such vertex in graph: " + vertex);
+		Set<LabeledWeightedEdge> edges = new LinkedHashSet<>();
+		for(int source = 0; source < vertexIds.length; source++)
+			for(int e = edgeOffsets[source]; e < edgeOffsets[source + 1]; e++)
+				if(edgeTargets[e] == idx)
+					edges.add(createEdge(source, e));
+		return edges;
+	}
+
+	@Override
+	public Set<LabeledWeightedEdge> edgesOf(String vertex) {
+		Set<LabeledWeightedEdge> edges = new LinkedHashSet<>(outgoingEdgesOf(vertex));
+		edges.addAll(incomingEdgesOf(vertex));
+		return edges;
+	}
+
+	@Override
+	public String getEdgeSource(LabeledWeightedEdge edge) {
+		return (String)edge.getSource();
+	}
+
+	@Override
+	public String getEdgeTarget(LabeledWeightedEdge edge) {
+		return (String)edge.getTarget();
+	}
+
+	@Override
+	public double getEdgeWeight(LabeledWeightedEdge edge) {
+		return edge.getWeight();
+	}
+
+	@Override
+	public EdgeFactory<String, LabeledWeightedEdge> getEdgeFactory() {
+		return new ClassBasedEdgeFactory<>(LabeledWeightedEdge.class);
+	}
+
+	@Override
+	public boolean addVertex(String vertex) {
+		throw immutable();
+	}
+
+	@Override
+	public boolean addVertex(String vertex, double weight) {
+		throw immutable();
+	}
+
+	@Override
+	public LabeledWeightedEdge addEdge(String source, String target) {
+		throw immutable();
+	}
+
+	@Override
+	public boolean addEdge(String source, String target, LabeledWeightedEdge edge) {
+		throw immutable();
+	}
+
+	@Override
+	public void addEdgeOtherwiseWeight(String origin, String destine, double weight) {
+		throw immutable();
+	}
+
+	@Override
+	public boolean removeAllEdges(Collection<? extends LabeledWeightedEdge> edges) {
+		throw immutable();
+	}
+
+	@Override
+	public Set<LabeledWeightedEdge> removeAllEdges(String source, String target) {
+		throw immutable();
+	}
+
+	@Override
+	public boolean removeAllVertices(Collection<? extends String> vertices) {
+		throw immutable();
+	}
+
+	@Override
+	public LabeledWeightedEdge removeEdge(String source, String target) {
+		throw immutable();
+	}
+
+	@Override
+	public boolean removeEdge(LabeledWeightedEdge edge) {
+		throw immutable();
+	}
+
+	@Override
+	public boolean removeVertex(String vertex) {
+		throw immutable();
+	}
+
+	private static UnsupportedOperationException immutable() {
+		return new UnsupportedOperationException("compact graphs are immutable, use " + Builder.class.getName());
+	}
+
+	@Override
+	public String toString() {
+		return "CompactDirectedWeightedLabeledGraph [vertices=" + getNumVertices() + ", edges=" + getNumEdges() + "]";
+	}
+
+	/** Visão das arestas de saida dos nós no intervalo [firstVertex, endVertex). */
+	private class EdgesView extends AbstractSet<LabeledWeightedEdge> {
+		private final int firstVertex, endVertex;
+
+		EdgesView(int firstVertex, int endVertex) {
+			this.firstVertex = firstVertex;
+			this.endVertex = endVertex;
+		}
+
+		@Override
+		public Iterator<LabeledWeightedEdge> iterator() {
+			return new Iterator<LabeledWeightedEdge>() {
+				int source = firstVertex, e = edgeOffsets[firstVertex];
+				public boolean hasNext() {
+					return e < edgeOffsets[endVertex];
+				}
+				public LabeledWeightedEdge next() {
+					if(!hasNext()) throw new NoSuchElementException();
+					while(e >= edgeOffsets[source + 1])
+						source++;
+					return createEdge(source, e++);
+				}
+			};
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if(!(o instanceof LabeledWeightedEdge))
+				return false;
+			LabeledWeightedEdge edge = (LabeledWeightedEdge)o;
+			int sourceIdx = indexOf(edge.getSource());
+			if(sourceIdx < firstVertex || sourceIdx >= endVertex)
+				return false;
+			int targetIdx = indexOf(edge.getTarget());
+			return targetIdx >= 0 && findEdge(sourceIdx, targetIdx, edge.getLabel()) >= 0;
+		}
+
+		@Override
+		public int size() {
+			return edgeOffsets[endVertex] - edgeOffsets[firstVertex];
+		}
+	}
+
+	/**
+	 * Acumula nós e arestas (somando pesos de repetições, como em {@link DirectedWeightedLabeledGraph#addVertex(String, double)}
+	 * e {@link LabeledMeasurableGraph#addEdgeOtherwiseWeight(String, String, double)}) e então gera o grafo compacto.
+	 */
+	public static class Builder {
+
+		private final boolean weighted;
+		private final Map<Long,MutableDouble> vertexesWeights = new HashMap<>();
+		private final Map<Long,Map<Long,Map<String,MutableDouble>>> edgesWeights = new HashMap<>(); //source -> target -> label -> weight
+		private int numEdges;
+
+		public Builder(boolean weighted) {
+			this.weighted = weighted;
+		}
+
+		public boolean containsVertex(long vertex) {
+			return vertexesWeights.containsKey(vertex);
+		}
+
+		public void addVertex(long vertex, double weight) {
+			MutableDouble w = vertexesWeights.get(vertex);
+			if(w == null)
+				vertexesWeights.put(vertex, new MutableDouble(weight));
+			else
+				w.add(weight);
+		}
+
+		public void addEdgeOtherwiseWeight(long source, long target, double weight) {
+			addEdgeOtherwiseWeight(source, target, DEFAULT_LABEL, weight);
+		}
+
+		public void addEdgeOtherwiseWeight(long source, long target, String label, double weight) {
+			MutableDouble w = DataStructureUtils.getOnMultiMap(edgesWeights, source, target, label);
+			if(w == null){
+				DataStructureUtils.putOnMultiMap(edgesWeights, source, target, label, new MutableDouble(weight));
+				numEdges++;
+			}else{
+				w.add(weight);
+			}
+		}
+
+		public CompactDirectedWeightedLabeledGraph build() {
+			int n = vertexesWeights.size();
+			long[] vertexIds = new long[n];
+			{
+				int i = 0;
+				for(Long id : vertexesWeights.keySet())
+					vertexIds[i++] = id;
+				Arrays.sort(vertexIds);
+			}
+			double[] vertexWeights = null;
+			if(weighted){
+				vertexWeights = new double[n];
+				for(int i = 0; i < n; i++)
+					vertexWeights[i] = vertexesWeights.get(vertexIds[i]).doubleValue();
+			}
+
+			int[] edgeOffsets = new int[n + 1];
+			int[] edgeTargets = new int[numEdges];
+			double[] edgeWeights = new double[numEdges];
+			String[] edgeLabels = new String[numEdges];
+			boolean defaultLabelsOnly = true;
+			int e = 0;
+			for(int i = 0; i < n; i++){
+				edgeOffsets[i] = e;
+				Map<Long,Map<String,MutableDouble>> outgoing = edgesWeights.get(vertexIds[i]);
+				if(outgoing == null)
+					continue;
+				for(Map.Entry<Long,Map<String,MutableDouble>> target_labels : new TreeMap<>(outgoing).entrySet()){
+					int targetIdx = Arrays.binarySearch(vertexIds, target_labels.getKey());
+					if(targetIdx < 0)
+						throw new IllegalArgumentException("no such vertex in graph: " + target_labels.getKey());
+					for(Map.Entry<String,MutableDouble> label_weight : new TreeMap<>(target_labels.getValue()).entrySet()){
+						edgeTargets[e] = targetIdx;
+						edgeWeights[e] = label_weight.getValue().doubleValue();
+						edgeLabels[e] = label_weight.getKey();
+						defaultLabelsOnly &= DEFAULT_LABEL.equals(label_weight.getKey());
+						e++;
+					}
+				}
+			}
+			if(e < numEdges)
+				throw new IllegalArgumentException("edges whose source is not a vertex in graph");
+			edgeOffsets[n] = e;
+			return new CompactDirectedWeightedLabeledGraph(vertexIds, vertexWeights, edgeOffsets, edgeTargets, edgeWeights, defaultLabelsOnly ? null : edgeLabels);
+		}
+	}
+
+	/**
+	 * Builder equivalente ao {@link Builder} para grafos sem labels de aresta, acumulando pesos em arrays primitivos:
+	 * os nós recebem indices locais densos na ordem em que são adicionados, e as arestas (entre nós já adicionados) são acumuladas
+	 * em tabelas de hash com endereçamento aberto, chaveadas pelo par de indices. A adjacencia só é ordenada no {@link #build()}.
+	 * Os pesos são somados em double, na mesma ordem, como no {@link Builder}, portanto o grafo resultante é identico.
+	 */
+	public static class DenseBuilder {
+
+		private final boolean weighted;
+		//vertices, by local index:
+		private long[] vertexIds = new long[16];
+		private double[] vertexWeights = new double[16];
+		private int numVertices;
+		private int[] vertexSlots = new int[32]; //hash table of local index + 1; 0 if empty
+		//edges, by insertion order:
+		private long[] edgeKeys = new long[16]; //source index << 32 | target index
+		private double[] edgeWeights = new double[16];
+		private int numEdges;
+		private int[] edgeSlots = new int[32]; //hash table of edge index + 1; 0 if empty
+
+		public DenseBuilder(boolean weighted) {
+			this.weighted = weighted;
+		}
+
+		/** Returns the local index of the vertex, or -1 if it was not added. */
+		public int indexOf(long vertex) {
+			int mask = vertexSlots.length - 1;
+			for(int slot = hash(vertex) & mask; ; slot = (slot + 1) & mask){
+				int v = vertexSlots[slot] - 1;
+				if(v < 0)
+					return -1;
+				if(vertexIds[v] == vertex)
+					return v;
+			}
+		}
+
+		public boolean containsVertex(long vertex) {
+			return indexOf(vertex) >= 0;
+		}
+
+		/** Adds the vertex, or adds the weight to it if already present. Returns its local index. */
+		public int addVertex(long vertex, double weight) {
+			int mask = vertexSlots.length - 1;
+			int slot = hash(vertex) & mask;
+			for(int v; (v = vertexSlots[slot] - 1) >= 0; slot = (slot + 1) & mask){
+				if(vertexIds[v] == vertex){
+					vertexWeights[v] += weight;
+					return v;
+				}
+			}
+			if(numVertices == vertexIds.length){
+				vertexIds = Arrays.copyOf(vertexIds, numVertices * 2);
+				vertexWeights = Arrays.copyOf(vertexWeights, numVertices * 2);
+			}
+			int v = numVertices++;
+			vertexIds[v] = vertex;
+			vertexWeights[v] = weight;
+			vertexSlots[slot] = v + 1;
+			if(numVertices * 2 > vertexSlots.length){
+				vertexSlots = new int[vertexSlots.length * 2];
+				for(int i = 0; i < numVertices; i++)
+					vertexSlots[freeSlot(vertexSlots, hash(vertexIds[i]))] = i + 1;
+			}
+			return v;
+		}
+
+		public void addEdgeOtherwiseWeight(long source, long target, double weight) {
+			int s = indexOf(source), t = indexOf(target);
+			if(s < 0 || t < 0)
+				throw new IllegalArgumentException("no such vertex in graph: " + (s < 0 ? source : target));
+			addEdgeOtherwiseWeight(s, t, weight);
+		}
+
+		/** Adds the edge between vertices given by their local indices, or adds the weight to it if already present. */
+		public void addEdgeOtherwiseWeight(int sourceIdx, int targetIdx, double weight) {
+			long key = (long)sourceIdx << 32 | targetIdx;
+			int mask = edgeSlots.length - 1;
+			int slot = hash(key) & mask;
+			for(int e; (e = edgeSlots[slot] - 1) >= 0; slot = (slot + 1) & mask){
+				if(edgeKeys[e] == key){
+					edgeWeights[e] += weight;
+					return;
+				}
+			}
+			if(numEdges == edgeKeys.length){
+				edgeKeys = Arrays.copyOf(edgeKeys, numEdges * 2);
+				edgeWeights = Arrays.copyOf(edgeWeights, numEdges * 2);
+			}
+			int e = numEdges++;
+			edgeKeys[e] = key;
+			edgeWeights[e] = weight;
+			edgeSlots[slot] = e + 1;
+			if(numEdges * 2 > edgeSlots.length){
+				edgeSlots = new int[edgeSlots.length * 2];
+				for(int i = 0; i < numEdges; i++)
+					edgeSlots[freeSlot(edgeSlots, hash(edgeKeys[i]))] = i + 1;
+			}
+		}
+
+		private static int freeSlot(int[] slots, int hash) {
+			int mask = slots.length - 1;
+			int slot = hash & mask;
+			while(slots[slot] != 0)
+				slot = (slot + 1) & mask;
+			return slot;
+		}
+
+		private static int hash(long key) {
+			key *= 0x9E3779B97F4A7C15L;
+			return (int)(key ^ (key >>> 32));
+		}
+
+		public CompactDirectedWeightedLabeledGraph build() {
+			int n = numVertices;
+			//order of the vertices by id (packing id and local index would not fit, so the sort is on the ids and the indices are recovered by search):
+			long[] sortedIds = Arrays.copyOf(vertexIds, n);
+			Arrays.sort(sortedIds);
+			int[] sortedPos = new int[n]; //local index -> position in sortedIds
+			for(int v = 0; v < n; v++)
+				sortedPos[v] = Arrays.binarySearch(sortedIds, vertexIds[v]);
+			double[] sortedWeights = null;
+			if(weighted){
+				sortedWeights = new double[n];
+				for(int v = 0; v < n; v++)
+					sortedWeights[sortedPos[v]] = vertexWeights[v];
+			}
+
+			//counting sort of the edges by source position, then sort of each source's edges by target position:
+			int[] edgeOffsets = new int[n + 1];
+			for(int e = 0; e < numEdges; e++)
+				edgeOffsets[sortedPos[(int)(edgeKeys[e] >>> 32)] + 1]++;
+			for(int i = 0; i < n; i++)
+				edgeOffsets[i + 1] += edgeOffsets[i];
+			long[] targetsAndEdges = new long[numEdges]; //target position << 32 | edge index
+			int[] next = Arrays.copyOf(edgeOffsets, n);
+			for(int e = 0; e < numEdges; e++){
+				int source = sortedPos[(int)(edgeKeys[e] >>> 32)], target = sortedPos[(int)edgeKeys[e]];
+				targetsAndEdges[next[source]++] = (long)target << 32 | e;
+			}
+			int[] targets = new int[numEdges];
+			double[] weights = new double[numEdges];
+			for(int i = 0; i < n; i++){
+				Arrays.sort(targetsAndEdges, edgeOffsets[i], edgeOffsets[i + 1]);
+				for(int j = edgeOffsets[i]; j < edgeOffsets[i + 1]; j++){
+					targets[j] = (int)(targetsAndEdges[j] >>> 32);
+					weights[j] = edgeWeights[(int)targetsAndEdges[j]];
+				}
+			}
+			return new CompactDirectedWeightedLabeledGraph(sortedIds, sortedWeights, edgeOffsets, targets, weights, null);
+		}
+	}
+}
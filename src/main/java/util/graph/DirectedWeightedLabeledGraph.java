@@ -1,6 +1,7 @@
 package util.graph;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -13,6 +14,7 @@ import java.util.Set;
 import org.apache.commons.lang3.mutable.MutableDouble;
 import org.jgrapht.graph.ClassBasedEdgeFactory;
 import org.jgrapht.graph.DirectedWeightedMultigraph;
+import com.google.common.collect.Maps;
 import dataMining.distance.graphDistance.MaximumCommonSubgraphCreator;
 import util.DataStructureUtils;
 import util.MathUtils;
@@ -28,6 +30,8 @@ public class DirectedWeightedLabeledGraph extends DirectedWeightedMultigraph<Str
 
     private Map<String,MutableDouble> vertexesWeights;
 
+    private final WeightTotals weightTotals = new WeightTotals();
+
     private DirectedWeightedLabeledGraph() {
         super(new ClassBasedEdgeFactory<String, LabeledWeightedEdge>(LabeledWeightedEdge.class));
     }
@@ -57,25 +61,31 @@ public class DirectedWeightedLabeledGraph extends DirectedWeightedMultigraph<Str
             }else{
                 w.add(weight);
             }
+            weightTotals.addToNodes(weight);
 	    }
 	    return r;
 	}
 	public void addVertexIfNewOtherwiseMaximizeWeight(String vertex, double newWeight){
 		MutableDouble weight = vertexesWeights.get(vertex);
 		if(weight != null) {
-			if(weight.getValue() < newWeight)
+			if(weight.getValue() < newWeight){
+				weightTotals.addToNodes(newWeight - weight.getValue());
 				weight.setValue(newWeight);
+			}
 		}else{
 			super.addVertex(vertex);
 			vertexesWeights.put(vertex, new MutableDouble(newWeight));
+			weightTotals.addToNodes(newWeight);
 		}
 	}
 
 	@Override
 	public boolean removeVertex(String v) {
 	    boolean removed = super.removeVertex(v);
-	    if (removed && vertexesWeights != null)
+	    if (removed && vertexesWeights != null){
 	        DataStructureUtils.decrementMapValueDouble(vertexesWeights, v);
+	        weightTotals.invalidateNodes();
+	    }
 	    return removed;
 	}
 
@@ -84,8 +94,10 @@ public class DirectedWeightedLabeledGraph extends DirectedWeightedMultigraph<Str
 	        return removeVertex(v);
 
 	    boolean removed = super.removeVertex(v);
-        if (removed && vertexesWeights != null)
+        if (removed && vertexesWeights != null){
             vertexesWeights.remove(v);
+            weightTotals.invalidateNodes();
+        }
         return removed;
 	}
 
@@ -99,7 +111,7 @@ public class DirectedWeightedLabeledGraph extends DirectedWeightedMultigraph<Str
 
 	@Override
 	public double getSumNodesWeights() {
-		return DataStructureUtils.getSumMapValueDouble(vertexesWeights);
+		return weightTotals.getSumNodesWeights(() -> DataStructureUtils.getSumMapValueDouble(vertexesWeights));
 	}
 
     /** Retorna a primeira aresta com origem-destino-label especificados */
@@ -107,8 +119,9 @@ public class DirectedWeightedLabeledGraph extends DirectedWeightedMultigraph<Str
         return DataStructureUtils.findFirst(getAllEdges(source, target), e -> Objects.equals(e.getLabel(), label));
     }
 
+	/** Read-only view of the vertex weights (null if unweighted): they change only through the graph, which keeps its cached totals of weights consistent */
 	public Map<String, MutableDouble> getVertexesWeights() {
-		return vertexesWeights;
+		return vertexesWeights == null ? null : Collections.unmodifiableMap(Maps.transformValues(vertexesWeights, w -> new MutableDouble(w.doubleValue())));
 	}
 
     public Double getVertexWeight(String vertex) {
@@ -134,12 +147,63 @@ public class DirectedWeightedLabeledGraph extends DirectedWeightedMultigraph<Str
 	}
 
     public double getSumEdgesWeights() {
-	    double sum = 0;
-	    for(LabeledWeightedEdge edge : edgeSet())
-	        sum += edge.getWeight();
-	    return sum;
+    	return weightTotals.getSumEdgesWeights(edgeSet());
 	}
 
+    @Override
+    public void invalidateSizeCache() {
+    	weightTotals.invalidate();
+    }
+
+    @Override
+    public LabeledWeightedEdge addEdge(String sourceVertex, String targetVertex) {
+    	LabeledWeightedEdge e = super.addEdge(sourceVertex, targetVertex);
+    	if(e != null)
+    		weightTotals.addToEdges(e.getWeight());
+    	return e;
+    }
+
+    @Override
+    public boolean addEdge(String sourceVertex, String targetVertex, LabeledWeightedEdge e) {
+    	boolean added = super.addEdge(sourceVertex, targetVertex, e);
+    	if(added)
+    		weightTotals.addToEdges(e.getWeight());
+    	return added;
+    }
+
+    @Override
+    public void setEdgeWeight(LabeledWeightedEdge e, double weight) {
+    	weightTotals.addToEdges(weight - e.getWeight());
+    	e.setWeight(weight); //not super.setEdgeWeight, which writes a field of jgrapht not read by LabeledWeightedEdge
+    }
+
+    @Override
+    public void addEdgeOtherwiseWeight(String origin, String destine, double weight) {
+    	LabeledWeightedEdge edge = getEdge(origin, destine);
+    	if(edge == null){
+    		edge = addEdge(origin, destine);
+    		setEdgeWeight(edge, weight);
+    	}else{
+    		setEdgeWeight(edge, edge.getWeight() + weight);
+    	}
+    }
+
+    @Override
+    public boolean removeEdge(LabeledWeightedEdge e) {
+    	boolean removed = super.removeEdge(e);
+    	if(removed)
+    		weightTotals.invalidateEdges();
+    	return removed;
+    }
+
+    @Override
+    public LabeledWeightedEdge removeEdge(String sourceVertex, String targetVertex) {
+    	LabeledWeightedEdge e = super.removeEdge(sourceVertex, targetVertex);
+    	if(e != null)
+    		weightTotals.invalidateEdges();
+    	return e;
+    }
+
 	public Double getEdgeWeight(String sourceVertex, String targetVertex, String label) {
         LabeledWeightedEdge e = getEdge(sourceVertex, targetVertex, label);
         return e==null ? null : e.getWeight();
@@ -151,6 +215,7 @@ public class DirectedWeightedLabeledGraph extends DirectedWeightedMultigraph<Str
 	public void normalizeWeights(float min, float max) {
 		MathUtils.normalize(vertexesWeights.values(), MutableDouble::getValue, MutableDouble::setValue, min, max);
 		MathUtils.normalize(edgeSet(), LabeledWeightedEdge::getWeight, LabeledWeightedEdge::setWeight, min, max);
+		invalidateSizeCache();
 	}
 
 	/**
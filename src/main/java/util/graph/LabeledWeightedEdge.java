@@ -3,43 +3,54 @@ package util.graph;
 import java.math.RoundingMode;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import org.jgrapht.WeightedGraph;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import util.MathUtils;
-import util.ObjectUtils;
 import util.Pair;
 
+/**
+ * Aresta com rótulo e peso.
+ * O peso e os extremos informados no construtor ficam em campos próprios, pois os de jgrapht são privados do seu pacote:
+ * o peso é lido pelos grafos via {@link #getWeight()}, e os grafos daqui o alteram via {@link #setWeight(double)};
+ * os extremos atribuídos por um grafo ao adicionar a aresta prevalecem sobre os do construtor.
+ */
 public class LabeledWeightedEdge extends DefaultWeightedEdge {
 
     private static final long serialVersionUID = -4046507748499162165L;
 
     private String label = "";
+    private double weight = WeightedGraph.DEFAULT_EDGE_WEIGHT;
+    private Object source, target;
 
     public LabeledWeightedEdge() {
     }
 
     public LabeledWeightedEdge(Object source, Object target, String label, double weight) {
-        ObjectUtils.writeField(this, "source", source);
-        ObjectUtils.writeField(this, "target", target);
-        setWeight(weight);
+        this.source = source;
+        this.target = target;
+        this.weight = weight;
         this.label = label;
     }
 
     public Object getSource() {
-        return super.getSource();
+        Object s = super.getSource();
+        return s != null ? s : source;
     }
 
     public Object getTarget() {
-        return super.getTarget();
+        Object t = super.getTarget();
+        return t != null ? t : target;
     }
 
     public double getWeight() {
-        return super.getWeight();
+        return weight;
     }
-    public void setWeight(double weight) {
-        ObjectUtils.writeField(this, "weight", weight);
+    //package-private: the weight of an edge in a graph changes only through the graph (see WeightedGraph#setEdgeWeight), which keeps its totals of weights
+    void setWeight(double weight) {
+        this.weight = weight;
     }
-    public void addWeight(double weight) {
-        setWeight(getWeight() + weight);
+    void addWeight(double weight) {
+        this.weight += weight;
     }
 
     protected double getWeightRounded() {
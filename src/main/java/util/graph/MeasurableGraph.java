@@ -22,4 +22,11 @@ public interface MeasurableGraph {
 	double getSumNodesWeights();
 
 	float getMaximumCommonSubgraphSizeTo(MeasurableGraph graphB, boolean useWeightsIfApplicable);
+
+	/**
+	 * Implementations may cache the sums of weights used by {@link #getSize(boolean)}, keeping them updated on their own mutating methods,
+	 * the only ones able to change the weights. This discards the cached sums, to be recomputed on demand.
+	 */
+	default void invalidateSizeCache() {
+	}
 }
@@ -0,0 +1,49 @@
+package util.graph;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Totals of the vertex and edge weights of a graph, cached for {@link MeasurableGraph#getSize(boolean)}.
+ * The graph keeps them updated on its own mutations, or marks them as outdated (NaN), in which case they are recomputed on demand.
+ */
+class WeightTotals {
+
+	private double sumNodesWeights, sumEdgesWeights;
+
+	void addToNodes(double weight) {
+		sumNodesWeights += weight;
+	}
+
+	void addToEdges(double weight) {
+		sumEdgesWeights += weight;
+	}
+
+	void invalidateNodes() {
+		sumNodesWeights = Double.NaN;
+	}
+
+	void invalidateEdges() {
+		sumEdgesWeights = Double.NaN;
+	}
+
+	void invalidate() {
+		invalidateNodes();
+		invalidateEdges();
+	}
+
+	double getSumNodesWeights(DoubleSupplier sum) {
+		if(Double.isNaN(sumNodesWeights))
+			sumNodesWeights = sum.getAsDouble();
+		return sumNodesWeights;
+	}
+
+	double getSumEdgesWeights(Iterable<LabeledWeightedEdge> edges) {
+		if(Double.isNaN(sumEdgesWeights)){
+			double sum = 0;
+			for(LabeledWeightedEdge edge : edges)
+				sum += edge.getWeight();
+			sumEdgesWeights = sum;
+		}
+		return sumEdgesWeights;
+	}
+}
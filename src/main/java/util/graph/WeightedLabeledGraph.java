@@ -1,5 +1,6 @@
 package util.graph;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -10,6 +11,7 @@ import java.util.Set;
 import org.apache.commons.lang3.mutable.MutableDouble;
 import org.jgrapht.graph.ClassBasedEdgeFactory;
 import org.jgrapht.graph.WeightedMultigraph;
+import com.google.common.collect.Maps;
 import dataMining.distance.graphDistance.MaximumCommonSubgraphCreator;
 import util.DataStructureUtils;
 import util.MathUtils;
@@ -24,6 +26,8 @@ public class WeightedLabeledGraph extends WeightedMultigraph<String, LabeledWeig
 
     private Map<String,MutableDouble> vertexesWeights;
 
+    private final WeightTotals weightTotals = new WeightTotals();
+
     private WeightedLabeledGraph() {
         super(new ClassBasedEdgeFactory<String, LabeledWeightedEdge>(LabeledWeightedEdge.class));
     }
@@ -53,25 +57,31 @@ public class WeightedLabeledGraph extends WeightedMultigraph<String, LabeledWeig
             }else{
                 w.add(weight);
             }
+            weightTotals.addToNodes(weight);
 	    }
 	    return r;
 	}
 	public void addVertexIfNewOtherwiseMaximizeWeight(String vertex, double newWeight){
 		MutableDouble weight = vertexesWeights.get(vertex);
 		if(weight != null) {
-			if(weight.getValue() < newWeight)
+			if(weight.getValue() < newWeight){
+				weightTotals.addToNodes(newWeight - weight.getValue());
 				weight.setValue(newWeight);
+			}
 		}else{
 			super.addVertex(vertex);
 			vertexesWeights.put(vertex, new MutableDouble(newWeight));
+			weightTotals.addToNodes(newWeight);
 		}
 	}
 
 	@Override
 	public boolean removeVertex(String v) {
 	    boolean removed = super.removeVertex(v);
-	    if (removed && vertexesWeights != null)
+	    if (removed && vertexesWeights != null){
 	        DataStructureUtils.decrementMapValueDouble(vertexesWeights, v);
+	        weightTotals.invalidateNodes();
+	    }
 	    return removed;
 	}
 
@@ -80,8 +90,10 @@ public class WeightedLabeledGraph extends WeightedMultigraph<String, LabeledWeig
 	        return removeVertex(v);
 
 	    boolean removed = super.removeVertex(v);
-        if (removed && vertexesWeights != null)
+        if (removed && vertexesWeights != null){
             vertexesWeights.remove(v);
+            weightTotals.invalidateNodes();
+        }
         return removed;
 	}
 
@@ -95,7 +107,7 @@ public class WeightedLabeledGraph extends WeightedMultigraph<String, LabeledWeig
 
 	@Override
 	public double getSumNodesWeights() {
-		return DataStructureUtils.getSumMapValueDouble(vertexesWeights);
+		return weightTotals.getSumNodesWeights(() -> DataStructureUtils.getSumMapValueDouble(vertexesWeights));
 	}
 
     /** Retorna a primeira aresta com origem-destino-label especificados */
@@ -103,8 +115,9 @@ public class WeightedLabeledGraph extends WeightedMultigraph<String, LabeledWeig
         return DataStructureUtils.findFirst(getAllEdges(source, target), e -> Objects.equals(e.getLabel(), label));
     }
 
+	/** Read-only view of the vertex weights (null if unweighted): they change only through the graph, which keeps its cached totals of weights consistent */
 	public Map<String, MutableDouble> getVertexesWeights() {
-		return vertexesWeights;
+		return vertexesWeights == null ? null : Collections.unmodifiableMap(Maps.transformValues(vertexesWeights, w -> new MutableDouble(w.doubleValue())));
 	}
 
     public Double getVertexWeight(String vertex) {
@@ -130,12 +143,63 @@ public class WeightedLabeledGraph extends WeightedMultigraph<String, LabeledWeig
 	}
 
     public double getSumEdgesWeights() {
-	    double sum = 0;
-	    for(LabeledWeightedEdge edge : edgeSet())
-	        sum += edge.getWeight();
-	    return sum;
+    	return weightTotals.getSumEdgesWeights(edgeSet());
 	}
 
+    @Override
+    public void invalidateSizeCache() {
+    	weightTotals.invalidate();
+    }
+
+    @Override
+    public LabeledWeightedEdge addEdge(String sourceVertex, String targetVertex) {
+    	LabeledWeightedEdge e = super.addEdge(sourceVertex, targetVertex);
+    	if(e != null)
+    		weightTotals.addToEdges(e.getWeight());
+    	return e;
+    }
+
+    @Override
+    public boolean addEdge(String sourceVertex, String targetVertex, LabeledWeightedEdge e) {
+    	boolean added = super.addEdge(sourceVertex, targetVertex, e);
+    	if(added)
+    		weightTotals.addToEdges(e.getWeight());
+    	return added;
+    }
+
+    @Override
+    public void setEdgeWeight(LabeledWeightedEdge e, double weight) {
+    	weightTotals.addToEdges(weight - e.getWeight());
+    	e.setWeight(weight); //not super.setEdgeWeight, which writes a field of jgrapht not read by LabeledWeightedEdge
+    }
+
+    @Override
+    public void addEdgeOtherwiseWeight(String origin, String destine, double weight) {
+    	LabeledWeightedEdge edge = getEdge(origin, destine);
+    	if(edge == null){
+    		edge = addEdge(origin, destine);
+    		setEdgeWeight(edge, weight);
+    	}else{
+    		setEdgeWeight(edge, edge.getWeight() + weight);
+    	}
+    }
+
+    @Override
+    public boolean removeEdge(LabeledWeightedEdge e) {
+    	boolean removed = super.removeEdge(e);
+    	if(removed)
+    		weightTotals.invalidateEdges();
+    	return removed;
+    }
+
+    @Override
+    public LabeledWeightedEdge removeEdge(String sourceVertex, String targetVertex) {
+    	LabeledWeightedEdge e = super.removeEdge(sourceVertex, targetVertex);
+    	if(e != null)
+    		weightTotals.invalidateEdges();
+    	return e;
+    }
+
 	public Double getEdgeWeight(String sourceVertex, String targetVertex, String label) {
 	    LabeledWeightedEdge e = getEdge(sourceVertex, targetVertex, label);
 	    return e==null ? null : e.getWeight();
@@ -147,6 +211,7 @@ public class WeightedLabeledGraph extends WeightedMultigraph<String, LabeledWeig
 	public void normalizeWeights(float min, float max) {
 		MathUtils.normalize(vertexesWeights.values(), MutableDouble::getValue, MutableDouble::setValue, min, max);
 		MathUtils.normalize(edgeSet(), LabeledWeightedEdge::getWeight, LabeledWeightedEdge::setWeight, min, max);
+		invalidateSizeCache();
 	}
 
     @Override
@@ -0,0 +1,78 @@
+package dataMining.distance.graphDistance;
+
+import static dataMining.graph.GraphSampleTestUtils.randomNumericGraph;
+import static dataMining.graph.GraphSampleTestUtils.toCompact;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import util.graph.CompactDirectedWeightedLabeledGraph;
+import util.graph.DirectedWeightedLabeledGraph;
+
+public class MaximumCommonSubgraphCreatorTest {
+
+	/** Size of the MCS as computed before: by the size of the materialized subgraph. */
+	private static float baselineSize(DirectedWeightedLabeledGraph graphA, DirectedWeightedLabeledGraph graphB, boolean useWeights) {
+		DirectedWeightedLabeledGraph mcs = MaximumCommonSubgraphCreator.getMaximumCommonSubgraph(graphA, graphB, useWeights);
+		return mcs == null ? 0 : mcs.getSize(useWeights);
+	}
+
+	private static void assertSameSizesAsBaseline(boolean weighted, boolean labeled) {
+		Random random = new Random((weighted ? 2 : 0) + (labeled ? 1 : 0));
+		List<DirectedWeightedLabeledGraph> graphs = new ArrayList<>();
+		List<CompactDirectedWeightedLabeledGraph> compactGraphs = new ArrayList<>();
+		int withSignature = 0;
+		for(int i = 0; i < 30; i++){
+			//small graphs over few ids share many vertices and edges; big ones get structure signatures, if unlabeled
+			DirectedWeightedLabeledGraph g = i % 2 == 0 ? randomNumericGraph(random, 20, 25, weighted, labeled) : randomNumericGraph(random, 150, 200, weighted, labeled);
+			graphs.add(g);
+			compactGraphs.add(toCompact(g));
+			if(compactGraphs.get(i).getStructureSignature() != null)
+				withSignature++;
+		}
+		assertTrue(labeled ? withSignature == 0 : withSignature > 0);
+
+		float[] sizes = new float[2];
+		for(int a = 0; a < graphs.size(); a++){
+			for(int b = 0; b < graphs.size(); b++){
+				DirectedWeightedLabeledGraph graphA = graphs.get(a), graphB = graphs.get(b);
+				CompactDirectedWeightedLabeledGraph compactA = compactGraphs.get(a), compactB = compactGraphs.get(b);
+				for(boolean useWeights : new boolean[]{true, false}){
+					String message = a + " and " + b + (useWeights ? " with weights" : " without weights");
+					float expected = baselineSize(graphA, graphB, useWeights);
+					assertEquals(message, expected, MaximumCommonSubgraphCreator.getMaximumCommonSubgraphSize(graphA, graphB, useWeights), 0);
+					assertEquals(message, expected, MaximumCommonSubgraphCreator.getMaximumCommonSubgraphSize(compactA, compactB, useWeights), 0);
+					assertEquals(message, expected, compactA.getMaximumCommonSubgraphSizeTo(compactB, useWeights), 0);
+				}
+				MaximumCommonSubgraphCreator.getMaximumCommonSubgraphSizes(compactA, compactB, sizes);
+				assertEquals(baselineSize(graphA, graphB, false), sizes[0], 0);
+				assertEquals(baselineSize(graphA, graphB, true), sizes[1], 0);
+			}
+		}
+	}
+
+	@Test
+	public void givesTheSizesOfTheMaterializedSubgraph() {
+		for(boolean weighted : new boolean[]{true, false})
+			for(boolean labeled : new boolean[]{true, false})
+				assertSameSizesAsBaseline(weighted, labeled);
+	}
+
+	@Test
+	public void givesTheSimilaritiesOfTheMaterializedSubgraph() {
+		Random random = new Random(4);
+		for(boolean weighted : new boolean[]{true, false}){
+			for(int i = 0; i < 40; i++){
+				DirectedWeightedLabeledGraph graphA = randomNumericGraph(random, 20, 25, weighted, false), graphB = randomNumericGraph(random, 20, 25, weighted, false);
+				for(GraphDistanceType type : GraphDistanceType.values()){
+					float mcsSize = baselineSize(graphA, graphB, type.isWeighted());
+					float expected = mcsSize == 0 ? 0 : type.calculateSimilarity(mcsSize, graphA.getSize(type.isWeighted()), graphB.getSize(type.isWeighted()));
+					assertEquals(type.name(), expected, type.calculateSimilarity(graphA, graphB), 0);
+					assertEquals(type.name(), expected, type.calculateSimilarity(toCompact(graphA), toCompact(graphB)), 0);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package dataMining.graph;
+
+import static dataMining.graph.GraphSampleTestUtils.assertSameSample;
+import static dataMining.graph.GraphSampleTestUtils.randomSample;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GraphSampleArchiveTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void readsSamplesByIdAndInWritingOrder() {
+		Random random = new Random(1);
+		List<GraphSample> samples = new ArrayList<>();
+		File archiveFolder = new File(folder.getRoot(), "archive");
+		try(GraphSampleArchive archive = new GraphSampleArchive(archiveFolder)){
+			archive.initialize(false);
+			for(long id : new long[]{5, 1, 9, -2, 100}){
+				GraphSample sample = randomSample(random, id);
+				archive.write(sample);
+				samples.add(sample);
+			}
+		}
+		assertTrue(GraphSampleArchive.isArchive(archiveFolder));
+
+		try(GraphSampleArchive archive = new GraphSampleArchive(archiveFolder)){
+			assertEquals(samples.size(), archive.countFiles());
+			for(GraphSample sample : samples){
+				assertTrue(archive.contains(sample.getId()));
+				assertSameSample(sample, archive.read(sample.getId(), false));
+				assertSameSample(sample, archive.read(sample.getId(), true));
+			}
+			assertFalse(archive.contains(6));
+			assertNull(archive.read(6, false));
+			List<GraphSample> streamed = archive.stream(true).collect(Collectors.toList());
+			assertEquals(samples.size(), streamed.size());
+			for(int i = 0; i < samples.size(); i++)
+				assertSameSample(samples.get(i), streamed.get(i));
+		}
+	}
+
+	@Test
+	public void lastWriteOfASamplePrevails() {
+		Random random = new Random(2);
+		File archiveFolder = new File(folder.getRoot(), "archive");
+		GraphSample replacement = randomSample(random, 3);
+		try(GraphSampleArchive archive = new GraphSampleArchive(archiveFolder)){
+			archive.initialize(false);
+			archive.write(randomSample(random, 3));
+			archive.write(randomSample(random, 4));
+		}
+		try(GraphSampleArchive archive = new GraphSampleArchive(archiveFolder)){
+			archive.initialize(true); //incremental: keeps the samples written before
+			archive.write(replacement);
+			assertSameSample(replacement, archive.read(3, false));
+		}
+		try(GraphSampleArchive archive = new GraphSampleArchive(archiveFolder)){
+			assertEquals(2, archive.countFiles());
+			assertSameSample(replacement, archive.read(3, false));
+			assertEquals(List.of(4L, 3L), archive.stream(false).map(GraphSample::getId).collect(Collectors.toList()));
+		}
+	}
+
+	@Test
+	public void ignoresIncompleteIndexEntry() throws IOException {
+		Random random = new Random(3);
+		File archiveFolder = new File(folder.getRoot(), "archive");
+		GraphSample sample = randomSample(random, 8);
+		try(GraphSampleArchive archive = new GraphSampleArchive(archiveFolder)){
+			archive.initialize(false);
+			archive.write(sample);
+		}
+		try(RandomAccessFile index = new RandomAccessFile(new File(archiveFolder, "samples.index"), "rw")){
+			index.seek(index.length());
+			index.write(new byte[7]); //as if interrupted while writing the entry of another sample
+		}
+		try(GraphSampleArchive archive = new GraphSampleArchive(archiveFolder)){
+			assertEquals(1, archive.countFiles());
+			assertSameSample(sample, archive.read(8, false));
+		}
+	}
+
+	@Test
+	public void writesConcurrently() {
+		File archiveFolder = new File(folder.getRoot(), "archive");
+		List<GraphSample> samples = IntStream.range(0, 200).mapToObj(i -> randomSample(new Random(i), i)).collect(Collectors.toList());
+		try(GraphSampleArchive archive = new GraphSampleArchive(archiveFolder)){
+			archive.initialize(false);
+			samples.parallelStream().forEach(archive::write);
+		}
+		try(GraphSampleArchive archive = new GraphSampleArchive(archiveFolder)){
+			assertEquals(samples.size(), archive.countFiles());
+			for(GraphSample sample : samples)
+				assertSameSample(sample, archive.read(sample.getId(), true));
+		}
+	}
+}
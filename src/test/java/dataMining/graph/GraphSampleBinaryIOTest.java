@@ -0,0 +1,53 @@
+package dataMining.graph;
+
+import static dataMining.graph.GraphSampleTestUtils.assertSameSample;
+import static dataMining.graph.GraphSampleTestUtils.randomGraph;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import util.graph.CompactDirectedWeightedLabeledGraph;
+
+public class GraphSampleBinaryIOTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void roundTripsGraphsWithNumericVertices() {
+		Random random = new Random(1);
+		for(int i = 0; i < 50; i++){
+			boolean weighted = i % 5 != 0;
+			GraphSample sample = new GraphSample(i * 1_000_003L - 20, new LinkedHashSet<>(Arrays.asList("a", "b c")), randomGraph(random, 40, true, weighted, true));
+			byte[] bytes = GraphSampleBinaryIO.toBytes(sample);
+			assertSameSample(sample, GraphSampleBinaryIO.fromBytes(bytes, false));
+			GraphSample compact = GraphSampleBinaryIO.fromBytes(bytes, true);
+			assertTrue(compact.getGraph() instanceof CompactDirectedWeightedLabeledGraph);
+			assertSameSample(sample, compact);
+			assertSameSample(sample, GraphSampleBinaryIO.fromBytes(GraphSampleBinaryIO.toBytes(compact), false));
+		}
+	}
+
+	@Test
+	public void roundTripsGraphsWithNamedVertices() {
+		Random random = new Random(2);
+		for(int i = 0; i < 20; i++){
+			GraphSample sample = new GraphSample(i, i % 2 == 0 ? "label" : "another label", randomGraph(random, 40, false, true, true));
+			assertSameSample(sample, GraphSampleBinaryIO.fromBytes(GraphSampleBinaryIO.toBytes(sample), false));
+		}
+	}
+
+	@Test
+	public void writesAndReadsFiles() throws IOException {
+		GraphSample sample = new GraphSample(7, "x", randomGraph(new Random(3), 40, true, true, true));
+		File file = new File(folder.getRoot(), GraphSampleBinaryIO.getFilename(sample.getId()));
+		GraphSampleBinaryIO.write(sample, file);
+		assertTrue(GraphSampleBinaryIO.isBinaryFile(file));
+		assertSameSample(sample, GraphSampleBinaryIO.read(file, true));
+	}
+}
@@ -0,0 +1,85 @@
+package dataMining.graph;
+
+import static org.junit.Assert.assertEquals;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+import util.graph.CompactDirectedWeightedLabeledGraph;
+import util.graph.DirectedWeightedLabeledGraph;
+import util.graph.LabeledMeasurableGraph;
+import util.graph.LabeledWeightedEdge;
+
+/** Random graph samples and their comparison, shared by the tests of the graph formats and measures. */
+public class GraphSampleTestUtils {
+
+	/**
+	 * Random graph with up to 'maxVertices' vertices and about 3 edges per vertex, without loops.
+	 * Weights are multiples of 1/8, exact in float (as the binary format keeps them) and in their sums; edge labels are one of 3 if 'labeled', otherwise empty.
+	 */
+	public static DirectedWeightedLabeledGraph randomGraph(Random random, int maxVertices, boolean numericVertices, boolean weighted, boolean labeled) {
+		return randomGraph(random, maxVertices, numericVertices ? () -> String.valueOf(random.nextInt(1000) - 100) : () -> "v" + random.nextInt(1000), weighted, labeled);
+	}
+
+	/** As {@link #randomGraph(Random, int, boolean, boolean, boolean)}, with vertex ids in [0, numVertexIds): the fewer ids, the more graphs have in common. */
+	public static DirectedWeightedLabeledGraph randomNumericGraph(Random random, int maxVertices, int numVertexIds, boolean weighted, boolean labeled) {
+		return randomGraph(random, maxVertices, () -> String.valueOf(random.nextInt(numVertexIds)), weighted, labeled);
+	}
+
+	private static DirectedWeightedLabeledGraph randomGraph(Random random, int maxVertices, Supplier<String> vertexNames, boolean weighted, boolean labeled) {
+		DirectedWeightedLabeledGraph g = new DirectedWeightedLabeledGraph(weighted);
+		int numVertices = 1 + random.nextInt(maxVertices);
+		String[] vertices = new String[numVertices];
+		for(int v = 0; v < numVertices; v++){
+			vertices[v] = vertexNames.get();
+			g.addVertex(vertices[v], weighted ? random.nextInt(64) / 8.0 : 1);
+		}
+		for(int e = 3 * numVertices; e > 0; e--){
+			String source = vertices[random.nextInt(numVertices)], target = vertices[random.nextInt(numVertices)];
+			String label = labeled ? "l" + random.nextInt(3) : "";
+			if(!source.equals(target) && g.getEdge(source, target, label) == null) //with labels, a pair of vertices may have several edges
+				g.addEdge(source, target, new LabeledWeightedEdge(source, target, label, weighted ? random.nextInt(64) / 8.0 : 1));
+		}
+		return g;
+	}
+
+	/** Compact copy of a graph with numeric vertices, built by {@link CompactDirectedWeightedLabeledGraph.Builder}. */
+	public static CompactDirectedWeightedLabeledGraph toCompact(LabeledMeasurableGraph g) {
+		CompactDirectedWeightedLabeledGraph.Builder builder = new CompactDirectedWeightedLabeledGraph.Builder(g.isWeighted());
+		for(String vertex : g.vertexSet())
+			builder.addVertex(Long.parseLong(vertex), g.getVertexWeight(vertex));
+		for(LabeledWeightedEdge edge : g.edgeSet())
+			builder.addEdgeOtherwiseWeight(Long.parseLong(g.getEdgeSource(edge)), Long.parseLong(g.getEdgeTarget(edge)), edge.getLabel(), edge.getWeight());
+		return builder.build();
+	}
+
+	/** Random sample of a weighted graph with numeric vertices and unlabeled edges, as fusion graphs. */
+	public static GraphSample randomSample(Random random, long id) {
+		return new GraphSample(id, "c" + id % 3, randomGraph(random, 30, true, true, false));
+	}
+
+	private static Set<String> describeEdges(LabeledMeasurableGraph g) {
+		Set<String> edges = new HashSet<>();
+		for(String vertex : g.vertexSet())
+			for(LabeledWeightedEdge edge : g.outgoingEdgesOf(vertex))
+				edges.add(vertex + " " + edge.getTarget() + " " + edge.getLabel() + " " + edge.getWeight());
+		return edges;
+	}
+
+	public static void assertSameSample(GraphSample expected, GraphSample actual) {
+		assertEquals(expected.getId(), actual.getId());
+		assertEquals(expected.getLabels(), actual.getLabels());
+		assertSameGraph(expected.getGraph(), actual.getGraph(), 0);
+	}
+
+	/** Compares vertices, edges and their weights exactly, and the sizes up to the delta, as sums of the same weights in another order may round differently. */
+	public static void assertSameGraph(LabeledMeasurableGraph a, LabeledMeasurableGraph b, float sizeDelta) {
+		assertEquals(a.isWeighted(), b.isWeighted());
+		assertEquals(a.vertexSet(), new HashSet<>(b.vertexSet()));
+		for(String vertex : a.vertexSet())
+			assertEquals(a.getVertexWeight(vertex), b.getVertexWeight(vertex));
+		assertEquals(describeEdges(a), describeEdges(b));
+		assertEquals(a.getSize(true), b.getSize(true), sizeDelta);
+		assertEquals(a.getSize(false), b.getSize(false), sizeDelta);
+	}
+}
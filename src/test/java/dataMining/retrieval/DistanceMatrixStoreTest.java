@@ -0,0 +1,125 @@
+package dataMining.retrieval;
+
+import static dataMining.retrieval.RankTestUtils.assertSameRank;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.FloatBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DistanceMatrixStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static float[][] randomSymmetricMatrix(Random random, int n) {
+		float[][] matrix = new float[n][n];
+		for(int i = 0; i < n; i++)
+			for(int j = i; j < n; j++)
+				matrix[i][j] = matrix[j][i] = i == j ? 0 : random.nextFloat() * 10;
+		return matrix;
+	}
+
+	private static void assertSameMatrix(float[][] expected, DistanceMatrixStore store) {
+		int n = expected.length;
+		assertEquals(n, store.size());
+		for(int i = 0; i < n; i++){
+			for(int j = 0; j < n; j++)
+				assertEquals(expected[i][j], store.get(i, j), 0);
+			float[] row = new float[n];
+			int[] numValues = {0};
+			store.forEachInRow(i, (column, value) -> {
+				assertEquals(numValues[0]++, column);
+				row[column] = value;
+			});
+			assertEquals(n, numValues[0]);
+			for(int j = 0; j < n; j++)
+				assertEquals(expected[i][j], row[j], 0);
+			FloatBuffer stored = store.getStoredRow(i);
+			int first = store.isUpperTriangular() ? i : 0;
+			assertEquals(n - first, stored.remaining());
+			for(int j = first; j < n; j++)
+				assertEquals(expected[i][j], stored.get(), 0);
+		}
+	}
+
+	@Test
+	public void writesAndReadsRowsInAnyOrder() {
+		Random random = new Random(1);
+		for(boolean upperTriangular : new boolean[]{false, true}){
+			for(int n : new int[]{0, 1, 2, 37}){
+				float[][] matrix = randomSymmetricMatrix(random, n);
+				File storeFile = new File(folder.getRoot(), n + "_" + upperTriangular + DistanceMatrixStore.EXTENSION);
+				List<Integer> rows = IntStream.range(0, n).boxed().collect(Collectors.toList());
+				Collections.shuffle(rows, random);
+				try(DistanceMatrixStore.Writer writer = new DistanceMatrixStore.Writer(storeFile, n, upperTriangular)){
+					rows.parallelStream().forEach(row -> writer.writeRow(row, matrix[row]));
+				}
+				assertTrue(DistanceMatrixStore.isStore(storeFile));
+				DistanceMatrixStore store = DistanceMatrixStore.open(storeFile);
+				assertEquals(upperTriangular, store.isUpperTriangular());
+				assertSameMatrix(matrix, store);
+			}
+		}
+	}
+
+	private File writeText(float[][] matrix, String separator, String lineEnd) throws IOException {
+		File textFile = folder.newFile();
+		try(PrintStream out = new PrintStream(textFile)){
+			for(float[] row : matrix){
+				for(int j = 0; j < row.length; j++)
+					out.print((j == 0 ? "" : separator) + row[j]);
+				out.print(lineEnd);
+			}
+		}
+		return textFile;
+	}
+
+	@Test
+	public void convertsFromText() throws IOException {
+		Random random = new Random(2);
+		float[][] matrix = randomSymmetricMatrix(random, 50);
+		for(boolean upperTriangular : new boolean[]{false, true}){
+			File storeFile = new File(folder.getRoot(), "m" + upperTriangular + DistanceMatrixStore.EXTENSION);
+			DistanceMatrixStore.convertFromText(writeText(matrix, " \t", "\r\n"), storeFile, upperTriangular);
+			assertSameMatrix(matrix, DistanceMatrixStore.open(storeFile));
+		}
+	}
+
+	@Test
+	public void rejectsNonSquareText() throws IOException {
+		float[][] matrix = new float[3][4];
+		File storeFile = new File(folder.getRoot(), "m" + DistanceMatrixStore.EXTENSION);
+		assertThrows(IllegalArgumentException.class, () -> DistanceMatrixStore.convertFromText(writeText(matrix, " ", "\n"), storeFile, false));
+	}
+
+	@Test
+	public void givesTheSameRanksAsTheTextMatrix() throws IOException {
+		Random random = new Random(3);
+		float[][] matrix = randomSymmetricMatrix(random, 60);
+		File textFile = writeText(matrix, " ", "\n");
+		File storeFile = new File(folder.getRoot(), "m" + DistanceMatrixStore.EXTENSION);
+		DistanceMatrixStore.convertFromText(textFile, storeFile, true);
+
+		File ranksFromText = new File(folder.getRoot(), "text" + RankStore.EXTENSION), ranksFromStore = new File(folder.getRoot(), "store" + RankStore.EXTENSION);
+		RankGenerator.generateRanksFromMatrix(textFile, false, 10, row -> row % 2 == 0, column -> column != 5, ranksFromText);
+		RankGenerator.generateRanksFromMatrix(storeFile, false, 10, row -> row % 2 == 0, column -> column != 5, ranksFromStore);
+		RankStore a = RankStore.open(ranksFromText), b = RankStore.open(ranksFromStore);
+		assertEquals(30, a.getNumRanks());
+		for(long queryId : a.getQueryIDs()){
+			RankedList rank = a.getRank(queryId, -1);
+			assertEquals(10, rank.size());
+			assertSameRank(rank, b.getRank(queryId, -1));
+		}
+	}
+}
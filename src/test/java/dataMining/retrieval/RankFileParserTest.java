@@ -0,0 +1,141 @@
+package dataMining.retrieval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.fail;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RankFileParserTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final String[] DECIMALS = {
+		"0", "-0", "+0", "0.0", "-0.0", "00012", "1", "-1", "+1.5", ".5", "-.5", "5.", "0.1", "0.2", "0.3", "1.1", "123.456", "0.000001",
+		"1e0", "1E5", "1e+5", "1e-5", "1e005", "2.5e-3", "-7.25E+2", "1e22", "1e-22", "1e23", "1e-23", "1e38", "1e39", "1e-45", "1e-46", "1e308", "1e309", "1e-324", "1e1000",
+		"123456789012345", "1234567890123456", "0.123456789012345", "0.1234567890123456", "12345678901234567890", "9007199254740993", "0.30000000000000004",
+		"16777216", "16777217", "16777218", "16777219", "-16777217", "16777217.0", "1.6777217e7", "33554434", "33554435", "33554438", //midpoints between floats around 2^24 and 2^25
+		"8388608.5", "8388609.5", "4194304.25", "4194304.75", //midpoints between floats around 2^22 and 2^23
+		"1.00000005960464477539", "1.0000000596046448", "3.4028235e38", "3.4028236e38", "1.17549435e-38", "1.4e-45",
+		"0.9999999999999999", "0.99999999999999999", "NaN", "-NaN", "Infinity", "-Infinity", "1.5f", "2d", "0x1p3",
+	};
+
+	private static final String[] INVALID = {"", "-", "+", ".", "e5", "1e", "1e+", "1..2", "1.2.3", "1e5.5", "abc", "1,5", "--1"};
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void assertParsesAsJdk(String s) {
+		byte[] b = bytes(s);
+		assertEquals(s, Float.floatToIntBits(Float.valueOf(s)), Float.floatToIntBits(RankFileParser.parseFloat(b, b.length)));
+		assertEquals(s, Double.doubleToLongBits(Double.parseDouble(s)), Double.doubleToLongBits(RankFileParser.parseDouble(b, 0, b.length)));
+		//in the middle of a line, as for matrix rows:
+		byte[] line = bytes("9 " + s + " 9");
+		assertEquals(s, Double.doubleToLongBits(Double.parseDouble(s)), Double.doubleToLongBits(RankFileParser.parseDouble(line, 2, b.length)));
+	}
+
+	@Test
+	public void parsesDecimalsAsJdk() {
+		for(String s : DECIMALS){
+			assertParsesAsJdk(s);
+			if(!s.startsWith("-") && !s.startsWith("+"))
+				assertParsesAsJdk("-" + s);
+		}
+	}
+
+	@Test
+	public void parsesRandomDecimalsAsJdk() {
+		Random random = new Random(1);
+		for(int i = 0; i < 200_000; i++){
+			double value = Math.scalb(random.nextDouble(), random.nextInt(80) - 60) * (random.nextBoolean() ? 1 : -1);
+			String s;
+			switch(i % 5){
+				case 0: s = Float.toString((float)value); break;
+				case 1: s = Double.toString(value); break;
+				case 2: s = String.format(Locale.US, "%." + random.nextInt(18) + "f", value); break;
+				case 3: s = String.format(Locale.US, "%." + random.nextInt(18) + "e", value); break;
+				default: //midpoints between consecutive floats, with few digits when the float exponent is small
+					float f = (float)value;
+					s = new BigDecimal((double)f).add(new BigDecimal(Math.ulp(f) / 2)).toPlainString();
+			}
+			assertParsesAsJdk(s);
+		}
+	}
+
+	@Test
+	public void rejectsInvalidDecimalsAsJdk() {
+		for(String s : INVALID){
+			byte[] b = bytes(s);
+			assertThrows(s, NumberFormatException.class, () -> Float.valueOf(s));
+			assertThrows(s, NumberFormatException.class, () -> RankFileParser.parseFloat(b, b.length));
+			assertThrows(s, NumberFormatException.class, () -> RankFileParser.parseDouble(b, 0, b.length));
+		}
+	}
+
+	@Test
+	public void parsesLongsAsJdk() {
+		for(String s : new String[]{"0", "-0", "+7", "42", "-42", "123456789012345678", "-123456789012345678", "9223372036854775807", "-9223372036854775808", "0000000000000000000001"}){
+			byte[] b = bytes(s);
+			assertEquals(s, Long.parseLong(s), RankFileParser.parseLong(b, b.length));
+		}
+		for(String s : new String[]{"", "-", "1.0", "9223372036854775808", "1e3", "x"}){
+			byte[] b = bytes(s);
+			assertThrows(s, NumberFormatException.class, () -> RankFileParser.parseLong(b, b.length));
+		}
+	}
+
+	private List<String> parseRank(String content, int limit) throws IOException {
+		File file = folder.newFile();
+		Files.write(file.toPath(), bytes(content));
+		List<String> entries = new ArrayList<>();
+		RankFileParser.parseRank(file, limit, (index, id, weighted, weight) -> {
+			if(index != entries.size())
+				fail("unexpected index " + index);
+			entries.add(weighted ? id + ":" + weight : String.valueOf(id));
+		});
+		return entries;
+	}
+
+	@Test
+	public void parsesRankFormats() throws IOException {
+		assertEquals(Arrays.asList("3:0.5", "1:0.25", "2:1.0E-4"), parseRank("0.5\t3\n0.25 1\n1e-4\t2\n", -1));
+		assertEquals(Arrays.asList("3:0.5", "1:0.25"), parseRank("3 0.5\n1 0.25\n", -1));
+		assertEquals(Arrays.asList("3", "1", "2"), parseRank("3\n1\n2", -1));
+		assertEquals(Arrays.asList("3:0.5", "1:0.25"), parseRank("0.5\t3\r\n\r\n  0.25\t1  \r\n", -1));
+		assertEquals(Arrays.asList("3", "1"), parseRank("3\n1\n2\n", 2));
+		assertEquals(Arrays.asList(), parseRank("3\n1\n", 0));
+		assertEquals(Arrays.asList(), parseRank("", -1));
+		assertThrows(IllegalArgumentException.class, () -> parseRank("0.5\t3\n0.25\n", -1));
+	}
+
+	@Test
+	public void readsRanksSavedByRankedList() throws IOException {
+		Random random = new Random(2);
+		RankedList rank = new RankedList(-1, true);
+		for(int i = 0; i < 5000; i++)
+			rank.add(random.nextInt(1_000_000), random.nextFloat());
+		File file = folder.newFile();
+		rank.save(file);
+		RankedList loaded = RankedList.load(file, -1);
+		List<String> lines = Files.readAllLines(file.toPath());
+		assertEquals(lines.size(), loaded.size());
+		for(int i = 0; i < lines.size(); i++){
+			String[] fields = lines.get(i).split("\t");
+			assertEquals(Long.parseLong(fields[1]), loaded.getIdAt(i));
+			assertEquals(Float.floatToIntBits(Float.valueOf(fields[0])), Float.floatToIntBits(loaded.getWeightAt(i)));
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package dataMining.retrieval;
+
+import static dataMining.graph.GraphSampleTestUtils.randomNumericGraph;
+import static dataMining.graph.GraphSampleTestUtils.toCompact;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import dataMining.distance.graphDistance.GraphDistanceType;
+import dataMining.distance.graphDistance.GraphSampleDistanceMeasurer;
+import dataMining.distance.graphDistance.GraphSampleMultiSimilarityMeasurer;
+import dataMining.graph.GraphSample;
+import dataMining.graph.GraphVertexIndex;
+import util.Pair;
+import util.graph.DirectedWeightedLabeledGraph;
+
+public class RankGeneratorTest {
+
+	private static final float DELTA = 1e-6F;
+
+	/**
+	 * Sample sizes: with fewer samples than processors the tiles degenerate to a single row and column,
+	 * while the biggest one is split into several tiles even on a single processor.
+	 */
+	private static int[] sampleSizes() {
+		return new int[]{1, 2, 3, Math.max(1, Runtime.getRuntime().availableProcessors() - 1), 40, 150};
+	}
+
+	/** Small graphs over few vertex ids, so many pairs share vertices, and some repeated graphs, so the similarities have ties. */
+	private static ArrayList<GraphSample> randomSamples(Random random, int n) {
+		List<Long> ids = new ArrayList<>();
+		for(long id = 0; id < n; id++)
+			ids.add(id * 7 + 3);
+		Collections.shuffle(ids, random);
+		ArrayList<GraphSample> samples = new ArrayList<>();
+		DirectedWeightedLabeledGraph previous = null;
+		for(long id : ids){
+			DirectedWeightedLabeledGraph graph = previous != null && random.nextInt(4) == 0 ? previous : randomNumericGraph(random, 6, 30, true, false);
+			samples.add(new GraphSample(id, "", toCompact(graph)));
+			previous = graph;
+		}
+		return samples;
+	}
+
+	/** The all-pairs baseline: each sample against every other one, sequentially, the sample itself being a response of similarity 1. */
+	private static float[] expectedWeights(List<GraphSample> samples, GraphSample query, GraphSampleDistanceMeasurer similarity, int rankSizeLimit) {
+		float[] weights = new float[samples.size()];
+		for(int j = 0; j < samples.size(); j++)
+			weights[j] = samples.get(j).getId() == query.getId() ? 1 : similarity.getSimilarity(query, samples.get(j));
+		Arrays.sort(weights);
+		float[] decreasing = new float[rankSizeLimit < 0 ? weights.length : Math.min(rankSizeLimit, weights.length)];
+		for(int k = 0; k < decreasing.length; k++)
+			decreasing[k] = weights[weights.length - 1 - k];
+		return decreasing;
+	}
+
+	/** Compares the rank with the baseline up to the order of ties: the same weights, given to distinct responses having them as similarity. */
+	private static void assertSameRank(List<GraphSample> samples, GraphSample query, GraphSampleDistanceMeasurer similarity, int rankSizeLimit, RankedList rank) {
+		String message = "query " + query.getId() + " of " + samples.size() + ", " + similarity + ", limit " + rankSizeLimit;
+		float[] expected = expectedWeights(samples, query, similarity, rankSizeLimit);
+		assertEquals(message, expected.length, rank.size());
+		Set<Long> responses = new HashSet<>();
+		for(int k = 0; k < rank.size(); k++){
+			long id = rank.getIdAt(k);
+			assertEquals(message, expected[k], rank.getWeightAt(k), DELTA);
+			assertTrue(message, responses.add(id));
+			GraphSample response = samples.stream().filter(s -> s.getId() == id).findAny().get();
+			assertEquals(message, id == query.getId() ? 1 : similarity.getSimilarity(query, response), rank.getWeightAt(k), DELTA);
+		}
+	}
+
+	private static void assertSameRanks(List<GraphSample> samples, GraphSampleDistanceMeasurer similarity, int rankSizeLimit, List<Pair<GraphSample,RankedList>> ranks) {
+		assertEquals(samples.size(), ranks.size());
+		for(int i = 1; i < ranks.size(); i++)
+			assertTrue(ranks.get(i - 1).getA().getId() < ranks.get(i).getA().getId());
+		for(Pair<GraphSample,RankedList> rank : ranks)
+			assertSameRank(samples, rank.getA(), similarity, rankSizeLimit, rank.getB());
+	}
+
+	@Test
+	public void generatesTheRanksOfTheAllPairsBaseline() {
+		Random random = new Random(1);
+		for(int n : sampleSizes()){
+			ArrayList<GraphSample> samples = randomSamples(random, n);
+			for(GraphDistanceType type : GraphDistanceType.values()){
+				GraphSampleDistanceMeasurer similarity = new GraphSampleDistanceMeasurer(type);
+				for(int rankSizeLimit : new int[]{-1, 1, 5, n}){
+					assertSameRanks(samples, similarity, rankSizeLimit, RankGenerator.generateRanks(new ArrayList<>(samples), similarity, null, rankSizeLimit, false, false, null));
+					assertSameRanks(samples, similarity, rankSizeLimit, RankGenerator.generateRanks(new ArrayList<>(samples), similarity, GraphVertexIndex::new, rankSizeLimit, false, false, null));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void generatesTheRanksOfAllSimilaritiesTogether() {
+		Random random = new Random(2);
+		GraphDistanceType[] types = GraphDistanceType.values();
+		for(int n : sampleSizes()){
+			ArrayList<GraphSample> samples = randomSamples(random, n);
+			List<GraphSample> sorted = new ArrayList<>(samples);
+			sorted.sort(GraphSample.COMPARATOR_BY_ID);
+			for(int rankSizeLimit : new int[]{-1, 1, 5, n}){
+				for(boolean indexed : new boolean[]{false, true}){
+					RankedList[][] ranks = RankGenerator.generateRanks(new ArrayList<>(samples), new GraphSampleMultiSimilarityMeasurer(types), indexed ? GraphVertexIndex::new : null, rankSizeLimit, false, null);
+					assertEquals(types.length, ranks.length);
+					for(int m = 0; m < types.length; m++)
+						for(int i = 0; i < n; i++)
+							assertSameRank(samples, sorted.get(i), new GraphSampleDistanceMeasurer(types[m]), rankSizeLimit, ranks[m][i]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void generatesTheTopRanksOfTheAllPairsBaseline() {
+		Random random = new Random(3);
+		for(int n : sampleSizes()){
+			ArrayList<GraphSample> samples = randomSamples(random, n);
+			for(GraphDistanceType type : GraphDistanceType.values()){
+				GraphSampleDistanceMeasurer similarity = new GraphSampleDistanceMeasurer(type);
+				for(int rankSizeLimit : new int[]{-1, 1, 5, n}){
+					assertSameRanks(samples, similarity, rankSizeLimit, RankGenerator.generateTopRanks(new ArrayList<>(samples), similarity, null, rankSizeLimit, false, null));
+					assertSameRanks(samples, similarity, rankSizeLimit, RankGenerator.generateTopRanks(new ArrayList<>(samples), similarity, GraphVertexIndex::new, rankSizeLimit, false, null));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package dataMining.retrieval;
+
+import static dataMining.retrieval.RankTestUtils.assertSameRank;
+import static dataMining.retrieval.RankTestUtils.randomRank;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RankStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void writesAndReadsRanksInAnyOrder() throws IOException {
+		for(boolean weighted : new boolean[]{true, false}){
+			Random random = new Random(1);
+			long[] queryIds = {42, 7, 1_000_000_000_000L, 0, 13};
+			RankedList[] ranks = new RankedList[queryIds.length];
+			File storeFile = folder.newFile();
+			try(RankStore.Writer writer = new RankStore.Writer(storeFile, queryIds.length + 2, weighted)){
+				for(int q = 0; q < queryIds.length; q++){
+					ranks[q] = randomRank(random, q == 3 ? 0 : 1 + random.nextInt(50), weighted);
+					writer.add(queryIds[q], ranks[q]);
+				}
+			}
+
+			RankStore store = RankStore.open(storeFile);
+			assertEquals(weighted, store.isWeighted());
+			assertEquals(queryIds.length, store.getNumRanks());
+			assertArrayEquals(new long[]{0, 7, 13, 42, 1_000_000_000_000L}, store.getQueryIDs());
+			for(int q = 0; q < queryIds.length; q++){
+				assertTrue(store.contains(queryIds[q]));
+				assertSameRank(ranks[q], store.getRank(queryIds[q], -1));
+				RankedList prefix = store.getRank(queryIds[q], 3);
+				assertEquals(Math.min(3, ranks[q].size()), prefix.size());
+				for(int i = 0; i < prefix.size(); i++)
+					assertEquals(ranks[q].getIdAt(i), prefix.getIdAt(i));
+			}
+			assertFalse(store.contains(8));
+			assertNull(store.getRank(8, -1));
+		}
+	}
+
+	@Test
+	public void convertsFromAndToFolder() throws IOException {
+		Random random = new Random(2);
+		File ranksFolder = folder.newFolder();
+		RankedList[] ranks = new RankedList[20];
+		for(int q = 0; q < ranks.length; q++){
+			ranks[q] = randomRank(random, 1 + random.nextInt(30), true);
+			ranks[q].saveToFolder(q, ranksFolder);
+		}
+		File storeFile = new File(folder.getRoot(), "ranks" + RankStore.EXTENSION);
+		RankStore.convertFromFolder(ranksFolder, storeFile);
+
+		RankStore store = RankStore.open(storeFile);
+		assertTrue(store.isWeighted());
+		for(int q = 0; q < ranks.length; q++)
+			assertSameRank(RankedList.loadFromFolder(q, ranksFolder, -1), store.getRank(q, -1));
+
+		File copyFolder = folder.newFolder();
+		store.saveToFolder(copyFolder);
+		for(int q = 0; q < ranks.length; q++)
+			assertSameRank(RankedList.loadFromFolder(q, ranksFolder, -1), RankedList.loadFromFolder(q, copyFolder, -1));
+	}
+
+	@Test
+	public void convertsUnweightedRanksAfterEmptyOnes() throws IOException {
+		File ranksFolder = folder.newFolder();
+		new File(ranksFolder, "1").createNewFile();
+		RankedList rank = randomRank(new Random(3), 10, false);
+		rank.saveToFolder(2, ranksFolder);
+		File storeFile = folder.newFile();
+		RankStore.convertFromFolder(ranksFolder, storeFile);
+
+		RankStore store = RankStore.open(storeFile);
+		assertFalse(store.isWeighted());
+		assertEquals(0, store.getRank(1, -1).size());
+		assertSameRank(rank, store.getRank(2, -1));
+	}
+
+	@Test
+	public void rejectsMixedWeightedAndUnweightedRanks() throws IOException {
+		File ranksFolder = folder.newFolder();
+		randomRank(new Random(4), 10, true).saveToFolder(1, ranksFolder);
+		randomRank(new Random(5), 10, false).saveToFolder(2, ranksFolder);
+		File storeFile = folder.newFile();
+		assertThrows(IllegalArgumentException.class, () -> RankStore.convertFromFolder(ranksFolder, storeFile));
+	}
+
+	@Test
+	public void rejectsDuplicateQueryIds() throws IOException {
+		try(RankStore.Writer writer = new RankStore.Writer(folder.newFile(), 3, true)){
+			writer.add(5, randomRank(new Random(6), 4, true));
+			assertThrows(IllegalArgumentException.class, () -> writer.add(5, randomRank(new Random(7), 4, true)));
+		}
+	}
+}
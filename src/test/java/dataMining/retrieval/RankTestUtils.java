@@ -0,0 +1,60 @@
+package dataMining.retrieval;
+
+import static org.junit.Assert.assertEquals;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/** Random ranks and their comparison, shared by the tests of the rank formats, loaders and reranking. */
+public class RankTestUtils {
+
+	/** Rank of random ids (possibly repeated), with decreasing weights if 'weighted'. */
+	public static RankedList randomRank(Random random, int size, boolean weighted) {
+		long[] ids = new long[size];
+		float[] weights = weighted ? new float[size] : null;
+		for(int i = 0; i < size; i++){
+			ids[i] = random.nextInt(1_000_000);
+			if(weighted)
+				weights[i] = 1 - i / (float)size;
+		}
+		return new RankedList(ids, weights);
+	}
+
+	/**
+	 * Saves a weighted rank of the responses for each query, in random order but starting by the query if it is among the responses,
+	 * with sizes from short ones up to all the responses.
+	 */
+	public static void saveRandomRanks(Random random, List<Long> queryIds, List<Long> responseIds, File ranksFolder) {
+		for(long queryId : queryIds){
+			List<Long> others = new ArrayList<>(responseIds);
+			boolean isResponse = others.remove(queryId);
+			Collections.shuffle(others, random);
+			int maxSize = others.size() + (isResponse ? 1 : 0);
+			int size = random.nextInt(3) == 0 ? maxSize : 1 + random.nextInt(Math.max(1, maxSize / 3));
+			RankedList rank = new RankedList(-1, true);
+			int i = 0;
+			if(isResponse)
+				rank.add(queryId, 1 - i++ / (float)size);
+			for(Long id : others.subList(0, size - i))
+				rank.add(id, 1 - i++ / (float)size);
+			rank.saveToFolder(queryId, ranksFolder);
+		}
+	}
+
+	public static void assertSameRank(RankedList expected, RankedList actual) {
+		assertSameRank("", expected, actual);
+	}
+
+	/** Compares ids and weights, the latter bit by bit. */
+	public static void assertSameRank(String message, RankedList expected, RankedList actual) {
+		assertEquals(message, expected.size(), actual.size());
+		assertEquals(message, expected.isWeighted(), actual.isWeighted());
+		for(int i = 0; i < expected.size(); i++){
+			assertEquals(message, expected.getIdAt(i), actual.getIdAt(i));
+			if(expected.isWeighted())
+				assertEquals(message, Float.floatToIntBits(expected.getWeightAt(i)), Float.floatToIntBits(actual.getWeightAt(i)));
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package dataMining.retrieval;
+
+import static dataMining.retrieval.RankTestUtils.assertSameRank;
+import static dataMining.retrieval.RankTestUtils.saveRandomRanks;
+import static org.junit.Assert.assertEquals;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import util.DataStructureUtils;
+import util.Pair;
+
+public class RankedListsTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** The reranking as it was implemented before, over maps of <id,<index,weight>>, kept as reference. */
+	private static SortedMap<Long,RankedList> baselineRerank(File ranksFolder, int rankSizeLimit, int rerank, int rankSizeRerankingLimit) {
+		LinkedHashMap<Long,Map<Long,Pair<Integer,Float>>> id_rank = new LinkedHashMap<>();
+		for(File rankedListFile : ranksFolder.listFiles()){
+			LinkedHashMap<Long,Pair<Integer,Float>> rank = new LinkedHashMap<>();
+			RankedList.load(rankedListFile, rankSizeRerankingLimit, (rank_index,rank_id,rank_weight) -> rank.put(rank_id, Pair.get(rank_index, rank_weight)));
+			id_rank.put(Long.valueOf(rankedListFile.getName()), rank);
+		}
+		BiFunction<Integer,Integer,Float> normalizer;
+		if(rerank == 2)
+			normalizer = (pos,anotherPos) -> (float)(pos + anotherPos + Math.max(pos, anotherPos));
+		else
+			normalizer = (pos,anotherPos) -> (float)(pos + anotherPos);
+		TreeMap<Long,RankedList> newRanks = new TreeMap<>();
+		id_rank.forEach((id, rank) -> {
+			List<Pair<Long,Float>> newRank = new ArrayList<>(rank.size());
+			rank.forEach((rankedElement,index_weight) -> {
+				int pos = index_weight.getA() + 1;
+				Map<Long,Pair<Integer,Float>> inverseRank = id_rank.get(rankedElement);
+				Pair<Integer,Float> pos_weight = inverseRank.get(id);
+				Integer inversePos = pos_weight != null ? pos_weight.getA()+1 : inverseRank.size()+1;
+				newRank.add(new Pair<>(rankedElement, normalizer.apply(pos, inversePos)));
+			});
+			DataStructureUtils.stableSort(newRank, Pair.createComparatorByB());
+			if(rankSizeLimit >= 0)
+				DataStructureUtils.removeAtEnd(newRank, newRank.size() - rankSizeLimit);
+			newRanks.put(id, new RankedList(newRank));
+		});
+		return newRanks;
+	}
+
+	private static void assertSameRanks(SortedMap<Long,RankedList> expected, RankedLists actual) {
+		assertEquals(expected.size(), actual.size());
+		actual.forEach((id, rank) -> {
+			assertSameRank("rank " + id, expected.get(id), rank);
+		});
+	}
+
+	@Test
+	public void reranksAsBaseline() throws IOException {
+		Random random = new Random(1);
+		List<Long> ids = new ArrayList<>();
+		for(int i = 0; i < 80; i++)
+			ids.add(1000L + 7 * i);
+		File ranksFolder = folder.newFolder();
+		saveRandomRanks(random, ids, ids, ranksFolder);
+		File storeFile = new File(folder.getRoot(), "ranks" + RankStore.EXTENSION);
+		RankStore.convertFromFolder(ranksFolder, storeFile);
+		RankStore store = RankStore.open(storeFile);
+
+		for(int rerank : new int[]{1, 2}){
+			for(int rankSizeRerankingLimit : new int[]{10, 30, -1}){
+				for(int rankSizeLimit : new int[]{5, -1}){
+					SortedMap<Long,RankedList> expected = baselineRerank(ranksFolder, rankSizeLimit, rerank, rankSizeRerankingLimit);
+					assertSameRanks(expected, RankedLists.loadFromFolder(ranksFolder, rankSizeLimit, rerank, rankSizeRerankingLimit));
+					assertSameRanks(expected, RankedLists.loadFromStore(store, rankSizeLimit, rerank, rankSizeRerankingLimit));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void reranksInBlocksAsInOneBlock() throws IOException {
+		Random random = new Random(2);
+		List<Long> ids = new ArrayList<>();
+		for(int i = 0; i < 100; i++)
+			ids.add(50L * i - 2000);
+		File ranksFolder = folder.newFolder();
+		saveRandomRanks(random, ids, ids, ranksFolder);
+		File storeFile = new File(folder.getRoot(), "ranks" + RankStore.EXTENSION);
+		RankStore.convertFromFolder(ranksFolder, storeFile);
+
+		for(int rerank : new int[]{1, 2}){
+			SortedMap<Long,RankedList> expected = baselineRerank(ranksFolder, 20, rerank, 40);
+			for(int maxBlockIndexEntries : new int[]{1, 100, 1000, Integer.MAX_VALUE}){
+				assertSameRanks(expected, RankedLists.loadFromFolder(ranksFolder, null, 20, rerank, 40, maxBlockIndexEntries));
+				assertSameRanks(expected, RankedLists.loadFromFolder(storeFile, null, 20, rerank, 40, maxBlockIndexEntries));
+			}
+		}
+	}
+
+	@Test
+	public void reranksByTheRanksOfTheResponsesKeepingQueriesWithoutThem() throws IOException {
+		Random random = new Random(3);
+		List<Long> responseIds = new ArrayList<>();
+		for(int i = 0; i < 60; i++)
+			responseIds.add((long)i);
+		File responseRanksFolder = folder.newFolder();
+		saveRandomRanks(random, responseIds, responseIds, responseRanksFolder);
+		//queries: some of the responses, and others absent from the ranks of the responses
+		File queryRanksFolder = folder.newFolder();
+		saveRandomRanks(random, Arrays.asList(3L, 10L, 1000L, 1001L, 42L), responseIds, queryRanksFolder);
+
+		int rankSizeRerankingLimit = 30;
+		RankedLists reranked = RankedLists.loadFromFolder(queryRanksFolder, responseRanksFolder, -1, 2, rankSizeRerankingLimit, 10);
+		assertEquals(Arrays.asList(3L, 10L, 42L, 1000L, 1001L), Arrays.asList(reranked.getQueryIDs()));
+		reranked.forEach((queryId, rank) -> {
+			RankedList original = RankedList.loadFromFolder(queryId, queryRanksFolder, rankSizeRerankingLimit);
+			int[] inversePositions = new int[original.size()];
+			for(int idx = 0; idx < original.size(); idx++){
+				RankedList inverseRank = RankedList.loadFromFolder(original.getIdAt(idx), responseRanksFolder, rankSizeRerankingLimit);
+				int inverseIdx = inverseRank.getPosition(queryId);
+				inversePositions[idx] = inverseIdx >= 0 ? inverseIdx + 1 : inverseRank.size() + 1;
+			}
+			RankedList expected = RankedLists.rerank(original, inversePositions, true, -1);
+			assertEquals(expected.getIDs(), rank.getIDs());
+		});
+	}
+}
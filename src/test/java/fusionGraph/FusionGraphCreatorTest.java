@@ -0,0 +1,71 @@
+package fusionGraph;
+
+import static dataMining.graph.GraphSampleTestUtils.assertSameGraph;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import dataMining.retrieval.RankedList;
+import util.graph.DirectedWeightedLabeledGraph;
+import util.graph.LabeledMeasurableGraph;
+
+public class FusionGraphCreatorTest {
+
+	/** The fusion graph as it was created over {@link DirectedWeightedLabeledGraph}, before the compact builders. */
+	private static LabeledMeasurableGraph createWithDirectedWeightedLabeledGraph(List<RankedList> ranks, Map<Long,List<RankedList>> responsesRanks) {
+		LabeledMeasurableGraph g = new DirectedWeightedLabeledGraph(true);
+		for(RankedList rank : ranks)
+			for(int idx = 0; idx < rank.size(); idx++)
+				g.addVertex(String.valueOf(rank.getIdAt(idx)), rank.getWeightAt(idx));
+		for(RankedList rank : ranks){
+			for(int idx = 0; idx < rank.size(); idx++){
+				String a = String.valueOf(rank.getIdAt(idx));
+				int posA = idx + 1;
+				for(RankedList rankA : responsesRanks.get(rank.getIdAt(idx))){
+					for(int idxB = 0; idxB < rankA.size(); idxB++){
+						String b = String.valueOf(rankA.getIdAt(idxB));
+						if(g.containsVertex(a) && g.containsVertex(b) && !a.equals(b))
+							g.addEdgeOtherwiseWeight(a, b, rankA.getWeightAt(idxB) / posA);
+					}
+				}
+			}
+		}
+		g.normalizeWeights();
+		return g;
+	}
+
+	/** Rank of ids among 'numIds' (possibly repeated, so vertices and edges get their weights summed), with decreasing weights that may tie. */
+	private static RankedList randomRank(Random random, int numIds) {
+		RankedList rank = new RankedList(-1, true);
+		float weight = 1;
+		for(int i = random.nextInt(12); i > 0; i--){
+			rank.add((long)random.nextInt(numIds), weight);
+			if(random.nextBoolean())
+				weight *= random.nextFloat();
+		}
+		return rank;
+	}
+
+	@Test
+	public void createsTheSameGraphAsDirectedWeightedLabeledGraph() {
+		Random random = new Random(1);
+		FusionGraphCreator creator = new FusionGraphCreator();
+		for(int i = 0; i < 200; i++){
+			int numIds = 5 + random.nextInt(40), numDescriptors = 1 + random.nextInt(3);
+			List<RankedList> ranks = new ArrayList<>();
+			Map<Long,List<RankedList>> responsesRanks = new HashMap<>();
+			for(int d = 0; d < numDescriptors; d++)
+				ranks.add(randomRank(random, numIds));
+			for(long id = 0; id < numIds; id++){
+				List<RankedList> ranksOfId = new ArrayList<>();
+				for(int d = 0; d < numDescriptors; d++)
+					ranksOfId.add(randomRank(random, numIds));
+				responsesRanks.put(id, ranksOfId);
+			}
+			LabeledMeasurableGraph expected = createWithDirectedWeightedLabeledGraph(ranks, responsesRanks);
+			assertSameGraph(expected, creator.create(-1L, ranks, responsesRanks::get), 1e-5f);
+		}
+	}
+}
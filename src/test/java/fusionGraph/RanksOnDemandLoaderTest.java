@@ -0,0 +1,56 @@
+package fusionGraph;
+
+import static dataMining.retrieval.RankTestUtils.assertSameRank;
+import static dataMining.retrieval.RankTestUtils.saveRandomRanks;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.google.common.primitives.Longs;
+import dataMining.retrieval.RankedList;
+
+public class RanksOnDemandLoaderTest {
+
+	private static final String[] DESCRIPTORS = {"D1", "D2"};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void reranksAllQueriesAsTheLoaderOfAllRanks() throws IOException {
+		Random random = new Random(1);
+		List<Long> responseIds = new ArrayList<>();
+		for(long i = 0; i < 80; i++)
+			responseIds.add(2 * i);
+		long[] queries = {4, 10, 1001, 1003, 1005, 1007};
+		File responseRanksFolder = folder.newFolder(), queryRanksFolder = folder.newFolder();
+		for(String descriptor : DESCRIPTORS){
+			saveRandomRanks(random, responseIds, responseIds, new File(responseRanksFolder, descriptor));
+			saveRandomRanks(random, Longs.asList(queries), responseIds, new File(queryRanksFolder, descriptor));
+		}
+
+		for(int rerank : new int[]{0, 1, 2}){
+			Map<Long,List<RankedList>> expected = RanksForAggregationLoader.loadRanksForAggregation(40, d -> new File(queryRanksFolder, d), d -> new File(responseRanksFolder, d),
+				DESCRIPTORS, 20, false, rerank);
+			RanksOnDemandLoader responseRanks = new RanksOnDemandLoader(40, d -> new File(responseRanksFolder, d), DESCRIPTORS, 20, false, rerank, 10);
+			RanksOnDemandLoader queryRanks = new RanksOnDemandLoader(40, d -> new File(queryRanksFolder, d), DESCRIPTORS, 20, false, rerank, 10, responseRanks);
+			assertArrayEquals(queries, queryRanks.getIds());
+			assertEquals(queries.length, expected.size());
+			for(long queryId : queries){
+				List<RankedList> ranks = queryRanks.apply(queryId);
+				assertNotNull("ranks of query " + queryId, ranks);
+				assertEquals(DESCRIPTORS.length, ranks.size());
+				for(int d = 0; d < DESCRIPTORS.length; d++)
+					assertSameRank("rank " + queryId + " of " + DESCRIPTORS[d], expected.get(queryId).get(d), ranks.get(d));
+			}
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import dataMining.graph.GraphDataset;
+import dataMining.graph.GraphSample;
+import dataMining.retrieval.RankedList;
+import util.graph.DirectedWeightedLabeledGraph;
+
+/**
+ * Writing of a rank file and of a text graph sample through {@link FileUtils#createPrintStreamToFile(File)}, against the unbuffered PrintStream it used to create
+ * (kept here in {@link #unbufferedPrintStream(Megabytes, WriteCalls)} as reference). Both print the same tokens, by {@link RankedList#save(PrintStream)} and
+ * {@link GraphDataset#writeSample(GraphSample, PrintStream, boolean)}.
+ * <p>
+ * Besides the files per second, the counters give the MB/s written, and the write calls and files whose ratio is the number of write calls per file.
+ * Write calls are taken from /proc/self/io, so they are only counted on Linux.
+ * Run from the test classpath, which the forked benchmark JVMs inherit:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/test.classpath
+ * java -cp target/test-classes:target/classes:$(cat target/test.classpath) org.openjdk.jmh.Main BatchedFileOutputStreamBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchedFileOutputStreamBenchmark {
+
+	private static final int RANK_SIZE = 1000, NUM_VERTICES = 1000, NUM_EDGES = 10_000;
+
+	@Param({"rank", "graph"})
+	public String output;
+
+	private RankedList rank;
+	private GraphSample graph;
+	private File folder, file;
+
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Megabytes {
+		/** Normalized by time, as the files, so it is reported in MB/s. */
+		public double megabytes;
+
+		@Setup(Level.Iteration)
+		public void clean() {
+			megabytes = 0;
+		}
+	}
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class WriteCalls {
+		/** Totals of all the iterations: their ratio is the number of write calls per file. */
+		public long writeCalls, files;
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		Random random = new Random(1);
+		rank = new RankedList(-1, true);
+		for(int i = 0; i < RANK_SIZE; i++)
+			rank.add(random.nextInt(1_000_000), 1 - i / (float)RANK_SIZE);
+		DirectedWeightedLabeledGraph g = new DirectedWeightedLabeledGraph(true);
+		for(int v = 0; v < NUM_VERTICES; v++)
+			g.addVertex(String.valueOf(v), random.nextFloat());
+		for(int e = 0; e < NUM_EDGES; e++){
+			int source = random.nextInt(NUM_VERTICES), target = (source + 1 + random.nextInt(NUM_VERTICES - 1)) % NUM_VERTICES; //no loops
+			g.addEdgeOtherwiseWeight(String.valueOf(source), String.valueOf(target), random.nextFloat());
+		}
+		graph = new GraphSample(1, "label", g);
+		folder = Files.createTempDirectory("benchmark").toFile();
+		file = new File(folder, "output");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+		folder.delete();
+	}
+
+	private void write(PrintStream out) {
+		if(output.equals("rank"))
+			rank.save(out);
+		else
+			GraphDataset.writeSample(graph, out, false);
+	}
+
+	@Benchmark
+	public void unbufferedPrintStream(Megabytes megabytes, WriteCalls writeCalls) throws IOException {
+		long writeCallsBefore = countWriteCalls();
+		try(PrintStream out = new PrintStream(file)){
+			write(out);
+		}
+		count(megabytes, writeCalls, writeCallsBefore);
+	}
+
+	@Benchmark
+	public void batchedPrintStream(Megabytes megabytes, WriteCalls writeCalls) {
+		long writeCallsBefore = countWriteCalls();
+		try(PrintStream out = FileUtils.createPrintStreamToFile(file)){
+			write(out);
+		}
+		count(megabytes, writeCalls, writeCallsBefore);
+	}
+
+	private void count(Megabytes megabytes, WriteCalls writeCalls, long writeCallsBefore) {
+		megabytes.megabytes += file.length() / 1e6;
+		long writeCallsAfter = countWriteCalls();
+		if(writeCallsAfter >= 0){
+			writeCalls.writeCalls += writeCallsAfter - writeCallsBefore;
+			writeCalls.files++;
+		}
+	}
+
+	/** Write system calls of this process so far, or -1 if unknown. */
+	private static long countWriteCalls() {
+		try{
+			List<String> lines = Files.readAllLines(new File("/proc/self/io").toPath(), StandardCharsets.US_ASCII);
+			for(String line : lines)
+				if(line.startsWith("syscw:"))
+					return Long.parseLong(line.substring("syscw:".length()).trim());
+		}catch(IOException | RuntimeException e){
+			//not available
+		}
+		return -1;
+	}
+}
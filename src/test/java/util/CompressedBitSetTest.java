@@ -0,0 +1,101 @@
+package util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.junit.Test;
+
+public class CompressedBitSetTest {
+
+	private static final int RANGE = 1 << 20; //16 containers
+
+	/** Random set with each container empty, sparse (array) or dense (bitmap), to cover all pairs of container kinds. */
+	private static BitSet randomBitSet(Random random) {
+		BitSet bitSet = new BitSet(RANGE);
+		for(int start = 0; start < RANGE; start += 1 << 16){
+			double density;
+			switch(random.nextInt(5)){
+				case 0: density = 0; break;
+				case 1: density = 0.0005; break; //few values, intersected by searches against denser arrays
+				case 2: density = 0.02; break;
+				case 3: density = 4096 / 65536.0 * (0.9 + 0.2 * random.nextDouble()); break; //around the switch from array to bitmap
+				default: density = 0.3 + 0.7 * random.nextDouble();
+			}
+			for(int i = start; i < start + (1 << 16); i++)
+				if(random.nextDouble() < density)
+					bitSet.set(i);
+		}
+		return bitSet;
+	}
+
+	private static CompressedBitSet toCompressed(BitSet bitSet) {
+		long[] values = bitSet.stream().asLongStream().toArray();
+		long[] padded = LongStream.concat(LongStream.of(values), LongStream.of(-1, -2)).toArray(); //only the first values are used
+		return CompressedBitSet.of(padded, values.length);
+	}
+
+	@Test
+	public void givesTheSameIntersectionSizesAsBitSet() {
+		Random random = new Random(1);
+		BitSet[] bitSets = new BitSet[12];
+		CompressedBitSet[] compressed = new CompressedBitSet[bitSets.length];
+		for(int i = 0; i < bitSets.length; i++){
+			bitSets[i] = i == 0 ? new BitSet() : randomBitSet(random);
+			compressed[i] = toCompressed(bitSets[i]);
+			assertEquals(bitSets[i].cardinality(), compressed[i].cardinality());
+		}
+		for(int i = 0; i < bitSets.length; i++){
+			for(int j = 0; j < bitSets.length; j++){
+				BitSet intersection = (BitSet)bitSets[i].clone();
+				intersection.and(bitSets[j]);
+				assertEquals(i + " and " + j, intersection.cardinality(), compressed[i].andCardinality(compressed[j]));
+			}
+		}
+	}
+
+	@Test
+	public void containsTheSameValuesAsBitSet() {
+		Random random = new Random(2);
+		for(int k = 0; k < 3; k++){
+			BitSet bitSet = randomBitSet(random);
+			CompressedBitSet compressed = toCompressed(bitSet);
+			for(int i = 0; i < RANGE + (1 << 16); i++)
+				assertEquals(bitSet.get(i), compressed.contains(i));
+		}
+	}
+
+	@Test
+	public void handlesValuesBeyondIntegers() {
+		Random random = new Random(3);
+		long[][] values = new long[2][];
+		for(int k = 0; k < 2; k++){
+			//few high containers, shared by both sets, plus values spread over the whole range
+			values[k] = LongStream.concat(random.longs(3000, 0, 1L << 48), LongStream.concat(random.longs(5000, 0, 1 << 16).map(v -> v | (5L << 40)),
+					random.longs(60000, 0, 1 << 16).map(v -> v | ((1L << 48) - (1 << 16))))).distinct().sorted().toArray();
+		}
+		Set<Long> common = new HashSet<>();
+		LongStream.of(values[0]).forEach(common::add);
+		common.retainAll(LongStream.of(values[1]).boxed().collect(Collectors.toSet()));
+		CompressedBitSet a = CompressedBitSet.of(values[0], values[0].length), b = CompressedBitSet.of(values[1], values[1].length);
+		assertEquals(common.size(), a.andCardinality(b));
+		assertEquals(common.size(), b.andCardinality(a));
+		for(long value : values[0])
+			assertTrue(a.contains(value));
+		assertFalse(a.contains(-1));
+	}
+
+	@Test
+	public void rejectsInvalidValues() {
+		assertThrows(IllegalArgumentException.class, () -> CompressedBitSet.of(new long[]{1, 1}, 2));
+		assertThrows(IllegalArgumentException.class, () -> CompressedBitSet.of(new long[]{2, 1}, 2));
+		assertThrows(IllegalArgumentException.class, () -> CompressedBitSet.of(new long[]{-1, 1}, 2));
+		assertThrows(IllegalArgumentException.class, () -> CompressedBitSet.of(new long[]{1, 1L << 48}, 2));
+	}
+}
@@ -0,0 +1,72 @@
+package util;
+
+import static org.junit.Assert.assertEquals;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.text.DecimalFormat;
+import java.util.Random;
+import org.junit.Test;
+
+public class DecimalEncoderTest {
+
+	private static void assertSameText(DecimalEncoder encoder, DecimalFormat format, double value) throws IOException {
+		String expected = format.format(value);
+		assertEquals("format of " + value, expected, encoder.format(value));
+		assertEquals("append of " + value, "x" + expected, encoder.append(new StringBuilder("x"), value).toString());
+		StringWriter writer = new StringWriter();
+		encoder.write(writer, value);
+		assertEquals("write of " + value, expected, writer.toString());
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(PrintStream out = new PrintStream(bytes, false, "UTF-8")){
+			encoder.print(out, value);
+		}
+		assertEquals("print of " + value, expected, bytes.toString("UTF-8"));
+	}
+
+	private static double[] specialValues(int maxFractionDigits) {
+		double unit = Math.pow(10, -maxFractionDigits);
+		return new double[]{0, -0.0, 1, -1, 0.5, -0.5, 10, 100.25, 1e-7, -1e-7, 0.1 + 0.2, 1 / 3.0, 2 / 3.0,
+				unit, unit / 2, -unit / 2, 1.5 * unit, 2.5 * unit, unit / 2 - 1e-15, unit / 2 + 1e-15, 0.125, 0.375, 1.0005, 2.675,
+				1e10, 123456789.987654321, 1e15, -1e15, 1e20, Long.MAX_VALUE, Double.MAX_VALUE, Double.MIN_VALUE, -Double.MIN_VALUE,
+				Float.MAX_VALUE, Float.MIN_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+	}
+
+	private static void assertSameTextAsDecimalFormat(Integer minFractionDigits, int maxFractionDigits) throws IOException {
+		DecimalEncoder encoder = minFractionDigits == null ? new DecimalEncoder(maxFractionDigits) : new DecimalEncoder(minFractionDigits, maxFractionDigits);
+		DecimalFormat format = StringUtils.getDecimalFormatter(minFractionDigits, maxFractionDigits);
+		for(double value : specialValues(maxFractionDigits))
+			assertSameText(encoder, format, value);
+
+		Random random = new Random(maxFractionDigits);
+		double unit = Math.pow(10, -maxFractionDigits);
+		for(int i = 0; i < 20_000; i++){
+			//weights and scores as floats, values of any magnitude, and values near the rounding ties of the last digit
+			assertSameText(encoder, format, random.nextFloat());
+			assertSameText(encoder, format, (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(30) - 12));
+			assertSameText(encoder, format, (random.nextInt(1_000_000) + 0.5) * unit);
+			assertSameText(encoder, format, (float)((random.nextInt(1_000_000) + 0.5) * unit));
+		}
+	}
+
+	@Test
+	public void givesTheSameTextAsDecimalFormat() throws IOException {
+		for(int maxFractionDigits : new int[]{0, 1, 2, 6, 8})
+			assertSameTextAsDecimalFormat(null, maxFractionDigits);
+	}
+
+	@Test
+	public void givesTheSameTextAsDecimalFormatWithMinimumFractionDigits() throws IOException {
+		assertSameTextAsDecimalFormat(2, 6);
+		assertSameTextAsDecimalFormat(3, 3);
+	}
+
+	@Test
+	public void defaultEncoderMatchesDefaultFormatter() throws IOException {
+		DecimalFormat format = StringUtils.getDecimalFormatter();
+		Random random = new Random(3);
+		for(int i = 0; i < 10_000; i++)
+			assertSameText(DecimalEncoder.DEFAULT, format, random.nextGaussian());
+	}
+}
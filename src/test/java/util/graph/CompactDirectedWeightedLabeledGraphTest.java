@@ -0,0 +1,80 @@
+package util.graph;
+
+import static dataMining.graph.GraphSampleTestUtils.assertSameGraph;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import dataMining.graph.GraphSample;
+import dataMining.graph.GraphSampleBinaryIO;
+
+public class CompactDirectedWeightedLabeledGraphTest {
+
+	/** Accumulates the edge weight as {@link DirectedWeightedLabeledGraph#addEdgeOtherwiseWeight(String, String, double)}, but for the given label. */
+	private static void addEdgeOtherwiseWeight(DirectedWeightedLabeledGraph g, String source, String target, String label, double weight) {
+		LabeledWeightedEdge edge = g.getEdge(source, target, label);
+		if(edge == null)
+			g.addEdge(source, target, new LabeledWeightedEdge(source, target, label, weight));
+		else
+			g.setEdgeWeight(edge, edge.getWeight() + weight);
+	}
+
+	/**
+	 * Adds the same random vertices and edges, repeated so that their weights are accumulated, to the jgrapht graph and to the builders
+	 * (the dense one only without labels), and checks that the graphs built are the same.
+	 */
+	private static void assertSameGraphs(Random random, boolean weighted, boolean labeled) {
+		DirectedWeightedLabeledGraph expected = new DirectedWeightedLabeledGraph(weighted);
+		CompactDirectedWeightedLabeledGraph.Builder builder = new CompactDirectedWeightedLabeledGraph.Builder(weighted);
+		CompactDirectedWeightedLabeledGraph.DenseBuilder denseBuilder = labeled ? null : new CompactDirectedWeightedLabeledGraph.DenseBuilder(weighted);
+		List<Long> vertices = new ArrayList<>();
+		for(int i = 1 + random.nextInt(80); i > 0; i--){
+			long vertex = vertices.isEmpty() || random.nextInt(4) > 0 ? random.nextInt(2000) - 500 : vertices.get(random.nextInt(vertices.size()));
+			double weight = random.nextInt(64) / 8.0; //exact sums, so sizes match in any order of summation
+			vertices.add(vertex);
+			expected.addVertex(String.valueOf(vertex), weight);
+			builder.addVertex(vertex, weight);
+			if(denseBuilder != null)
+				denseBuilder.addVertex(vertex, weight);
+		}
+		for(int i = 5 * vertices.size(); i > 0; i--){
+			long source = vertices.get(random.nextInt(vertices.size())), target = vertices.get(random.nextInt(vertices.size()));
+			if(source == target)
+				continue;
+			String label = labeled ? "l" + random.nextInt(3) : "";
+			double weight = random.nextInt(64) / 8.0;
+			if(labeled)
+				addEdgeOtherwiseWeight(expected, String.valueOf(source), String.valueOf(target), label, weight);
+			else
+				expected.addEdgeOtherwiseWeight(String.valueOf(source), String.valueOf(target), weight);
+			builder.addEdgeOtherwiseWeight(source, target, label, weight);
+			if(denseBuilder != null)
+				denseBuilder.addEdgeOtherwiseWeight(source, target, weight);
+		}
+
+		CompactDirectedWeightedLabeledGraph compact = builder.build();
+		assertSameGraph(expected, compact, 0);
+		assertEquals(expected.edgeSet().size(), compact.getNumEdges());
+		for(String vertex : expected.vertexSet()){
+			assertEquals(expected.incomingEdgesOf(vertex).size(), compact.incomingEdgesOf(vertex).size());
+			for(LabeledWeightedEdge edge : expected.outgoingEdgesOf(vertex))
+				assertEquals(edge.getWeight(), compact.getEdge(vertex, (String) edge.getTarget(), edge.getLabel()).getWeight(), 0);
+		}
+		if(denseBuilder != null){ //identical graphs, as their binary form is deterministic
+			CompactDirectedWeightedLabeledGraph dense = denseBuilder.build();
+			assertSameGraph(expected, dense, 0);
+			assertArrayEquals(GraphSampleBinaryIO.toBytes(new GraphSample(1, "", compact)), GraphSampleBinaryIO.toBytes(new GraphSample(1, "", dense)));
+		}
+	}
+
+	@Test
+	public void buildsTheSameGraphAsDirectedWeightedLabeledGraph() {
+		Random random = new Random(1);
+		for(int i = 0; i < 50; i++)
+			for(boolean weighted : new boolean[]{true, false})
+				for(boolean labeled : new boolean[]{true, false})
+					assertSameGraphs(random, weighted, labeled);
+	}
+}
@@ -0,0 +1,90 @@
+package util.graph;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import util.ObjectUtils;
+
+/**
+ * Edge creation and weight accumulation of {@link LabeledWeightedEdge}, against the reflective field writes it used to do
+ * (kept here in {@link #reflectiveWeightUpdates(Blackhole)} as reference).
+ * Run from the test classpath, which the forked benchmark JVMs inherit:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/test.classpath
+ * java -cp target/test-classes:target/classes:$(cat target/test.classpath) org.openjdk.jmh.Main LabeledWeightedEdgeBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LabeledWeightedEdgeBenchmark {
+
+	private static final int NUM_VERTICES = 1000, NUM_PAIRS = 100_000;
+
+	private String[] vertices;
+	private int[] sources, targets;
+	private double[] weights;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Random random = new Random(1);
+		vertices = new String[NUM_VERTICES];
+		for(int v = 0; v < NUM_VERTICES; v++)
+			vertices[v] = String.valueOf(v);
+		sources = new int[NUM_PAIRS];
+		targets = new int[NUM_PAIRS];
+		weights = new double[NUM_PAIRS];
+		for(int i = 0; i < NUM_PAIRS; i++){
+			sources[i] = random.nextInt(NUM_VERTICES);
+			targets[i] = (sources[i] + 1 + random.nextInt(20)) % NUM_VERTICES; //few targets per source, so pairs repeat as in fusion graphs
+			weights[i] = random.nextFloat();
+		}
+	}
+
+	@Benchmark
+	public void reflectiveWeightUpdates(Blackhole blackhole) {
+		for(int i = 0; i < NUM_PAIRS; i++){
+			DefaultWeightedEdge edge = new DefaultWeightedEdge();
+			ObjectUtils.writeField(edge, "source", vertices[sources[i]]);
+			ObjectUtils.writeField(edge, "target", vertices[targets[i]]);
+			ObjectUtils.writeField(edge, "weight", weights[i]);
+			ObjectUtils.writeField(edge, "weight", weights[i] * 2);
+			blackhole.consume(edge);
+		}
+	}
+
+	@Benchmark
+	public void edgeWeightUpdates(Blackhole blackhole) {
+		for(int i = 0; i < NUM_PAIRS; i++){
+			LabeledWeightedEdge edge = new LabeledWeightedEdge(vertices[sources[i]], vertices[targets[i]], "", weights[i]);
+			edge.addWeight(weights[i]);
+			blackhole.consume(edge);
+		}
+	}
+
+	/** The accumulation of {@link LabeledMeasurableGraph#addEdgeOtherwiseWeight(String, String, double)}, as fusion graphs were built. */
+	@Benchmark
+	public DirectedWeightedLabeledGraph graphAccumulation() {
+		DirectedWeightedLabeledGraph g = new DirectedWeightedLabeledGraph(true);
+		for(String vertex : vertices)
+			g.addVertex(vertex, 1);
+		for(int i = 0; i < NUM_PAIRS; i++)
+			g.addEdgeOtherwiseWeight(vertices[sources[i]], vertices[targets[i]], weights[i]);
+		return g;
+	}
+}